@@ -0,0 +1,407 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands summaries to another StatsReporter on its own thread, so a slow or hung reporter
+ * never holds up collect() or the other reporters. report() only puts the summary on a
+ * bounded queue. When the queue is full the queued summaries and the new one are merged into
+ * one, so the counter deltas of a slow interval are reported late rather than lost. Counters
+ * are summed, distributions and top keys merged; gauges, labels and the other point in time
+ * values come from the newest summary. Distinct counts are estimates that can't be added, so
+ * a merged interval's distinct counts are lost and the interval is counted as dropped too.
+ * OverflowPolicy.DROP_OLDEST and DROP_NEWEST drop a summary instead.
+ * 
+ * <pre>
+ * collector.addReporter(new AsyncStatsReporter(graphite, 4, 10, TimeUnit.SECONDS));
+ * </pre>
+ * 
+ * With a timeout, a report that runs longer is interrupted and abandoned, and the next one
+ * starts on a fresh thread. Blocking socket I/O doesn't respond to interrupts, so a reporter
+ * stuck in a connect keeps its thread until the connect times out, but it no longer holds
+ * up later reports. At most maxAbandoned threads are left behind: while that many are still
+ * stuck, summaries are dropped instead of starting yet another thread.
+ * 
+ * Queue depth, merges, drops, timeouts and errors are kept as counts on this object and,
+ * after recordStats(container, prefix), in a container as the gauge prefix.queue.depth, the
+ * counters prefix.coalesced, prefix.dropped, prefix.timeouts and prefix.errors and the
+ * metric prefix.report.millis.
+ */
+public class AsyncStatsReporter implements StatsReporter {
+
+	/**
+	 * Which summary to drop when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** merge the queued summaries and the new one into one, the default */
+		COALESCE,
+		/** make room by dropping the oldest queued summary */
+		DROP_OLDEST,
+		/** drop the summary being reported */
+		DROP_NEWEST
+	}
+
+	/**
+	 * Threads a hung reporter may hold before summaries are dropped.
+	 */
+	public static final int DEFAULT_MAX_ABANDONED = 2;
+
+	private final StatsReporter reporter;
+	private final BlockingQueue<StatsSummary> queue;
+	private final OverflowPolicy policy;
+	private final long timeoutNanos;
+	private final Thread dispatcher;
+	private final ThreadFactory threads;
+	private final ThreadFactory workerThreads;
+	private final int maxAbandoned;
+	private volatile ExecutorService worker;
+	// report threads that haven't exited, only abandoned ones while worker is null
+	private final AtomicInteger workerCount = new AtomicInteger();
+
+	private final AtomicLong reported = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	private volatile StatsContainer stats;
+	private volatile String prefix;
+	private volatile boolean running = true;
+
+	/**
+	 * Queue up to capacity summaries, merging them when full, with no timeout.
+	 */
+	public AsyncStatsReporter(StatsReporter reporter, int capacity) {
+		this(reporter, capacity, OverflowPolicy.COALESCE, 0, TimeUnit.MILLISECONDS);
+	}
+
+	public AsyncStatsReporter(StatsReporter reporter, int capacity, long timeout, TimeUnit unit) {
+		this(reporter, capacity, OverflowPolicy.COALESCE, timeout, unit);
+	}
+
+	public AsyncStatsReporter(StatsReporter reporter, int capacity, OverflowPolicy policy, long timeout, TimeUnit unit) {
+		this(reporter, capacity, policy, timeout, unit, DEFAULT_MAX_ABANDONED);
+	}
+
+	/**
+	 * @param timeout how long one report may run, 0 for no limit
+	 * @param maxAbandoned how many timed out reports may still hold a thread before
+	 *        summaries are dropped, at least 1
+	 */
+	public AsyncStatsReporter(StatsReporter reporter, int capacity, OverflowPolicy policy, long timeout, TimeUnit unit, int maxAbandoned) {
+		if (reporter == null || policy == null)
+			throw new IllegalArgumentException("reporter and policy can't be null");
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout can't be negative, got " + timeout);
+		if (maxAbandoned < 1)
+			throw new IllegalArgumentException("maxAbandoned must be at least 1, got " + maxAbandoned);
+		this.reporter = reporter;
+		this.queue = new ArrayBlockingQueue<StatsSummary>(capacity);
+		this.policy = policy;
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.maxAbandoned = maxAbandoned;
+
+		String simpleName = reporter.getClass().getSimpleName();
+		final String name = "pillage-reporter-" + (simpleName.length() > 0 ? simpleName : reporter.getClass().getName());
+		this.threads = new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.workerThreads = new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				workerCount.incrementAndGet();
+				return threads.newThread(new Runnable() {
+					public void run() {
+						try {
+							runnable.run();
+						} finally {
+							workerCount.decrementAndGet();
+						}
+					}
+				});
+			}
+		};
+		this.dispatcher = threads.newThread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		});
+		dispatcher.start();
+	}
+
+	/**
+	 * Also keep queue depth, drops, timeouts, errors and report times in container, under
+	 * names starting with prefix.
+	 */
+	public void recordStats(StatsContainer container, String prefix) {
+		this.prefix = prefix;
+		this.stats = container;
+		container.registerGauge(prefix + ".queue.depth", new Gauge() {
+			public double read() {
+				return queue.size();
+			}
+		});
+	}
+
+	/**
+	 * Queue the summary for the reporter. Never blocks.
+	 */
+	@Override
+	public void report(StatsSummary summary) {
+		if (!running)
+			return;
+		if (policy == OverflowPolicy.COALESCE) {
+			coalesce(summary);
+			return;
+		}
+		while (!queue.offer(summary)) {
+			if (policy == OverflowPolicy.DROP_NEWEST) {
+				drop();
+				return;
+			}
+			if (queue.poll() != null)
+				drop();
+		}
+	}
+
+	private synchronized void coalesce(StatsSummary summary) {
+		while (!queue.offer(summary)) {
+			List<StatsSummary> queued = new ArrayList<StatsSummary>(queue.size());
+			queue.drainTo(queued);
+			StatsSummary merged = null;
+			for (StatsSummary older : queued) {
+				merged = merged == null ? older : merge(merged, older);
+				if (!older.getDistincts().isEmpty())
+					drop();
+			}
+			if (merged != null)
+				summary = merge(merged, summary);
+			coalesced.addAndGet(queued.size());
+			StatsContainer container = stats;
+			if (container != null)
+				container.incr(prefix + ".coalesced", queued.size());
+		}
+	}
+
+	/**
+	 * @return one summary covering both intervals, newer following older
+	 */
+	static StatsSummary merge(StatsSummary older, StatsSummary newer) {
+		Map<String, Long> counters = new HashMap<String, Long>(older.getCounters());
+		for (Map.Entry<String, Long> entry : newer.getCounters().entrySet()) {
+			Long value = counters.get(entry.getKey());
+			counters.put(entry.getKey(), value == null ? entry.getValue() : value + entry.getValue());
+		}
+		Map<String, Distribution> metrics = new HashMap<String, Distribution>(older.getMetrics());
+		for (Map.Entry<String, Distribution> entry : newer.getMetrics().entrySet()) {
+			Distribution value = metrics.get(entry.getKey());
+			metrics.put(entry.getKey(), value == null ? entry.getValue() : merge(value, entry.getValue()));
+		}
+		return new StatsSummary(counters, metrics, newest(older.getLabels(), newer.getLabels()),
+				newest(older.getGauges(), newer.getGauges()), newest(older.getMeters(), newer.getMeters()),
+				newest(older.getDistincts(), newer.getDistincts()), merge(older.getTopKs(), newer.getTopKs()),
+				older.getStart(), newer.getEnd());
+	}
+
+	/**
+	 * Merge distributions of the types that can be added together. Time based distributions,
+	 * and ones that don't fit each other, are taken from the newer summary.
+	 */
+	private static Distribution merge(Distribution older, Distribution newer) {
+		try {
+			Metric metric;
+			if (older instanceof TotalDistribution)
+				return ((TotalDistribution) older).plus(newer);
+			else if (older instanceof HistogramDistribution)
+				metric = new HistogramMetric(((HistogramDistribution) older).getHistogram().clone());
+			else if (older instanceof CompactDistribution)
+				metric = new CompactHistogramMetric(((CompactDistribution) older).getHistogram().clone());
+			else if (older instanceof LogLinearDistribution)
+				metric = new LogLinearMetric(((LogLinearDistribution) older).getHistogram().clone());
+			else if (older instanceof DDSketchDistribution)
+				metric = new DDSketchMetric(((DDSketchDistribution) older).getSketch().clone());
+			else if (older instanceof BucketDistribution) {
+				BucketDistribution buckets = (BucketDistribution) older;
+				metric = new BucketHistogramMetric(buckets.getLayout(), buckets.getQuantiles());
+				metric.add(older);
+			} else
+				return newer;
+			metric.add(newer);
+			return metric.getDistribution();
+		} catch (IllegalArgumentException e) {
+			return newer;
+		}
+	}
+
+	private static Map<String, TopKSnapshot> merge(Map<String, TopKSnapshot> older, Map<String, TopKSnapshot> newer) {
+		Map<String, TopKSnapshot> topKs = new HashMap<String, TopKSnapshot>(older);
+		for (Map.Entry<String, TopKSnapshot> entry : newer.entrySet()) {
+			TopKSnapshot value = topKs.get(entry.getKey());
+			topKs.put(entry.getKey(), value == null ? entry.getValue() : value.plus(entry.getValue()));
+		}
+		return topKs;
+	}
+
+	private static <T> Map<String, T> newest(Map<String, T> older, Map<String, T> newer) {
+		Map<String, T> values = new HashMap<String, T>(older);
+		values.putAll(newer);
+		return values;
+	}
+
+	private void drop() {
+		dropped.incrementAndGet();
+		StatsContainer container = stats;
+		if (container != null)
+			container.incr(prefix + ".dropped");
+	}
+
+	private void dispatch() {
+		while (running) {
+			StatsSummary summary;
+			try {
+				summary = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			deliver(summary);
+		}
+	}
+
+	private void deliver(final StatsSummary summary) {
+		long begin = System.nanoTime();
+		if (timeoutNanos == 0) {
+			try {
+				reporter.report(summary);
+				reported.incrementAndGet();
+			} catch (RuntimeException e) {
+				error();
+			}
+		} else {
+			if (worker == null) {
+				if (workerCount.get() >= maxAbandoned) {
+					// every thread we may leave behind is still stuck in the reporter
+					drop();
+					return;
+				}
+				worker = Executors.newSingleThreadExecutor(workerThreads);
+			}
+			Future<?> future = worker.submit(new Runnable() {
+				public void run() {
+					reporter.report(summary);
+				}
+			});
+			try {
+				future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+				reported.incrementAndGet();
+			} catch (TimeoutException e) {
+				timeouts.incrementAndGet();
+				StatsContainer container = stats;
+				if (container != null)
+					container.incr(prefix + ".timeouts");
+				// leave the stuck thread behind, the next report starts a new one
+				future.cancel(true);
+				worker.shutdownNow();
+				worker = null;
+			} catch (ExecutionException e) {
+				error();
+			} catch (InterruptedException e) {
+				future.cancel(true);
+				return;
+			}
+		}
+		StatsContainer container = stats;
+		if (container != null)
+			container.add(prefix + ".report.millis", (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+	}
+
+	private void error() {
+		errors.incrementAndGet();
+		StatsContainer container = stats;
+		if (container != null)
+			container.incr(prefix + ".errors");
+	}
+
+	/**
+	 * Stop reporting. Queued summaries are discarded and a report in progress is interrupted.
+	 */
+	public void shutdown() {
+		running = false;
+		queue.clear();
+		dispatcher.interrupt();
+		ExecutorService current = worker;
+		if (current != null)
+			current.shutdownNow();
+	}
+
+	public StatsReporter getReporter() {
+		return reporter;
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return summaries handed to the reporter that returned normally within the timeout
+	 */
+	public long getReported() {
+		return reported.get();
+	}
+
+	/**
+	 * @return queued summaries merged into a later one
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return summaries dropped because the queue was full or too many reports were stuck
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return reports that threw
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+}
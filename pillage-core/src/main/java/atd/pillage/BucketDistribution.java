@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A distribution over the buckets of a BucketLayout that reports its own set of quantiles.
+ * Values are the midpoints of their buckets, as with HistogramDistribution.
+ */
+public class BucketDistribution implements Distribution, Serializable {
+
+	private static final long serialVersionUID = -2287305571869404577L;
+
+	private final BucketLayout layout;
+	private final double[] quantiles;
+	private final long[] buckets;
+	private final long count;
+	private final long sum;
+
+	// quantiles then the minimum and maximum, worked out once on first read
+	private transient volatile long[] scanned;
+
+	/**
+	 * The buckets array is used as is, it is not copied.
+	 */
+	BucketDistribution(BucketLayout layout, double[] quantiles, long[] buckets, long count, long sum) {
+		this.layout = layout;
+		this.quantiles = quantiles;
+		this.buckets = buckets;
+		this.count = count;
+		this.sum = sum;
+	}
+
+	public BucketLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return the quantiles toMap() reports
+	 */
+	public double[] getQuantiles() {
+		return quantiles.clone();
+	}
+
+	/**
+	 * @return a copy of the bucket counts
+	 */
+	public long[] getBuckets() {
+		return buckets.clone();
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public long getSum() {
+		return sum;
+	}
+
+	@Override
+	public long getMinimum() {
+		return scanned()[quantiles.length];
+	}
+
+	@Override
+	public long getMaximum() {
+		return scanned()[quantiles.length + 1];
+	}
+
+	@Override
+	public double getMean() {
+		return count > 0 ? (double) sum / count : 0.0d;
+	}
+
+	/**
+	 * Values at each quantile, between 0.0 and 1.0, in the order asked for, from one walk
+	 * over the buckets. A quantile above 1.0 comes back as Long.MAX_VALUE.
+	 */
+	public long[] quantiles(double... quantiles) {
+		if (Arrays.equals(quantiles, this.quantiles))
+			return Arrays.copyOf(scanned(), quantiles.length);
+		long[] out = new long[quantiles.length + 2];
+		scan(quantiles, out);
+		return Arrays.copyOf(out, quantiles.length);
+	}
+
+	private long[] scanned() {
+		long[] values = scanned;
+		if (values == null) {
+			values = new long[quantiles.length + 2];
+			scan(quantiles, values);
+			scanned = values;
+		}
+		return values;
+	}
+
+	private void scan(double[] quantiles, long[] out) {
+		int n = quantiles.length;
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			int j = i;
+			while (j > 0 && quantiles[order[j - 1]] > quantiles[i]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+
+		long total = 0L;
+		int next = 0;
+		while (next < n && total >= quantiles[order[next]] * count)
+			out[order[next++]] = 0L;
+		int first = -1;
+		int last = -1;
+		for (int index = 0; index < buckets.length; index++) {
+			if (buckets[index] != 0) {
+				if (first < 0)
+					first = index;
+				last = index;
+			}
+			total += buckets[index];
+			while (next < n && total >= quantiles[order[next]] * count)
+				out[order[next++]] = layout.midpoint(index);
+		}
+		while (next < n)
+			out[order[next++]] = Long.MAX_VALUE;
+
+		long minimum = count == 0 || first < 0 ? 0L : layout.midpoint(first);
+		long maximum = count == 0 || last < 0 ? 0L : layout.midpoint(last);
+		for (int i = 0; i < n; i++) {
+			if (quantiles[i] == 0.0d)
+				out[i] = minimum;
+		}
+		out[n] = minimum;
+		out[n + 1] = maximum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Distribution delta(Distribution dist) throws IllegalArgumentException {
+		if (!(dist instanceof BucketDistribution) || !layout.equals(((BucketDistribution) dist).layout)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be subtracted from a BucketDistribution with a different layout.");
+		}
+		BucketDistribution other = (BucketDistribution) dist;
+		long[] delta = new long[buckets.length];
+		for (int i = 0; i < delta.length; i++)
+			delta[i] = buckets[i] - other.buckets[i];
+		return new BucketDistribution(layout, quantiles, delta, count - other.count, sum - other.sum);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * this will return count, sum, minimum, maximum and mean, and when there are data points
+	 * a p{num} for each quantile, i.e. p99 for 0.99 and p9999 for 0.9999.
+	 */
+	@Override
+	public Map<String, Number> toMap() {
+		HashMap<String, Number> map = new HashMap<String, Number>();
+		map.put("count", count);
+		map.put("sum", sum);
+		map.put("minimum", getMinimum());
+		map.put("maximum", getMaximum());
+		map.put("mean", getMean());
+		if (count > 0) {
+			long[] values = scanned();
+			for (int i = 0; i < quantiles.length; i++)
+				map.put(quantileName(quantiles[i]), values[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * @return the toMap() key for a quantile, p followed by its percentage without the
+	 *         decimal point
+	 */
+	public static String quantileName(double quantile) {
+		BigDecimal percent = BigDecimal.valueOf(quantile).movePointRight(2).stripTrailingZeros();
+		if (percent.scale() < 0)
+			percent = percent.setScale(0);
+		return "p" + percent.toPlainString().replace(".", "");
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{\n");
+		for (Map.Entry<String, Number> entry : toMap().entrySet()) {
+			str.append(entry.getKey()).append(": ").append(entry.getValue()).append(" , \n");
+		}
+		str.append("}");
+		return str.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * layout.hashCode() + Arrays.hashCode(buckets);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		BucketDistribution other = (BucketDistribution) obj;
+		return count == other.count && sum == other.sum && layout.equals(other.layout)
+				&& Arrays.equals(buckets, other.buckets);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram over the buckets of a BucketLayout, reporting its own set of
+ * quantiles. Pick the layout to fit the values, linear buckets for a small fixed range or
+ * exponential ones for latencies, and the quantiles to what is worth shipping for the metric.
+ * See RoutingMetricFactory to set these per metric name.
+ * 
+ * Like ConcurrentHistogramMetric writers are spread over padded stripes so threads recording
+ * to the same metric don't fight over one set of cells. Each stripe holds a long per bucket,
+ * so a layout with hundreds of buckets costs kilobytes per stripe; the default is
+ * DEFAULT_STRIPES, pass more for metrics many threads write at once. A distribution read
+ * while writers are active may have a sum a few data points ahead or behind its buckets.
+ */
+public class BucketHistogramMetric implements DrainableMetric, LongMetric {
+
+	// per stripe layout: [sum, buckets...] padded to a multiple of Stripes.PAD, the count is
+	// summed from the buckets on read
+	private static final int SUM = 0;
+	private static final int BUCKETS = 1;
+
+	/**
+	 * Stripes per metric unless asked for more.
+	 */
+	public static final int DEFAULT_STRIPES = 2;
+
+	private final BucketLayout layout;
+	private final double[] quantiles;
+	private final AtomicLongArray cells;
+	private final int stride;
+	private final int mask;
+
+	public BucketHistogramMetric(BucketLayout layout) {
+		this(layout, HistogramDistribution.QUANTILES);
+	}
+
+	/**
+	 * @param quantiles the quantiles, between 0.0 and 1.0, reported by the distribution
+	 */
+	public BucketHistogramMetric(BucketLayout layout, double... quantiles) {
+		this(layout, DEFAULT_STRIPES, quantiles);
+	}
+
+	/**
+	 * @param stripes number of bucket arrays writers are spread over, rounded up to a power of two
+	 * @param quantiles the quantiles, between 0.0 and 1.0, reported by the distribution
+	 */
+	public BucketHistogramMetric(BucketLayout layout, int stripes, double... quantiles) {
+		this.layout = layout;
+		this.quantiles = checkQuantiles(quantiles).clone();
+		int size = Stripes.size(stripes);
+		this.stride = ((BUCKETS + layout.size() + Stripes.PAD - 1) / Stripes.PAD + 1) * Stripes.PAD;
+		this.cells = new AtomicLongArray(Stripes.PAD + size * stride);
+		this.mask = size - 1;
+	}
+
+	private int base(int probe) {
+		return Stripes.PAD + (probe & mask) * stride;
+	}
+
+	static double[] checkQuantiles(double[] quantiles) {
+		for (double quantile : quantiles) {
+			if (!(quantile >= 0.0d && quantile <= 1.0d))
+				throw new IllegalArgumentException("quantiles must be between 0.0 and 1.0, got " + quantile);
+		}
+		return quantiles;
+	}
+
+	public BucketLayout getLayout() {
+		return layout;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < cells.length(); i++) {
+			cells.set(i, 0L);
+		}
+	}
+
+	@Override
+	public long add(int n) {
+		return add((long) n);
+	}
+
+	/**
+	 * Adds a data point, negative values are dropped.
+	 * 
+	 * @return the number of data points in n's bucket of the calling thread's stripe. No total
+	 *         is kept, getDistribution() sums the buckets.
+	 */
+	@Override
+	public long add(long n) {
+		if (n < 0)
+			return 0L;
+		int index = BUCKETS + layout.index(n);
+		int base = base(Stripes.probe());
+		long v = cells.get(base + index);
+		long count;
+		if (cells.compareAndSet(base + index, v, v + 1)) {
+			count = v + 1;
+		} else {
+			base = base(Stripes.advanceProbe());
+			count = cells.incrementAndGet(base + index);
+		}
+		cells.addAndGet(base + SUM, n);
+		return count;
+	}
+
+	/**
+	 * Add a summarized set of data points from a BucketDistribution with the same layout.
+	 * 
+	 * @return the number of data points added
+	 */
+	@Override
+	public long add(Distribution dist) {
+		if (!(dist instanceof BucketDistribution) || !layout.equals(((BucketDistribution) dist).getLayout())) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be added to a BucketHistogramMetric with a different layout.");
+		}
+		long[] buckets = ((BucketDistribution) dist).getBuckets();
+		int base = base(Stripes.probe());
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] != 0)
+				cells.addAndGet(base + BUCKETS + i, buckets[i]);
+		}
+		cells.addAndGet(base + SUM, dist.getSum());
+		return dist.getCount();
+	}
+
+	@Override
+	public BucketHistogramMetric clone() {
+		BucketHistogramMetric metric = new BucketHistogramMetric(layout, mask + 1, quantiles);
+		metric.add(getDistribution());
+		return metric;
+	}
+
+	/**
+	 * Takes and zeroes each cell in turn. Every data point's bucket is counted by exactly one
+	 * drain, the count is summed from the buckets so only the sum may be a few data points off.
+	 */
+	@Override
+	public BucketDistribution drain() {
+		long[] buckets = new long[layout.size()];
+		long count = 0L;
+		long sum = 0L;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int base = Stripes.PAD + stripe * stride;
+			sum += cells.getAndSet(base + SUM, 0L);
+			for (int i = 0; i < buckets.length; i++) {
+				long v = cells.getAndSet(base + BUCKETS + i, 0L);
+				buckets[i] += v;
+				count += v;
+			}
+		}
+		return new BucketDistribution(layout, quantiles, buckets, count, sum);
+	}
+
+	/**
+	 * Returns a Distribution for this Metric by merging all the stripes.
+	 */
+	@Override
+	public BucketDistribution getDistribution() {
+		long[] buckets = new long[layout.size()];
+		long count = 0L;
+		long sum = 0L;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int base = Stripes.PAD + stripe * stride;
+			sum += cells.get(base + SUM);
+			for (int i = 0; i < buckets.length; i++) {
+				long v = cells.get(base + BUCKETS + i);
+				buckets[i] += v;
+				count += v;
+			}
+		}
+		return new BucketDistribution(layout, quantiles, buckets, count, sum);
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The bucket boundaries of a BucketHistogramMetric. Bucket i holds values from bound i - 1
+ * (inclusive), or 0 for the first bucket, to bound i (exclusive). The last bucket holds
+ * everything from the last bound up.
+ */
+public final class BucketLayout implements Serializable {
+
+	private static final long serialVersionUID = 3188327457823416093L;
+
+	/**
+	 * The same buckets as Histogram.
+	 */
+	public static final BucketLayout DEFAULT;
+
+	static {
+		long[] bounds = new long[Histogram.BUCKET_OFFSETS.length];
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = Histogram.BUCKET_OFFSETS[i];
+		DEFAULT = new BucketLayout(bounds);
+	}
+
+	private final long[] bounds;
+
+	private BucketLayout(long[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/**
+	 * @return buckets of equal width starting at 0, plus one for everything past them
+	 */
+	public static BucketLayout linear(long width, int buckets) {
+		if (width < 1 || buckets < 1)
+			throw new IllegalArgumentException("width and buckets must be at least 1");
+		long[] bounds = new long[buckets];
+		for (int i = 0; i < buckets; i++)
+			bounds[i] = width * (i + 1);
+		return new BucketLayout(bounds);
+	}
+
+	/**
+	 * @return buckets whose bounds start at first and grow by factor, at least 1 each time,
+	 *         plus one for everything past them
+	 */
+	public static BucketLayout exponential(long first, double factor, int buckets) {
+		if (first < 1 || buckets < 1 || !(factor > 1.0d))
+			throw new IllegalArgumentException("first and buckets must be at least 1 and factor more than 1");
+		long[] bounds = new long[buckets];
+		double bound = first;
+		bounds[0] = first;
+		for (int i = 1; i < buckets; i++) {
+			bound *= factor;
+			bounds[i] = Math.max(bounds[i - 1] + 1, (long) Math.ceil(bound));
+		}
+		return new BucketLayout(bounds);
+	}
+
+	/**
+	 * @param bounds strictly increasing exclusive upper bounds, the first more than 0
+	 */
+	public static BucketLayout custom(long... bounds) {
+		if (bounds.length == 0 || bounds[0] < 1)
+			throw new IllegalArgumentException("bounds must start above 0");
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] <= bounds[i - 1])
+				throw new IllegalArgumentException("bounds must be strictly increasing, " + bounds[i] + " follows " + bounds[i - 1]);
+		}
+		return new BucketLayout(bounds.clone());
+	}
+
+	/**
+	 * @return the number of buckets, including the last open ended one
+	 */
+	public int size() {
+		return bounds.length + 1;
+	}
+
+	/**
+	 * @return the bucket for a value that isn't negative
+	 */
+	public int index(long value) {
+		int i = Arrays.binarySearch(bounds, value);
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+
+	/**
+	 * @return the value a bucket stands for, the middle of its range, or Long.MAX_VALUE for
+	 *         the last bucket
+	 */
+	public long midpoint(int index) {
+		if (index >= bounds.length)
+			return Long.MAX_VALUE;
+		long lower = index == 0 ? 0 : bounds[index - 1];
+		return lower + (bounds[index] - 1 - lower) / 2;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bounds);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BucketLayout))
+			return false;
+		return Arrays.equals(bounds, ((BucketLayout) obj).bounds);
+	}
+
+	@Override
+	public String toString() {
+		return "BucketLayout" + Arrays.toString(bounds);
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records counter increments and metric samples into a buffer private to the calling thread
+ * and pushes them into the StatsContainer in batches.
+ * 
+ * Register each name once to get a slot, then record by slot:
+ * 
+ * <pre>
+ * BufferedRecorder recorder = container.newRecorder(1024);
+ * int requests = recorder.counter("requests.total");
+ * int latency = recorder.metric("requests.latency");
+ * ...
+ * recorder.incr(requests);
+ * recorder.add(latency, micros);
+ * </pre>
+ * 
+ * Recording is two array stores and an ordered store of the buffer's write position, no
+ * lock and no compare and swap. A thread's buffer is flushed when it fills up, when the
+ * thread calls flush(), and by flushAll(). The container calls flushAll() from
+ * StatsContainerImpl.flush(), which StatsCollectorImpl.collect() calls before it snapshots, so
+ * a collection sees everything recorded before it started.
+ * 
+ * Each buffer is a single producer ring. The owning thread writes an entry and then
+ * publishes the write position with lazySet, which keeps the entry's stores ahead of the
+ * position's. A flush reads the write position, which makes every entry before it visible,
+ * pushes those entries and then publishes its read position the same way, so the owner only
+ * reuses an entry after the flush is done with it. Flushes, by the owner when the ring is
+ * full or by flushAll(), are serialized on the buffer's monitor; recording never takes it.
+ * 
+ * Counter increments are flushed with Counter.add(int). Metric samples are first grouped
+ * into a scratch metric per slot and flushed with Metric.add(Distribution), so the scratch
+ * metric factory must produce distributions the container's metrics accept.
+ * 
+ * Call close() when done with a recorder so the container stops flushing it.
+ * 
+ * @author ATD
+ */
+public class BufferedRecorder {
+
+	// counter entries store -(slot + 1) so they share the ring with metric samples
+	private final class Buffer {
+		final Thread owner = Thread.currentThread();
+		final int[] slots = new int[capacity];
+		final long[] values = new long[capacity];
+		// written only by the owner
+		final AtomicLong written = new AtomicLong();
+		// written only while holding the monitor
+		final AtomicLong read = new AtomicLong();
+		// owner's copies, so recording only reads the atomics when the ring looks full
+		long position = 0;
+		long readCache = 0;
+
+		// used while holding the monitor
+		long[] counts = new long[0];
+		Metric[] scratch = new Metric[0];
+		boolean[] pending = new boolean[0];
+		final int[] touchedSlots = new int[capacity];
+
+		void record(int slot, long value) {
+			long p = position;
+			if (p - readCache == capacity) {
+				readCache = read.get();
+				if (p - readCache == capacity) {
+					synchronized (this) {
+						flush();
+					}
+					readCache = read.get();
+				}
+			}
+			int i = (int) (p % capacity);
+			slots[i] = slot;
+			values[i] = value;
+			position = p + 1;
+			written.lazySet(p + 1);
+			if (p + 1 - readCache == capacity) {
+				synchronized (this) {
+					flush();
+				}
+				readCache = read.get();
+			}
+		}
+
+		// call holding the monitor
+		void flush() {
+			long from = read.get();
+			long to = written.get();
+			int touched = 0;
+			try {
+				if (from == to)
+					return;
+				for (long n = from; n < to; n++) {
+					int i = (int) (n % capacity);
+					int slot = slots[i];
+					if (slot < 0) {
+						slot = -slot - 1;
+						if (slot >= counts.length) {
+							long[] grown = new long[Math.max(slot + 1, counts.length * 2)];
+							System.arraycopy(counts, 0, grown, 0, counts.length);
+							counts = grown;
+						}
+						counts[slot] += values[i];
+						continue;
+					}
+					if (slot >= scratch.length) {
+						int length = Math.max(slot + 1, metricHandles.size());
+						Metric[] grown = new Metric[length];
+						System.arraycopy(scratch, 0, grown, 0, scratch.length);
+						scratch = grown;
+						boolean[] grownPending = new boolean[length];
+						System.arraycopy(pending, 0, grownPending, 0, pending.length);
+						pending = grownPending;
+					}
+					if (scratch[slot] == null)
+						scratch[slot] = StatUtils.newMetric(scratchFactory, metricHandles.get(slot).getName());
+					if (!pending[slot]) {
+						pending[slot] = true;
+						touchedSlots[touched++] = slot;
+					}
+					StatUtils.add(scratch[slot], values[i]);
+				}
+				// entries are copied out, the owner can reuse them
+				read.lazySet(to);
+				for (int i = 0; i < touched; i++) {
+					int slot = touchedSlots[i];
+					pending[slot] = false;
+					Distribution dist = scratch[slot].getDistribution();
+					scratch[slot].clear();
+					metricHandles.get(slot).add(dist);
+				}
+			} finally {
+				// never leave entries or scratch metrics behind that would fail every later flush
+				if (read.get() != to)
+					read.lazySet(to);
+				for (int i = 0; i < touched; i++) {
+					int slot = touchedSlots[i];
+					if (pending[slot]) {
+						pending[slot] = false;
+						scratch[slot].clear();
+					}
+				}
+				for (int slot = 0; slot < counts.length; slot++) {
+					long n = counts[slot];
+					if (n != 0) {
+						counts[slot] = 0;
+						Counter counter = counterHandles.get(slot).getCounter();
+						while (n > Integer.MAX_VALUE) {
+							counter.add(Integer.MAX_VALUE);
+							n -= Integer.MAX_VALUE;
+						}
+						counter.add((int) n);
+					}
+				}
+			}
+		}
+	}
+
+	private final StatsContainerImpl container;
+	private final MetricFactory scratchFactory;
+	private final int capacity;
+
+	private final List<CounterHandle> counterHandles = new CopyOnWriteArrayList<CounterHandle>();
+	private final List<MetricHandle> metricHandles = new CopyOnWriteArrayList<MetricHandle>();
+	private final Map<String, Integer> counterSlots = new HashMap<String, Integer>();
+	private final Map<String, Integer> metricSlots = new HashMap<String, Integer>();
+
+	private final List<Buffer> buffers = new CopyOnWriteArrayList<Buffer>();
+	private final ThreadLocal<Buffer> local = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			Buffer buffer = new Buffer();
+			buffers.add(buffer);
+			return buffer;
+		}
+	};
+
+	/**
+	 * Use StatsContainerImpl.newRecorder() so the container flushes this recorder before it is
+	 * read.
+	 * 
+	 * @param container where buffered data ends up
+	 * @param scratchFactory creates the metrics samples are grouped in before a flush
+	 * @param capacity samples buffered per thread before a flush
+	 */
+	public BufferedRecorder(StatsContainerImpl container, MetricFactory scratchFactory, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+		this.container = container;
+		this.scratchFactory = scratchFactory;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Register a counter name.
+	 * 
+	 * @return the slot to pass to incr()
+	 */
+	public synchronized int counter(String name) {
+		Integer slot = counterSlots.get(name);
+		if (slot == null) {
+			slot = counterHandles.size();
+			counterHandles.add(container.counterHandle(name));
+			counterSlots.put(name, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Register a metric name.
+	 * 
+	 * @return the slot to pass to add()
+	 */
+	public synchronized int metric(String name) {
+		Integer slot = metricSlots.get(name);
+		if (slot == null) {
+			slot = metricHandles.size();
+			metricHandles.add(container.metricHandle(name));
+			metricSlots.put(name, slot);
+		}
+		return slot;
+	}
+
+	public void incr(int counterSlot) {
+		incr(counterSlot, 1);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if counterSlot didn't come from counter()
+	 */
+	public void incr(int counterSlot, int count) {
+		if (counterSlot < 0 || counterSlot >= counterHandles.size())
+			throw new IllegalArgumentException("unknown counter slot " + counterSlot);
+		local.get().record(-counterSlot - 1, count);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if metricSlot didn't come from metric()
+	 */
+	public void add(int metricSlot, long value) {
+		if (metricSlot < 0 || metricSlot >= metricHandles.size())
+			throw new IllegalArgumentException("unknown metric slot " + metricSlot);
+		local.get().record(metricSlot, value);
+	}
+
+	/**
+	 * Flush the calling thread's buffer.
+	 */
+	public void flush() {
+		Buffer buffer = local.get();
+		synchronized (buffer) {
+			buffer.flush();
+		}
+	}
+
+	/**
+	 * Flush every thread's buffer. Everything recorded before this call started is in the
+	 * container when it returns. Buffers of threads that have died are flushed one last
+	 * time and dropped.
+	 */
+	public void flushAll() {
+		List<Buffer> dead = new ArrayList<Buffer>();
+		for (Iterator<Buffer> it = buffers.iterator(); it.hasNext();) {
+			Buffer buffer = it.next();
+			synchronized (buffer) {
+				buffer.flush();
+			}
+			if (!buffer.owner.isAlive())
+				dead.add(buffer);
+		}
+		buffers.removeAll(dead);
+	}
+
+	/**
+	 * Flush every thread's buffer and stop the container from flushing this recorder.
+	 * Anything recorded afterwards only reaches the container through flush() or flushAll().
+	 */
+	public void close() {
+		flushAll();
+		if (container instanceof StatsContainerImpl)
+			((StatsContainerImpl) container).removeRecorder(this);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package atd.pillage;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * What StatsCollectorImpl needs from a container beyond the StatsContainer reads: flushing
+ * buffered data, meters, distinct counts and top-ks, change tracking, draining and parallel
+ * reads. StatsContainerImpl implements it. A collector handed any other StatsContainer
+ * reads it through counters() and metrics() alone.
+ */
+interface CollectableContainer extends StatsContainer {
+
+	/**
+	 * Push any data buffered outside the container, by BufferedRecorders, into it. Collectors
+	 * call this before reading so they see everything recorded up to that point.
+	 */
+	public void flush();
+
+	/**
+	 * evaluate all the meters in this collection.
+	 */
+	public Map<String, MeterSnapshot> meters();
+
+	/**
+	 * evaluate all the metrics in this collection, reading them in up to partitions tasks on
+	 * executor. The calling thread reads one partition and waits for the rest.
+	 */
+	public Map<String, Distribution> metrics(ExecutorService executor, int partitions);
+
+	/**
+	 * take the data points recorded since the last call from each IntervalMetric in this
+	 * collection, starting a new interval for each. Used by the collector to report interval
+	 * metrics without subtracting the previous distribution.
+	 */
+	public Map<String, Distribution> drainIntervals();
+
+	/**
+	 * values of the counters that changed since the last call, so a collector can skip the
+	 * rest. Names removed since the last call map to null.
+	 * 
+	 * @return null if this container doesn't track changes
+	 */
+	public Map<String, Long> dirtyCounters();
+
+	/**
+	 * distributions of the metrics that changed since the last call, so a collector can skip
+	 * the rest. Names removed since the last call map to null. TimeBasedMetrics are always
+	 * included. IntervalMetrics aren't, use drainIntervals().
+	 * 
+	 * @return null if this container doesn't track changes
+	 */
+	public Map<String, Distribution> dirtyMetrics();
+
+	/**
+	 * take the value of each counter and reset it to zero in one step. Used by a collector in
+	 * reset on read mode so it doesn't keep the previous values to subtract.
+	 * 
+	 * @param changedOnly with dirty tracking, take only the counters that changed and map
+	 *        names removed since the last call to null
+	 */
+	public Map<String, Long> drainCounters(boolean changedOnly);
+
+	/**
+	 * take the data points of each metric and reset it in one step. DrainableMetrics and
+	 * IntervalMetrics are reset, other metrics are read as they are.
+	 * 
+	 * @param changedOnly with dirty tracking, take only the metrics that changed, plus every
+	 *        IntervalMetric and TimeBasedMetric, and map names removed since the last call to null
+	 */
+	public Map<String, Distribution> drainMetrics(boolean changedOnly);
+
+	/**
+	 * remove a counter the collector found idle, unless it was updated since the collector
+	 * read it. An update that lands while the counter is being removed puts it back.
+	 * 
+	 * @param value the value the collector last read, 0 if that read drained the counter
+	 * @return true if the counter was removed
+	 */
+	public boolean evictCounter(String name, long value);
+
+	/**
+	 * remove a metric the collector found idle, unless data was added since the collector
+	 * read it. Data that lands while the metric is being removed puts it back.
+	 * 
+	 * @param count the count of the distribution the collector last read
+	 * @param drained true if that read drained the metric, DrainableMetrics and
+	 *        IntervalMetrics are then expected to be empty
+	 * @return true if the metric was removed
+	 */
+	public boolean evictMetric(String name, long count, boolean drained);
+
+	/**
+	 * estimate the number of distinct values seen by each distinct count in this collection.
+	 */
+	public Map<String, Long> distincts();
+
+	/**
+	 * estimate the number of distinct values seen by each distinct count in this collection
+	 * and empty the estimators, so the next call counts from zero. Used by the collector to
+	 * report distinct values per interval.
+	 */
+	public Map<String, Long> drainDistincts();
+
+	/**
+	 * the most frequent keys of each top-k in this collection.
+	 */
+	public Map<String, TopKSnapshot> topKs();
+
+	/**
+	 * the most frequent keys of each top-k in this collection, emptying them so the next call
+	 * counts from zero. Used by the collector to report top keys per interval.
+	 */
+	public Map<String, TopKSnapshot> drainTopKs();
+}
@@ -0,0 +1,413 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A Histogram with the same buckets that only stores the buckets it has data for. Most
+ * histograms fill a handful of the buckets, so a CompactHistogram keeps sorted bucket
+ * index and count pairs and only switches to a full long per bucket once more than
+ * promoteAt buckets are in use. An empty one holds no arrays at all.
+ * 
+ * merge, minus and the percentiles run directly on the pairs, so snapshots and deltas of
+ * mostly empty histograms touch a few entries instead of every bucket.
+ * 
+ * Not thread safe. CompactHistogramMetric adds the locking.
+ */
+public class CompactHistogram implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = 4872046405539130342L;
+
+	static final int NUM_BUCKETS = Histogram.BUCKET_OFFSETS.length + 1;
+
+	/**
+	 * Buckets in use before switching to the dense form. Sparse pairs cost 12 bytes each
+	 * against 8 bytes for every bucket when dense.
+	 */
+	public static final int DEFAULT_PROMOTE_AT = 32;
+
+	private static final int[] NO_INDEXES = new int[0];
+	private static final long[] NO_COUNTS = new long[0];
+
+	private final int promoteAt;
+	// sorted bucket indexes while sparse, null once dense
+	private int[] indexes = NO_INDEXES;
+	// counts matching indexes while sparse, one per bucket once dense
+	private long[] counts = NO_COUNTS;
+	private int size = 0;
+	private long count = 0;
+	private long sum = 0;
+
+	public CompactHistogram() {
+		this(DEFAULT_PROMOTE_AT);
+	}
+
+	/**
+	 * @param promoteAt buckets in use before switching to one long per bucket
+	 */
+	public CompactHistogram(int promoteAt) {
+		validate(promoteAt);
+		this.promoteAt = promoteAt;
+	}
+
+	static void validate(int promoteAt) {
+		if (promoteAt < 0 || promoteAt > NUM_BUCKETS)
+			throw new IllegalArgumentException("promoteAt must be between 0 and " + NUM_BUCKETS + ", got " + promoteAt);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return true while only the used buckets are stored
+	 */
+	public boolean isSparse() {
+		return indexes != null;
+	}
+
+	/**
+	 * @return number of buckets with a count
+	 */
+	public int bucketsUsed() {
+		if (isSparse())
+			return size;
+		int used = 0;
+		for (long c : counts) {
+			if (c != 0)
+				used++;
+		}
+		return used;
+	}
+
+	public long add(int n) {
+		addToBucket(Histogram.binarySearch(n), 1);
+		sum += n;
+		return ++count;
+	}
+
+	/**
+	 * Add a long data point. Anything past Integer.MAX_VALUE goes to the infinity bucket.
+	 */
+	public long add(long n) {
+		if (n > Integer.MAX_VALUE) {
+			addToBucket(NUM_BUCKETS - 1, 1);
+			sum += n;
+			return ++count;
+		}
+		return add((int) n);
+	}
+
+	private void addToBucket(int index, long n) {
+		if (!isSparse()) {
+			counts[index] += n;
+			return;
+		}
+		int pos = Arrays.binarySearch(indexes, 0, size, index);
+		if (pos >= 0) {
+			counts[pos] += n;
+			return;
+		}
+		if (size == promoteAt) {
+			promote();
+			counts[index] += n;
+			return;
+		}
+		pos = -pos - 1;
+		if (size == indexes.length) {
+			int capacity = Math.min(promoteAt, Math.max(4, size * 2));
+			indexes = Arrays.copyOf(indexes, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		System.arraycopy(indexes, pos, indexes, pos + 1, size - pos);
+		System.arraycopy(counts, pos, counts, pos + 1, size - pos);
+		indexes[pos] = index;
+		counts[pos] = n;
+		size++;
+	}
+
+	private void promote() {
+		counts = dense();
+		indexes = null;
+		size = 0;
+	}
+
+	private long[] dense() {
+		if (!isSparse())
+			return counts.clone();
+		long[] buckets = new long[NUM_BUCKETS];
+		for (int i = 0; i < size; i++) {
+			buckets[indexes[i]] = counts[i];
+		}
+		return buckets;
+	}
+
+	/**
+	 * Go back to the empty sparse form, dropping any arrays.
+	 */
+	public void clear() {
+		indexes = NO_INDEXES;
+		counts = NO_COUNTS;
+		size = 0;
+		count = 0;
+		sum = 0;
+	}
+
+	/**
+	 * @return the counts for every bucket, in the layout of Histogram.get(reset)
+	 */
+	public long[] get(boolean reset) {
+		long[] rv = dense();
+		if (reset)
+			clear();
+		return rv;
+	}
+
+	/**
+	 * @return a dense Histogram with the same data
+	 */
+	public Histogram toHistogram() {
+		return new Histogram(dense(), count, sum);
+	}
+
+	/**
+	 * Add the data of another histogram to this one.
+	 */
+	public void merge(CompactHistogram other) {
+		if (other.count == 0)
+			return;
+		if (isSparse() && other.isSparse()) {
+			combine(other, 1);
+		} else {
+			if (isSparse())
+				promote();
+			if (other.isSparse()) {
+				for (int i = 0; i < other.size; i++) {
+					counts[other.indexes[i]] += other.counts[i];
+				}
+			} else {
+				for (int i = 0; i < NUM_BUCKETS; i++) {
+					counts[i] += other.counts[i];
+				}
+			}
+		}
+		count += other.count;
+		sum += other.sum;
+	}
+
+	/**
+	 * Add the data of a dense Histogram to this one.
+	 */
+	public void merge(Histogram other) {
+		if (other.getCount() == 0)
+			return;
+		long[] buckets = other.get(false);
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] != 0)
+				addToBucket(i, buckets[i]);
+		}
+		count += other.getCount();
+		sum += other.getSum();
+	}
+
+	/**
+	 * @return a new histogram holding this one's data less other's
+	 */
+	public CompactHistogram minus(CompactHistogram other) {
+		CompactHistogram rv = clone();
+		if (rv.isSparse() && other.isSparse()) {
+			rv.combine(other, -1);
+		} else {
+			if (rv.isSparse())
+				rv.promote();
+			long[] theirs = other.dense();
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				rv.counts[i] -= theirs[i];
+			}
+		}
+		rv.count -= other.count;
+		rv.sum -= other.sum;
+		return rv;
+	}
+
+	// walk both sorted pair lists once, adding or subtracting, and drop buckets that cancel out
+	private void combine(CompactHistogram other, int sign) {
+		int[] mergedIndexes = new int[size + other.size];
+		long[] mergedCounts = new long[size + other.size];
+		int i = 0, j = 0, n = 0;
+		while (i < size || j < other.size) {
+			int index;
+			long c;
+			if (j == other.size || (i < size && indexes[i] < other.indexes[j])) {
+				index = indexes[i];
+				c = counts[i++];
+			} else if (i == size || other.indexes[j] < indexes[i]) {
+				index = other.indexes[j];
+				c = sign * other.counts[j++];
+			} else {
+				index = indexes[i];
+				c = counts[i++] + sign * other.counts[j++];
+			}
+			if (c != 0) {
+				mergedIndexes[n] = index;
+				mergedCounts[n++] = c;
+			}
+		}
+		indexes = mergedIndexes;
+		counts = mergedCounts;
+		size = n;
+		if (size > promoteAt)
+			promote();
+	}
+
+	/**
+	 * Percentile within 5%, the same as Histogram.getPercentile.
+	 */
+	public int getPercentile(double percentile) {
+		if (percentile == 0.0)
+			return getMinimum();
+		double target = percentile * count;
+		if (target <= 0)
+			return 0;
+		long total = 0L;
+		if (isSparse()) {
+			for (int i = 0; i < size; i++) {
+				total += counts[i];
+				if (total >= target)
+					return midpoint(indexes[i]);
+			}
+		} else {
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				total += counts[i];
+				if (total >= target)
+					return midpoint(i);
+			}
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Maximum value within 5%, the same as Histogram.getMaximum.
+	 */
+	public int getMaximum() {
+		if (count == 0)
+			return 0;
+		if (isSparse()) {
+			for (int i = size - 1; i >= 0; i--) {
+				if (counts[i] != 0)
+					return midpoint(indexes[i]);
+			}
+			return 0;
+		}
+		for (int i = NUM_BUCKETS - 1; i >= 0; i--) {
+			if (counts[i] != 0)
+				return midpoint(i);
+		}
+		return 0;
+	}
+
+	/**
+	 * Minimum value within 5%, the same as Histogram.getMinimum.
+	 */
+	public int getMinimum() {
+		if (count == 0)
+			return 0;
+		if (isSparse()) {
+			for (int i = 0; i < size; i++) {
+				if (counts[i] != 0)
+					return midpoint(indexes[i]);
+			}
+			return Integer.MAX_VALUE;
+		}
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			if (counts[i] != 0)
+				return midpoint(i);
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	// midpoint of a bucket, as Histogram.getMidpoint
+	private static int midpoint(int index) {
+		if (index == 0)
+			return 0;
+		else if (index - 1 >= Histogram.BUCKET_OFFSETS.length - 1)
+			return Integer.MAX_VALUE;
+		else
+			return (Histogram.BUCKET_OFFSETS[index - 1] + Histogram.BUCKET_OFFSETS[index] - 1) / 2;
+	}
+
+	@Override
+	public CompactHistogram clone() {
+		CompactHistogram copy = new CompactHistogram(promoteAt);
+		copy.indexes = indexes == null ? null : Arrays.copyOf(indexes, size);
+		copy.counts = isSparse() ? Arrays.copyOf(counts, size) : counts.clone();
+		copy.size = size;
+		copy.count = count;
+		copy.sum = sum;
+		return copy;
+	}
+
+	public CompactDistribution getDistribution() {
+		return new CompactDistribution(clone());
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 31 + Arrays.hashCode(dense());
+		result = 31 * result + (int) (count ^ (count >>> 32));
+		return 31 * result + (int) (sum ^ (sum >>> 32));
+	}
+
+	/**
+	 * Histograms with the same data are equal whether they are sparse or dense.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		CompactHistogram other = (CompactHistogram) obj;
+		return count == other.count && sum == other.sum && Arrays.equals(dense(), other.dense());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append("<CompactHistogram count=");
+		str.append(count);
+		str.append(" sum=");
+		str.append(sum);
+		long[] buckets = dense();
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] != 0) {
+				str.append(" ");
+				str.append(i < Histogram.BUCKET_OFFSETS.length ? Histogram.BUCKET_OFFSETS[i] : Integer.MAX_VALUE);
+				str.append("=");
+				str.append(buckets[i]);
+			}
+		}
+		str.append(" />");
+		return str.toString();
+	}
+
+}
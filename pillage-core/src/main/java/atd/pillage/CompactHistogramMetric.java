@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * This is a metric backed by a CompactHistogram. It has the buckets of HistogramMetric but
+ * only stores the ones in use, which saves memory and snapshot time when there are many
+ * metrics that each see a narrow range of values.
+ */
+public class CompactHistogramMetric implements DrainableMetric, LongMetric {
+
+  private CompactHistogram histogram;
+
+  public CompactHistogramMetric( CompactHistogram histogram) {
+      this.histogram = histogram;
+  }
+
+  public CompactHistogramMetric(){
+      this.histogram = new CompactHistogram();
+  }
+
+  /**
+   * Resets the state of this Metric. Clears all data points collected so far.
+   */
+  @Override
+  public void clear() {
+    synchronized(this) {
+      histogram.clear();
+    }
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public long add( int n){
+    return add( (long) n );
+  }
+
+  /**
+   * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+   */
+  @Override
+  public long add( long n){
+    synchronized(this) {
+      if (n > -1)
+        return histogram.add(n);
+      return histogram.getCount();
+    }
+  }
+
+  /**
+   * Add a summarized set of data points, from a CompactDistribution or a
+   * HistogramDistribution.
+   */
+  @Override
+  public long add(Distribution dist) {
+    if ( dist instanceof CompactDistribution ){
+      CompactHistogram other = ((CompactDistribution) dist).getHistogram();
+      synchronized( this ){
+        histogram.merge( other );
+        return histogram.getCount();
+      }
+    }
+    if ( dist instanceof HistogramDistribution ){
+      Histogram other = ((HistogramDistribution) dist).getHistogram();
+      synchronized( this ){
+        histogram.merge( other );
+        return histogram.getCount();
+      }
+    }
+    throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to a CompactHistogramMetric.");
+  }
+
+  @Override
+  public CompactHistogramMetric clone(){
+    synchronized( this ){
+      return new CompactHistogramMetric(histogram.clone());
+    }
+  }
+
+  /**
+   * Copies the data points out and clears, under the same lock as add.
+   */
+  @Override
+  public CompactDistribution drain() {
+      synchronized( this) {
+        CompactDistribution dist = histogram.getDistribution();
+        histogram.clear();
+        return dist;
+      }
+  }
+
+  /**
+   * Returns a Distribution for this Metric.
+   */
+  @Override
+  public CompactDistribution getDistribution() {
+      synchronized( this) {
+        return histogram.getDistribution();
+      }
+  }
+
+}
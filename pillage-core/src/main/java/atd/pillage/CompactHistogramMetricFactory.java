@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * Creates CompactHistogramMetrics.
+ */
+public class CompactHistogramMetricFactory implements MetricFactory {
+
+	private final int promoteAt;
+
+	public CompactHistogramMetricFactory() {
+		this(CompactHistogram.DEFAULT_PROMOTE_AT);
+	}
+
+	/**
+	 * @param promoteAt buckets in use before a histogram switches to one long per bucket
+	 */
+	public CompactHistogramMetricFactory(int promoteAt) {
+		this.promoteAt = promoteAt;
+		CompactHistogram.validate(promoteAt);
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new CompactHistogramMetric(new CompactHistogram(promoteAt));
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free metric backed by the same buckets as Histogram. Data points are recorded into
+ * one of several stripes of AtomicLongArray buckets, picked by the writing thread, and the
+ * stripes are merged into a Histogram when getDistribution() is called.
+ * 
+ * A distribution read while writers are active is not a point in time snapshot. Every data
+ * point lands in exactly one bucket though, so the counts are always consistent with the
+ * buckets; only the sum may be a few data points ahead or behind.
+ */
+public class ConcurrentHistogramMetric implements DrainableMetric, LongMetric {
+
+	private static final int NUM_BUCKETS = Histogram.BUCKET_OFFSETS.length + 1;
+
+	// per stripe layout: [sum, count, buckets...] padded to a multiple of Stripes.PAD
+	private static final int SUM = 0;
+	private static final int COUNT = 1;
+	private static final int BUCKETS = 2;
+	private static final int STRIDE = ((BUCKETS + NUM_BUCKETS + Stripes.PAD - 1) / Stripes.PAD + 1) * Stripes.PAD;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	public ConcurrentHistogramMetric() {
+		this(Stripes.defaultSize());
+	}
+
+	/**
+	 * @param stripes number of bucket arrays writers are spread over, rounded up to a power of two
+	 */
+	public ConcurrentHistogramMetric(int stripes) {
+		int size = Stripes.size(stripes);
+		cells = new AtomicLongArray(Stripes.PAD + size * STRIDE);
+		mask = size - 1;
+	}
+
+	private int base(int probe) {
+		return Stripes.PAD + (probe & mask) * STRIDE;
+	}
+
+	/**
+	 * Resets the state of this Metric. Writers racing with clear() may leave a few data
+	 * points behind.
+	 */
+	@Override
+	public void clear() {
+		for (int i = 0; i < cells.length(); i++) {
+			cells.set(i, 0L);
+		}
+	}
+
+	/**
+	 * Adds a data point.
+	 * 
+	 * @return the number of data points recorded in the calling thread's stripe. The
+	 *         total is only computed by getDistribution() so writers never read other
+	 *         stripes.
+	 */
+	@Override
+	public long add(int n) {
+		if (n < 0)
+			return 0L;
+		return record(Histogram.binarySearch(n), n);
+	}
+
+	/**
+	 * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+	 */
+	@Override
+	public long add(long n) {
+		if (n < 0)
+			return 0L;
+		if (n > Integer.MAX_VALUE)
+			return record(NUM_BUCKETS - 1, n);
+		return record(Histogram.binarySearch((int) n), n);
+	}
+
+	private long record(int index, long n) {
+		int base = base(Stripes.probe());
+		long v = cells.get(base + BUCKETS + index);
+		if (!cells.compareAndSet(base + BUCKETS + index, v, v + 1)) {
+			base = base(Stripes.advanceProbe());
+			cells.incrementAndGet(base + BUCKETS + index);
+		}
+		cells.addAndGet(base + SUM, n);
+		return cells.incrementAndGet(base + COUNT);
+	}
+
+	/**
+	 * Add a summarized set of data points.
+	 */
+	@Override
+	public long add(Distribution dist) {
+		if (!(dist instanceof HistogramDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be added to a ConcurrentHistogramMetric.");
+		}
+		long[] buckets = ((HistogramDistribution) dist).getHistogram().get(false);
+		int base = base(Stripes.probe());
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] != 0)
+				cells.addAndGet(base + BUCKETS + i, buckets[i]);
+		}
+		cells.addAndGet(base + SUM, dist.getSum());
+		return cells.addAndGet(base + COUNT, dist.getCount());
+	}
+
+	@Override
+	public ConcurrentHistogramMetric clone() {
+		ConcurrentHistogramMetric metric = new ConcurrentHistogramMetric(mask + 1);
+		metric.add(getDistribution());
+		return metric;
+	}
+
+	/**
+	 * Takes and zeroes each cell in turn. Every data point's bucket is counted by exactly one
+	 * drain, as with getDistribution() only the sum may be a few data points off.
+	 */
+	@Override
+	public HistogramDistribution drain() {
+		long[] buckets = new long[NUM_BUCKETS];
+		long count = 0L;
+		long sum = 0L;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int base = Stripes.PAD + stripe * STRIDE;
+			sum += cells.getAndSet(base + SUM, 0L);
+			cells.set(base + COUNT, 0L);
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				long v = cells.getAndSet(base + BUCKETS + i, 0L);
+				buckets[i] += v;
+				count += v;
+			}
+		}
+		return new HistogramDistribution(new Histogram(buckets, count, sum));
+	}
+
+	/**
+	 * Returns a Distribution for this Metric by merging all the stripes.
+	 */
+	@Override
+	public HistogramDistribution getDistribution() {
+		long[] buckets = new long[NUM_BUCKETS];
+		long count = 0L;
+		long sum = 0L;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int base = Stripes.PAD + stripe * STRIDE;
+			sum += cells.get(base + SUM);
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				long v = cells.get(base + BUCKETS + i);
+				buckets[i] += v;
+				count += v;
+			}
+		}
+		return new HistogramDistribution(new Histogram(buckets, count, sum));
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * Creates lock free ConcurrentHistogramMetrics. Use this in place of HistogramMetricFactory
+ * when many threads write to the same metrics. Each stripe costs about 1.3KB per metric so
+ * keep the stripe count near the number of cores that actually write.
+ */
+public class ConcurrentHistogramMetricFactory implements MetricFactory {
+
+	private final int stripes;
+
+	public ConcurrentHistogramMetricFactory() {
+		this(Stripes.defaultSize());
+	}
+
+	/**
+	 * @param stripes bucket arrays per metric, rounded up to a power of two
+	 */
+	public ConcurrentHistogramMetricFactory(int stripes) {
+		this.stripes = stripes;
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new ConcurrentHistogramMetric(stripes);
+	}
+
+}
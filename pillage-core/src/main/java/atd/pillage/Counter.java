@@ -23,14 +23,33 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class Counter {
 
-    private AtomicLong counter = new AtomicLong(0L);
+    private final AtomicLong counter;
+
+    public Counter(){ this(true); }
+
+    /**
+     * @param atomic false for subclasses that keep their own state and override every
+     *        method, so no AtomicLong is allocated for them
+     */
+    protected Counter( boolean atomic ){ counter = atomic ? new AtomicLong(0L) : null; }
 
     public long incr(){  return counter.incrementAndGet(); }
     public long incr( int i ){ return counter.addAndGet(i); }
+
+    /**
+     * Add to the counter without returning the new value. Implementations that don't
+     * keep the total in one place can skip computing it.
+     */
+    public void add( int i ){ counter.addAndGet(i); }
     public long value(){ return counter.get(); }
     public void update(long l){ counter.set(l); }
     public void reset() { counter.set(0); }
 
+    /**
+     * Read the value and reset to zero in one step, so no increment is lost in between.
+     */
+    public long drain() { return counter.getAndSet(0); }
+
     @Override
     public String toString() { return "Counter[" + counter.get() + "]"; }
 
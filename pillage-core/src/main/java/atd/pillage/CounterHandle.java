@@ -0,0 +1,97 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * A pre-resolved reference to a named counter. Get one from
+ * StatsContainerImpl.counterHandle(name), keep it around (a static final field works well) and
+ * increment through it. The handle goes straight to the Counter without a map lookup or
+ * hashing the name.
+ * 
+ * If the container drops its counters, for example on clearAll(), the handle notices and
+ * resolves the name again on its next use.
+ * 
+ * @author ATD
+ */
+public class CounterHandle {
+
+	private static final class Binding {
+		final Counter counter;
+		final int generation;
+
+		Binding(Counter counter, int generation) {
+			this.counter = counter;
+			this.generation = generation;
+		}
+	}
+
+	private final StatsContainerImpl container;
+	private final String name;
+
+	// Binding is immutable so it is safe to publish without volatile
+	private Binding binding;
+
+	CounterHandle(StatsContainerImpl container, String name) {
+		this.container = container;
+		this.name = name;
+		this.binding = resolve();
+	}
+
+	private Binding resolve() {
+		int generation = container.generation();
+		return new Binding(container.getCounter(name), generation);
+	}
+
+	/**
+	 * @return the Counter currently behind this handle
+	 */
+	public Counter getCounter() {
+		Binding b = binding;
+		if (b.generation != container.generation()) {
+			b = resolve();
+			binding = b;
+		}
+		return b.counter;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Increment the counter by one.
+	 */
+	public void incr() {
+		getCounter().add(1);
+	}
+
+	/**
+	 * Increment the counter by count.
+	 */
+	public void incr(int count) {
+		getCounter().add(count);
+	}
+
+	public long value() {
+		return getCounter().value();
+	}
+
+	@Override
+	public String toString() {
+		return "CounterHandle[" + name + "]";
+	}
+}
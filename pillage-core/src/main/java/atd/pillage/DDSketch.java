@@ -0,0 +1,329 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+
+/**
+ * A quantile sketch with relative error guarantees, after DDSketch (Masson, Rim and Lee,
+ * "DDSketch: A Fast and Fully-Mergeable Quantile Sketch with Relative-Error Guarantees").
+ * Values fall into logarithmic bins: with a relative accuracy of 1% every quantile is
+ * within 1% of the true value, whether the values are microseconds or minutes.
+ * 
+ * Bins live in one array that covers the range of values seen so far. Memory is bounded
+ * by maxBins: when the range outgrows it the lowest bins are folded together, so the low
+ * quantiles lose accuracy first. Sketches with the same relative accuracy merge and
+ * subtract exactly, bin by bin, which makes them safe to combine across threads and hosts.
+ * 
+ * Not thread safe. DDSketchMetric adds the locking.
+ */
+public class DDSketch implements Cloneable, Serializable {
+
+	private static final long serialVersionUID = -1542938461063405744L;
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01d;
+
+	/**
+	 * 2048 bins at 1% accuracy span about 1 to 10^17, nanoseconds up to years.
+	 */
+	public static final int DEFAULT_MAX_BINS = 2048;
+
+	private static final int INITIAL_BINS = 32;
+	private static final long[] NO_BINS = new long[0];
+
+	private final double relativeAccuracy;
+	private final double gamma;
+	private final double logGamma;
+	private final int maxBins;
+
+	private long[] bins = NO_BINS;
+	// bin index of bins[0]
+	private int offset = 0;
+	// lowest and highest bin index added to, only meaningful while bins is allocated
+	private int minIndex = Integer.MAX_VALUE;
+	private int maxIndex = Integer.MIN_VALUE;
+
+	private long zeroCount = 0;
+	private long count = 0;
+	private long sum = 0;
+	private long minimum = Long.MAX_VALUE;
+	private long maximum = Long.MIN_VALUE;
+
+	public DDSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+	}
+
+	/**
+	 * @param relativeAccuracy between 0 and 1, exclusive
+	 * @param maxBins upper bound on the number of bins kept
+	 */
+	public DDSketch(double relativeAccuracy, int maxBins) {
+		validate(relativeAccuracy, maxBins);
+		this.relativeAccuracy = relativeAccuracy;
+		this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.logGamma = Math.log(gamma);
+		this.maxBins = maxBins;
+	}
+
+	static void validate(double relativeAccuracy, int maxBins) {
+		if (relativeAccuracy <= 0 || relativeAccuracy >= 1)
+			throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1, got " + relativeAccuracy);
+		if (maxBins < 1)
+			throw new IllegalArgumentException("maxBins must be positive, got " + maxBins);
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return the number of bins currently allocated
+	 */
+	public int size() {
+		return bins.length;
+	}
+
+	/**
+	 * Add a data point. Negative values are ignored.
+	 */
+	public long add(long n) {
+		if (n < 0)
+			return count;
+		if (n == 0)
+			zeroCount++;
+		else
+			addToBin(index(n), 1);
+		count++;
+		sum += n;
+		if (n < minimum)
+			minimum = n;
+		if (n > maximum)
+			maximum = n;
+		return count;
+	}
+
+	int index(long n) {
+		return (int) Math.ceil(Math.log(n) / logGamma);
+	}
+
+	long value(int index) {
+		return Math.round(2 * Math.pow(gamma, index) / (gamma + 1));
+	}
+
+	private void addToBin(int index, long n) {
+		if (bins.length == 0) {
+			bins = new long[Math.min(INITIAL_BINS, maxBins)];
+			offset = index;
+		}
+		if (index >= offset + bins.length || (index < offset && !collapsing()))
+			extend(index);
+		int slot = Math.max(index, offset) - offset;
+		bins[slot] += n;
+		minIndex = Math.min(minIndex, Math.max(index, offset));
+		maxIndex = Math.max(maxIndex, index);
+	}
+
+	// the window is at its limit and ends at the highest bin, so lower values can only be folded
+	// into the lowest bin
+	private boolean collapsing() {
+		return bins.length == maxBins && offset + maxBins - 1 == maxIndex;
+	}
+
+	// reallocate so index fits, folding the lowest bins together past maxBins
+	private void extend(int index) {
+		int low = Math.min(minIndex, index);
+		int high = Math.max(maxIndex, index);
+		if ((long) high - low + 1 > maxBins)
+			low = high - maxBins + 1;
+		int length = (int) Math.min(maxBins, Math.max(2L * bins.length, (long) high - low + 1));
+		int newOffset = index > maxIndex ? low : high - length + 1;
+		long[] extended = new long[length];
+		for (int i = 0; i < bins.length; i++) {
+			if (bins[i] != 0)
+				extended[Math.max(offset + i, low) - newOffset] += bins[i];
+		}
+		bins = extended;
+		offset = newOffset;
+		minIndex = Math.max(minIndex, low);
+	}
+
+	/**
+	 * Add the data of another sketch with the same relative accuracy.
+	 */
+	public void merge(DDSketch other) {
+		checkCompatible(other);
+		if (other.count == 0)
+			return;
+		for (int i = 0; i < other.bins.length; i++) {
+			if (other.bins[i] != 0)
+				addToBin(other.offset + i, other.bins[i]);
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+		sum += other.sum;
+		minimum = Math.min(minimum, other.minimum);
+		maximum = Math.max(maximum, other.maximum);
+	}
+
+	/**
+	 * @return a new sketch holding this one's data less other's. Minimum and maximum of the
+	 *         result come from its bins so they are within the relative accuracy.
+	 */
+	public DDSketch minus(DDSketch other) {
+		checkCompatible(other);
+		DDSketch rv = clone();
+		for (int i = 0; i < other.bins.length; i++) {
+			if (other.bins[i] != 0)
+				rv.addToBin(other.offset + i, -other.bins[i]);
+		}
+		rv.zeroCount -= other.zeroCount;
+		rv.count -= other.count;
+		rv.sum -= other.sum;
+		rv.minimum = Long.MAX_VALUE;
+		rv.maximum = Long.MIN_VALUE;
+		if (rv.zeroCount > 0)
+			rv.minimum = 0;
+		for (int i = 0; i < rv.bins.length; i++) {
+			if (rv.bins[i] > 0) {
+				long value = rv.value(rv.offset + i);
+				rv.minimum = Math.min(rv.minimum, value);
+				rv.maximum = Math.max(rv.maximum, value);
+			}
+		}
+		if (rv.zeroCount > 0)
+			rv.maximum = Math.max(rv.maximum, 0);
+		return rv;
+	}
+
+	public boolean isCompatible(DDSketch other) {
+		return gamma == other.gamma;
+	}
+
+	private void checkCompatible(DDSketch other) {
+		if (!isCompatible(other))
+			throw new IllegalArgumentException("DDSketch with relative accuracy " + other.relativeAccuracy
+					+ " cannot be combined with one of " + relativeAccuracy);
+	}
+
+	/**
+	 * @param quantile between 0 and 1
+	 * @return the value at quantile, within the relative accuracy. 0 if empty
+	 */
+	public long getQuantile(double quantile) {
+		if (count <= 0)
+			return 0;
+		double rank = quantile * (count - 1);
+		long running = zeroCount;
+		if (running > rank)
+			return 0;
+		for (int i = 0; i < bins.length; i++) {
+			running += bins[i];
+			if (running > rank)
+				return value(offset + i);
+		}
+		return getMaximum();
+	}
+
+	public long getMinimum() {
+		return count <= 0 ? 0 : minimum;
+	}
+
+	public long getMaximum() {
+		return count <= 0 ? 0 : maximum;
+	}
+
+	public void clear() {
+		bins = NO_BINS;
+		offset = 0;
+		minIndex = Integer.MAX_VALUE;
+		maxIndex = Integer.MIN_VALUE;
+		zeroCount = 0;
+		count = 0;
+		sum = 0;
+		minimum = Long.MAX_VALUE;
+		maximum = Long.MIN_VALUE;
+	}
+
+	@Override
+	public DDSketch clone() {
+		DDSketch copy = new DDSketch(relativeAccuracy, maxBins);
+		copy.bins = bins.length == 0 ? NO_BINS : bins.clone();
+		copy.offset = offset;
+		copy.minIndex = minIndex;
+		copy.maxIndex = maxIndex;
+		copy.zeroCount = zeroCount;
+		copy.count = count;
+		copy.sum = sum;
+		copy.minimum = minimum;
+		copy.maximum = maximum;
+		return copy;
+	}
+
+	public DDSketchDistribution getDistribution() {
+		return new DDSketchDistribution(clone());
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(gamma);
+		int result = 31 + (int) (bits ^ (bits >>> 32));
+		for (int i = 0; i < bins.length; i++) {
+			if (bins[i] != 0) {
+				result = 31 * result + offset + i;
+				result = 31 * result + (int) (bins[i] ^ (bins[i] >>> 32));
+			}
+		}
+		result = 31 * result + (int) (zeroCount ^ (zeroCount >>> 32));
+		result = 31 * result + (int) (count ^ (count >>> 32));
+		return 31 * result + (int) (sum ^ (sum >>> 32));
+	}
+
+	/**
+	 * Sketches with the same accuracy and the same count in every bin are equal, however
+	 * their bins are laid out.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DDSketch other = (DDSketch) obj;
+		if (gamma != other.gamma || zeroCount != other.zeroCount || count != other.count || sum != other.sum)
+			return false;
+		int low = Math.min(offset, other.offset);
+		int high = Math.max(offset + bins.length, other.offset + other.bins.length);
+		for (int index = low; index < high; index++) {
+			if (bin(index) != other.bin(index))
+				return false;
+		}
+		return true;
+	}
+
+	private long bin(int index) {
+		int slot = index - offset;
+		return slot < 0 || slot >= bins.length ? 0 : bins[slot];
+	}
+
+}
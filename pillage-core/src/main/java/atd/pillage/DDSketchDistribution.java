@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A distribution based on a DDSketch. Percentiles are within the sketch's relative
+ * accuracy of the true values.
+ */
+public class DDSketchDistribution implements Distribution, Serializable {
+
+	private static final long serialVersionUID = 8894317716390211563L;
+
+	private DDSketch sketch;
+
+	public DDSketchDistribution(DDSketch sketch) {
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Returns a clone of the underlying sketch.
+	 */
+	public DDSketch getSketch() {
+		return sketch.clone();
+	}
+
+	@Override
+	public long getCount() {
+		return sketch.getCount();
+	}
+
+	@Override
+	public long getSum() {
+		return sketch.getSum();
+	}
+
+	/**
+	 * {@inheritDoc} Exact, or within the relative accuracy for a delta.
+	 */
+	@Override
+	public long getMinimum() {
+		return sketch.getMinimum();
+	}
+
+	/**
+	 * {@inheritDoc} Exact, or within the relative accuracy for a delta.
+	 */
+	@Override
+	public long getMaximum() {
+		return sketch.getMaximum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getMean() {
+		if (sketch.getCount() > 0)
+			return (double) sketch.getSum() / sketch.getCount();
+		else
+			return 0.0d;
+	}
+
+	/**
+	 * @param quantile between 0 and 1
+	 */
+	public long getPercentile(double quantile) {
+		return sketch.getQuantile(quantile);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Distribution delta(Distribution dist) throws IllegalArgumentException {
+		if (!(dist instanceof DDSketchDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be subtracted from a DDSketchDistribution.");
+		}
+		return new DDSketchDistribution(sketch.minus(((DDSketchDistribution) dist).sketch));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Returns the same keys as HistogramDistribution: count, sum, minimum, maximum, mean,
+	 * p25, p50, p75, p90, p95, p99, p999 and p9999.
+	 */
+	@Override
+	public Map<String, Number> toMap() {
+		HashMap<String, Number> map = new HashMap<String, Number>();
+		map.put("count", getCount());
+		map.put("sum", getSum());
+		map.put("minimum", getMinimum());
+		map.put("maximum", getMaximum());
+		map.put("mean", getMean());
+		if (sketch.getCount() > 0) {
+			map.put("p25", sketch.getQuantile(0.25d));
+			map.put("p50", sketch.getQuantile(0.5d));
+			map.put("p75", sketch.getQuantile(0.75d));
+			map.put("p90", sketch.getQuantile(0.9d));
+			map.put("p95", sketch.getQuantile(0.95d));
+			map.put("p99", sketch.getQuantile(0.99d));
+			map.put("p999", sketch.getQuantile(0.999d));
+			map.put("p9999", sketch.getQuantile(0.9999d));
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{\n");
+		for (Map.Entry<String, Number> entry : toMap().entrySet()) {
+			str.append(entry.getKey()).append(": ").append(entry.getValue()).append(" , \n");
+		}
+		str.append("}");
+		return str.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 + ((sketch == null) ? 0 : sketch.hashCode());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DDSketchDistribution other = (DDSketchDistribution) obj;
+		if (sketch == null) {
+			if (other.sketch != null)
+				return false;
+		} else if (!sketch.equals(other.sketch))
+			return false;
+		return true;
+	}
+
+}
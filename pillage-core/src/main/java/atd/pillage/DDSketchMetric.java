@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * This is a metric backed by a DDSketch, for percentiles with a relative error bound over
+ * ranges the fixed Histogram buckets can't cover, like microseconds to minutes.
+ */
+public class DDSketchMetric implements DrainableMetric, LongMetric {
+
+  private DDSketch sketch;
+
+  public DDSketchMetric( DDSketch sketch) {
+      this.sketch = sketch;
+  }
+
+  public DDSketchMetric(){
+      this.sketch = new DDSketch();
+  }
+
+  /**
+   * Resets the state of this Metric. Clears all data points collected so far.
+   */
+  @Override
+  public void clear() {
+    synchronized(this) {
+      sketch.clear();
+    }
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public long add( int n){
+    return add( (long) n );
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public long add( long n){
+    synchronized(this) {
+      return sketch.add(n);
+    }
+  }
+
+  /**
+   * Add a summarized set of data points, from this host or another. The distribution must
+   * come from a sketch with the same relative accuracy.
+   */
+  @Override
+  public long add(Distribution dist) {
+    if ( ! ( dist instanceof DDSketchDistribution) ){
+      throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to a DDSketchMetric.");
+    }
+    DDSketch other = ((DDSketchDistribution) dist).getSketch();
+    synchronized( this ){
+      sketch.merge( other );
+      return sketch.getCount();
+    }
+  }
+
+  @Override
+  public DDSketchMetric clone(){
+    synchronized( this ){
+      return new DDSketchMetric(sketch.clone());
+    }
+  }
+
+  /**
+   * Copies the data points out and clears, under the same lock as add.
+   */
+  @Override
+  public DDSketchDistribution drain() {
+      synchronized( this) {
+        DDSketchDistribution dist = sketch.getDistribution();
+        sketch.clear();
+        return dist;
+      }
+  }
+
+  /**
+   * Returns a Distribution for this Metric.
+   */
+  @Override
+  public DDSketchDistribution getDistribution() {
+      synchronized( this) {
+        return sketch.getDistribution();
+      }
+  }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * Creates DDSketchMetrics that all share the same relative accuracy so their
+ * distributions can be merged and subtracted.
+ */
+public class DDSketchMetricFactory implements MetricFactory {
+
+	private final double relativeAccuracy;
+	private final int maxBins;
+
+	/**
+	 * 1% relative accuracy with up to 2048 bins.
+	 */
+	public DDSketchMetricFactory() {
+		this(DDSketch.DEFAULT_RELATIVE_ACCURACY, DDSketch.DEFAULT_MAX_BINS);
+	}
+
+	public DDSketchMetricFactory(double relativeAccuracy, int maxBins) {
+		this.relativeAccuracy = relativeAccuracy;
+		this.maxBins = maxBins;
+		DDSketch.validate(relativeAccuracy, maxBins);
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new DDSketchMetric(new DDSketch(relativeAccuracy, maxBins));
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A distribution based on the weighted samples of a DecayingMetric. Count and sum cover
+ * every data point. Minimum, maximum, mean and the percentiles come from the samples and
+ * lean towards recent data points.
+ */
+public class DecayingDistribution implements Distribution, Serializable {
+
+	private static final long serialVersionUID = 3325071563316014281L;
+
+	private final long[] values;
+	private final double[] weights;
+	// cumulative weight before each value, weights sum to 1
+	private final double[] quantiles;
+	private final long count;
+	private final long sum;
+
+	DecayingDistribution(List<DecayingMetric.Sample> samples, long count, long sum) {
+		Collections.sort(samples, new Comparator<DecayingMetric.Sample>() {
+			@Override
+			public int compare(DecayingMetric.Sample a, DecayingMetric.Sample b) {
+				return a.value < b.value ? -1 : (a.value == b.value ? 0 : 1);
+			}
+		});
+		this.values = new long[samples.size()];
+		this.weights = new double[samples.size()];
+		double total = 0;
+		for (DecayingMetric.Sample sample : samples) {
+			total += sample.weight;
+		}
+		for (int i = 0; i < values.length; i++) {
+			values[i] = samples.get(i).value;
+			weights[i] = total == 0 ? 0 : samples.get(i).weight / total;
+		}
+		this.quantiles = cumulative(weights);
+		this.count = count;
+		this.sum = sum;
+	}
+
+	private DecayingDistribution(long[] values, double[] weights, double[] quantiles, long count, long sum) {
+		this.values = values;
+		this.weights = weights;
+		this.quantiles = quantiles;
+		this.count = count;
+		this.sum = sum;
+	}
+
+	private static double[] cumulative(double[] weights) {
+		double[] quantiles = new double[weights.length];
+		for (int i = 1; i < weights.length; i++) {
+			quantiles[i] = quantiles[i - 1] + weights[i - 1];
+		}
+		return quantiles;
+	}
+
+	/**
+	 * Returns a copy of the sampled values in ascending order.
+	 */
+	public long[] getValues() {
+		return values.clone();
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * {@inheritDoc} This is the smallest sampled value.
+	 */
+	@Override
+	public long getMinimum() {
+		return values.length == 0 ? 0 : values[0];
+	}
+
+	/**
+	 * {@inheritDoc} This is the largest sampled value.
+	 */
+	@Override
+	public long getMaximum() {
+		return values.length == 0 ? 0 : values[values.length - 1];
+	}
+
+	/**
+	 * {@inheritDoc} This is the weighted mean of the samples, so recent values count for more.
+	 */
+	@Override
+	public double getMean() {
+		double mean = 0;
+		for (int i = 0; i < values.length; i++) {
+			mean += values[i] * weights[i];
+		}
+		return mean;
+	}
+
+	/**
+	 * Return the weighted percentile of the samples.
+	 * 
+	 * @param percentile between 0 and 1
+	 */
+	public long getPercentile(double percentile) {
+		if (values.length == 0)
+			return 0;
+		int pos = Arrays.binarySearch(quantiles, percentile);
+		if (pos < 0)
+			pos = -pos - 2;
+		return values[Math.max(0, Math.min(pos, values.length - 1))];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The samples already lean towards recent data points so they are kept as they are. Only
+	 * count and sum are subtracted.
+	 */
+	@Override
+	public Distribution delta(Distribution dist) throws IllegalArgumentException {
+		if (!(dist instanceof DecayingDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be subtracted from a DecayingDistribution.");
+		}
+		return new DecayingDistribution(values, weights, quantiles, count - dist.getCount(), sum - dist.getSum());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Returns the same keys as HistogramDistribution: count, sum, minimum, maximum, mean,
+	 * p25, p50, p75, p90, p95, p99, p999 and p9999.
+	 */
+	@Override
+	public Map<String, Number> toMap() {
+		HashMap<String, Number> map = new HashMap<String, Number>();
+		map.put("count", getCount());
+		map.put("sum", getSum());
+		map.put("minimum", getMinimum());
+		map.put("maximum", getMaximum());
+		map.put("mean", getMean());
+		if (values.length > 0) {
+			map.put("p25", getPercentile(0.25d));
+			map.put("p50", getPercentile(0.5d));
+			map.put("p75", getPercentile(0.75d));
+			map.put("p90", getPercentile(0.9d));
+			map.put("p95", getPercentile(0.95d));
+			map.put("p99", getPercentile(0.99d));
+			map.put("p999", getPercentile(0.999d));
+			map.put("p9999", getPercentile(0.9999d));
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{\n");
+		for (Map.Entry<String, Number> entry : toMap().entrySet()) {
+			str.append(entry.getKey()).append(": ").append(entry.getValue()).append(" , \n");
+		}
+		str.append("}");
+		return str.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 31 + Arrays.hashCode(values);
+		result = 31 * result + Arrays.hashCode(weights);
+		result = 31 * result + (int) (count ^ (count >>> 32));
+		return 31 * result + (int) (sum ^ (sum >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DecayingDistribution other = (DecayingDistribution) obj;
+		return count == other.count && sum == other.sum && Arrays.equals(values, other.values)
+				&& Arrays.equals(weights, other.weights);
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A metric that keeps a fixed size sample of its data points, biased towards recent ones
+ * with forward decay (Cormode et al, "Forward Decay: A Practical Time Decay Model for
+ * Streaming Systems"). Each data point gets weight exp(alpha * age in seconds) and a
+ * priority of weight / random. The reservoir keeps the highest priorities, so a point from
+ * an hour ago counts for far less than one from a few seconds ago.
+ * 
+ * The default alpha of 0.015 with 1028 samples puts most of the weight on the last five
+ * minutes. Use this where getFullSummary() has to answer "what is p99 now" on a process that
+ * has been up for days.
+ * 
+ * Adds share a read lock and only write to a ConcurrentSkipListMap. Once an hour the
+ * weights are rescaled under the write lock so they don't overflow.
+ */
+public class DecayingMetric implements TimeBasedMetric, LongMetric {
+
+	public static final int DEFAULT_SIZE = 1028;
+	public static final double DEFAULT_ALPHA = 0.015;
+
+	private static final long RESCALE_THRESHOLD = 60L * 60L * 1000L;
+
+	private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	/**
+	 * A data point and the weight it was given when it arrived.
+	 */
+	static final class Sample {
+		final long value;
+		final double weight;
+
+		Sample(long value, double weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private final int size;
+	private final double alpha;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong nextRescale = new AtomicLong();
+	// samples in the reservoir, up to size
+	private final AtomicInteger kept = new AtomicInteger();
+	private volatile ConcurrentSkipListMap<Double, Sample> samples = new ConcurrentSkipListMap<Double, Sample>();
+	private volatile long startTime;
+
+	public DecayingMetric() {
+		this(DEFAULT_SIZE, DEFAULT_ALPHA);
+	}
+
+	/**
+	 * @param size number of samples kept
+	 * @param alpha how fast old samples lose weight. Higher is faster
+	 */
+	public DecayingMetric(int size, double alpha) {
+		validate(size, alpha);
+		this.size = size;
+		this.alpha = alpha;
+		this.startTime = currentTimeMillis();
+		this.nextRescale.set(startTime + RESCALE_THRESHOLD);
+	}
+
+	static void validate(int size, double alpha) {
+		if (size < 1)
+			throw new IllegalArgumentException("size must be positive, got " + size);
+		if (alpha <= 0)
+			throw new IllegalArgumentException("alpha must be positive, got " + alpha);
+	}
+
+	/**
+	 * Resets the state of this Metric. Clears all data points collected so far.
+	 */
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			samples = new ConcurrentSkipListMap<Double, Sample>();
+			kept.set(0);
+			count.set(0);
+			sum.set(0);
+			startTime = currentTimeMillis();
+			nextRescale.set(startTime + RESCALE_THRESHOLD);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a data point.
+	 */
+	@Override
+	public long add(int n) {
+		return add((long) n);
+	}
+
+	/**
+	 * Adds a data point.
+	 */
+	@Override
+	public long add(long n) {
+		if (n < 0)
+			return count.get();
+		long now = currentTimeMillis();
+		rescaleIfNeeded(now);
+		lock.readLock().lock();
+		try {
+			long total = count.incrementAndGet();
+			sum.addAndGet(n);
+			offer(n, now);
+			return total;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the samples of another DecayingDistribution as if they just arrived. The count and
+	 * sum carry over exactly, the samples only as far as the other reservoir kept them.
+	 */
+	@Override
+	public long add(Distribution dist) {
+		if (!(dist instanceof DecayingDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to a DecayingMetric.");
+		}
+		DecayingDistribution other = (DecayingDistribution) dist;
+		long now = currentTimeMillis();
+		rescaleIfNeeded(now);
+		lock.readLock().lock();
+		try {
+			long[] values = other.getValues();
+			long total = count.addAndGet(other.getCount());
+			sum.addAndGet(other.getSum());
+			for (long value : values) {
+				offer(value, now);
+			}
+			return total;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// callers hold the read lock
+	private void offer(long value, long now) {
+		double weight = Math.exp(alpha * ((now - startTime) / 1000.0d));
+		double priority = weight / (1.0d - RANDOM.get().nextDouble());
+		Sample sample = new Sample(value, weight);
+		ConcurrentSkipListMap<Double, Sample> current = samples;
+		if (reserve()) {
+			current.put(priority, sample);
+		} else {
+			Map.Entry<Double, Sample> lowest = current.firstEntry();
+			if (lowest == null) {
+				// the threads that filled the reservoir haven't put their samples yet
+				current.put(priority, sample);
+			} else if (lowest.getKey() < priority && current.putIfAbsent(priority, sample) == null) {
+				// another thread may have removed the lowest priority already
+				Double first = lowest.getKey();
+				while (current.remove(first) == null) {
+					first = current.firstKey();
+				}
+			}
+		}
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int n = kept.get();
+			if (n >= size)
+				return false;
+			if (kept.compareAndSet(n, n + 1))
+				return true;
+		}
+	}
+
+	private void rescaleIfNeeded(long now) {
+		long next = nextRescale.get();
+		if (now >= next && nextRescale.compareAndSet(next, now + RESCALE_THRESHOLD))
+			rescale(now);
+	}
+
+	private void rescale(long now) {
+		lock.writeLock().lock();
+		try {
+			long oldStart = startTime;
+			startTime = now;
+			double factor = Math.exp(-alpha * ((now - oldStart) / 1000.0d));
+			ConcurrentSkipListMap<Double, Sample> rescaled = new ConcurrentSkipListMap<Double, Sample>();
+			for (Map.Entry<Double, Sample> entry : samples.entrySet()) {
+				Sample sample = entry.getValue();
+				double weight = sample.weight * factor;
+				if (weight > 0)
+					rescaled.put(entry.getKey() * factor, new Sample(sample.value, weight));
+			}
+			samples = rescaled;
+			kept.set(Math.min(size, rescaled.size()));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Override to control the clock, in tests for example.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public DecayingMetric clone() {
+		DecayingMetric copy = new DecayingMetric(size, alpha);
+		lock.readLock().lock();
+		try {
+			copy.samples.putAll(samples);
+			copy.kept.set(kept.get());
+			copy.count.set(count.get());
+			copy.sum.set(sum.get());
+			copy.startTime = startTime;
+			copy.nextRescale.set(nextRescale.get());
+		} finally {
+			lock.readLock().unlock();
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a Distribution for this Metric.
+	 */
+	@Override
+	public DecayingDistribution getDistribution() {
+		List<Sample> copy;
+		long total;
+		long totalSum;
+		lock.readLock().lock();
+		try {
+			copy = new ArrayList<Sample>(samples.values());
+			total = count.get();
+			totalSum = sum.get();
+		} finally {
+			lock.readLock().unlock();
+		}
+		return new DecayingDistribution(copy, total, totalSum);
+	}
+
+}
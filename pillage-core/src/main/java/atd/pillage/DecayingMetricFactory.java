@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * Creates DecayingMetrics for percentiles that follow recent data points.
+ */
+public class DecayingMetricFactory implements MetricFactory {
+
+	private final int size;
+	private final double alpha;
+
+	/**
+	 * Keep 1028 samples with alpha 0.015, roughly the last five minutes.
+	 */
+	public DecayingMetricFactory() {
+		this(DecayingMetric.DEFAULT_SIZE, DecayingMetric.DEFAULT_ALPHA);
+	}
+
+	public DecayingMetricFactory(int size, double alpha) {
+		this.size = size;
+		this.alpha = alpha;
+		DecayingMetric.validate(size, alpha);
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new DecayingMetric(size, alpha);
+	}
+
+}
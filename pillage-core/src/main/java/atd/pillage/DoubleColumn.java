@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Named double values stored as a NameIndex and a parallel double[]. It is also an unmodifiable
+ * Map so code written against the maps keeps working, but values are only boxed when read
+ * through the Map interface. Read value(i) and getIndex().name(i), or use a StatsVisitor,
+ * to skip boxing.
+ */
+public class DoubleColumn extends AbstractMap<String, Double> {
+
+	private final NameIndex index;
+	private final double[] values;
+
+	public DoubleColumn(NameIndex index, double[] values) {
+		if (index.size() != values.length)
+			throw new IllegalArgumentException(values.length + " values for " + index.size() + " names");
+		this.index = index;
+		this.values = values;
+	}
+
+	public NameIndex getIndex() {
+		return index;
+	}
+
+	public double value(int i) {
+		return values[i];
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return index.indexOf(key) >= 0;
+	}
+
+	@Override
+	public Double get(Object key) {
+		int i = index.indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	@Override
+	public Set<Map.Entry<String, Double>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Double>>() {
+			@Override
+			public int size() {
+				return values.length;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Double>> iterator() {
+				return new Iterator<Map.Entry<String, Double>>() {
+					private int i = 0;
+
+					@Override
+					public boolean hasNext() {
+						return i < values.length;
+					}
+
+					@Override
+					public Map.Entry<String, Double> next() {
+						if (i >= values.length)
+							throw new NoSuchElementException();
+						Map.Entry<String, Double> entry = new SimpleImmutableEntry<String, Double>(index.name(i), values[i]);
+						i++;
+						return entry;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+}
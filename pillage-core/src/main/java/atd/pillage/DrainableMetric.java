@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * A metric that can hand over its data points and reset in one step, so nothing recorded
+ * in between is lost. Used by a StatsCollectorImpl in reset on read mode instead of
+ * keeping the previous distribution to subtract.
+ */
+public interface DrainableMetric extends Metric {
+
+	/**
+	 * Take the data points recorded so far and reset.
+	 * 
+	 * @return the distribution of the data points taken
+	 */
+	public Distribution drain();
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An exponentially weighted moving average of a rate, the way UNIX load averages are
+ * computed. Feed it the number of events seen per tick and read the rate back.
+ * 
+ * Only the thread that ticks a Meter writes to its EWMAs. The rate is volatile so any
+ * thread can read it.
+ */
+public class EWMA {
+
+	/**
+	 * Seconds between ticks.
+	 */
+	public static final int TICK_INTERVAL = 5;
+
+	private static final double SECONDS_PER_MINUTE = 60.0;
+	private static final double M1_ALPHA = 1 - Math.exp(-TICK_INTERVAL / SECONDS_PER_MINUTE);
+	private static final double M5_ALPHA = 1 - Math.exp(-TICK_INTERVAL / SECONDS_PER_MINUTE / 5);
+	private static final double M15_ALPHA = 1 - Math.exp(-TICK_INTERVAL / SECONDS_PER_MINUTE / 15);
+
+	private final double alpha;
+	private final double interval;
+	private volatile boolean initialized = false;
+	private volatile double rate = 0.0;
+
+	public static EWMA oneMinute() {
+		return new EWMA(M1_ALPHA, TICK_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	public static EWMA fiveMinutes() {
+		return new EWMA(M5_ALPHA, TICK_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	public static EWMA fifteenMinutes() {
+		return new EWMA(M15_ALPHA, TICK_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param alpha smoothing factor
+	 * @param interval time between ticks
+	 */
+	public EWMA(double alpha, long interval, TimeUnit unit) {
+		this.alpha = alpha;
+		this.interval = unit.toNanos(interval);
+	}
+
+	/**
+	 * Fold the events seen since the last tick into the average.
+	 */
+	public void tick(long events) {
+		double instantRate = events / interval;
+		if (initialized) {
+			rate += alpha * (instantRate - rate);
+		} else {
+			rate = instantRate;
+			initialized = true;
+		}
+	}
+
+	/**
+	 * @return the rate in events per unit
+	 */
+	public double getRate(TimeUnit unit) {
+		return rate * unit.toNanos(1);
+	}
+
+}
@@ -111,7 +111,7 @@ public class GMetricStatsReporter implements StatsReporter {
 	public void report(StatsSummary stats) {
      if ( canReport ){
 		  for( Map.Entry<String, Long> entry : stats.getCounters().entrySet()){
-			  reportCounter( entry.getKey(), entry.getValue() );
+			  reportCounter( MetricKey.flatten(entry.getKey()), entry.getValue() );
 		  }
 		  
 		  for ( Map.Entry<String, String> entry : stats.getLabels().entrySet()){
@@ -119,11 +119,26 @@ public class GMetricStatsReporter implements StatsReporter {
 		  }
 		  
 		  for ( Map.Entry<String, Distribution> entry : stats.getMetrics().entrySet()){
-			  reportMetric( entry.getKey(), entry.getValue() );
+			  reportMetric( MetricKey.flatten(entry.getKey()), entry.getValue() );
 		  }
 		  
 		  for ( Map.Entry<String, Double> entry :stats.getGauges().entrySet()){
-			  reportDouble( entry.getKey(), entry.getValue() );
+			  reportDouble( MetricKey.flatten(entry.getKey()), entry.getValue() );
+		  }
+
+		  for ( Map.Entry<String, MeterSnapshot> entry :stats.getMeters().entrySet()){
+			  reportMeter( MetricKey.flatten(entry.getKey()), entry.getValue() );
+		  }
+
+		  for ( Map.Entry<String, Long> entry :stats.getDistincts().entrySet()){
+			  reportCounter( MetricKey.flatten(entry.getKey()), entry.getValue() );
+		  }
+
+		  for ( Map.Entry<String, TopKSnapshot> entry :stats.getTopKs().entrySet()){
+			  String name = MetricKey.flatten(entry.getKey());
+			  for ( Map.Entry<String, Long> top :entry.getValue().toMap().entrySet()){
+				  reportCounter( TopKSnapshot.reportName(name, top.getKey()), top.getValue() );
+			  }
 		  }
      }
 
@@ -137,6 +152,14 @@ public class GMetricStatsReporter implements StatsReporter {
       }
 	}
 	
+	private void reportMeter( String meter, MeterSnapshot snapshot ){
+      for( Map.Entry<String, Number> entry :snapshot.toMap().entrySet() ){
+    	  StringBuilder str = new StringBuilder(meter);
+    	  str.append("-").append(entry.getKey());
+    	  reportDouble(str.toString(), entry.getValue().doubleValue() );
+      }
+	}
+	
 	private void reportLabel(String label, String value ){
 		StringBuilder cmd = newCommand();
 		cmd.append(NAME).append(label);
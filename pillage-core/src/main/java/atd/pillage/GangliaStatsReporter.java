@@ -177,13 +177,13 @@ public class GangliaStatsReporter implements StatsReporter {
 	public void report(StatsSummary stats) {
 		for(Map.Entry<String,Long> entry :stats.getCounters().entrySet()){
 			send(gangliaAddress, port, hostName,
-					entry.getKey(), entry.getValue().toString(), VALUE_UNSIGNED_INT, "count", SLOPE_BOTH, 60, 0); // tmax 60, dmax 0
+					MetricKey.flatten(entry.getKey()), entry.getValue().toString(), VALUE_UNSIGNED_INT, "count", SLOPE_BOTH, 60, 0); // tmax 60, dmax 0
 		}
 		
 		for(Map.Entry<String, Distribution> entry :stats.getMetrics().entrySet()){
 			for(Map.Entry<String, Number> distEntry :entry.getValue().toMap().entrySet()){
 				StringBuilder str = new StringBuilder();
-				str.append(entry.getKey());
+				str.append(MetricKey.flatten(entry.getKey()));
 				str.append("[");
 				str.append(distEntry.getKey());
 				str.append("]");
@@ -191,6 +191,31 @@ public class GangliaStatsReporter implements StatsReporter {
 					str.toString(), distEntry.getValue().toString(), VALUE_DOUBLE, "dist", SLOPE_BOTH, 60, 0); 
 			}
 		}
+
+		for(Map.Entry<String, MeterSnapshot> entry :stats.getMeters().entrySet()){
+			for(Map.Entry<String, Number> rateEntry :entry.getValue().toMap().entrySet()){
+				StringBuilder str = new StringBuilder();
+				str.append(MetricKey.flatten(entry.getKey()));
+				str.append("[");
+				str.append(rateEntry.getKey());
+				str.append("]");
+				send(gangliaAddress, port, hostName,
+					str.toString(), rateEntry.getValue().toString(), VALUE_DOUBLE, "rate", SLOPE_BOTH, 60, 0);
+			}
+		}
+
+		for(Map.Entry<String,Long> entry :stats.getDistincts().entrySet()){
+			send(gangliaAddress, port, hostName,
+					MetricKey.flatten(entry.getKey()), entry.getValue().toString(), VALUE_UNSIGNED_INT, "distinct", SLOPE_BOTH, 60, 0);
+		}
+
+		for(Map.Entry<String, TopKSnapshot> entry :stats.getTopKs().entrySet()){
+			String name = MetricKey.flatten(entry.getKey());
+			for(Map.Entry<String, Long> top :entry.getValue().toMap().entrySet()){
+				send(gangliaAddress, port, hostName,
+					TopKSnapshot.reportName(name, top.getKey()), top.getValue().toString(), VALUE_UNSIGNED_INT, "count", SLOPE_BOTH, 60, 0);
+			}
+		}
 	}
 
 }
@@ -28,6 +28,10 @@ public class GraphiteStatsReporter implements StatsReporter {
 
 	private void reportMetric(Writer writer, String metric,
 			Distribution distribution) throws IOException {
+		if (distribution instanceof HistogramDistribution) {
+			reportHistogram(writer, metric, (HistogramDistribution) distribution);
+			return;
+		}
 		for (Map.Entry<String, Number> entry : distribution.toMap().entrySet()) {
 			StringBuilder str = new StringBuilder(hostName);
 			str.append(".");
@@ -43,6 +47,38 @@ public class GraphiteStatsReporter implements StatsReporter {
 		}
 	}
 
+	// the same lines toMap() would give, read straight off the distribution
+	private void reportHistogram(Writer writer, String metric,
+			HistogramDistribution distribution) throws IOException {
+		reportNumber(writer, metric + ".count", distribution.getCount());
+		reportNumber(writer, metric + ".sum", distribution.getSum());
+		reportNumber(writer, metric + ".minimum", distribution.getMinimum());
+		reportNumber(writer, metric + ".maximum", distribution.getMaximum());
+		reportNumber(writer, metric + ".mean", (long) distribution.getMean());
+		if (distribution.getCount() > 0) {
+			double[] values = distribution.quantiles(HistogramDistribution.QUANTILES);
+			for (int i = 0; i < values.length; i++)
+				reportNumber(writer, metric + "." + HistogramDistribution.QUANTILE_NAMES[i], (long) values[i]);
+		}
+	}
+
+	private void reportMeter(Writer writer, String meter, MeterSnapshot snapshot)
+			throws IOException {
+		for (Map.Entry<String, Number> entry : snapshot.toMap().entrySet()) {
+			StringBuilder str = new StringBuilder(hostName);
+			str.append(".");
+			str.append(meter);
+			str.append(".");
+			str.append(entry.getKey());
+			str.append(" ");
+			str.append(entry.getValue());
+			str.append(" ");
+			str.append(timestamp());
+			str.append("\n");
+			writer.write(str.toString());
+		}
+	}
+
 	private int timestamp() {
 		return (int) (System.currentTimeMillis() / 1000L);
 	}
@@ -60,13 +96,13 @@ public class GraphiteStatsReporter implements StatsReporter {
 		writer.write(str.toString());
 	}
 
-	private void reportNumber(Writer writer, String name, Number value)
+	private void reportNumber(Writer writer, String name, long value)
 			throws IOException {
 		StringBuilder str = new StringBuilder(hostName);
 		str.append(".");
 		str.append(name);
 		str.append(" ");
-		str.append(value.longValue());
+		str.append(value);
 		str.append(" ");
 		str.append(timestamp());
 		str.append("\n");
@@ -83,22 +119,10 @@ public class GraphiteStatsReporter implements StatsReporter {
 		Writer writer = null;
 		try {
 			writer = getWriter();
-			for (Map.Entry<String, Long> entry : stats.getCounters().entrySet()) {
-				reportNumber(writer, entry.getKey(), entry.getValue());
-			}
-
-			for (Map.Entry<String, String> entry : stats.getLabels().entrySet()) {
-				reportLabel(writer, entry.getKey(), entry.getValue());
-			}
-
-			for (Map.Entry<String, Distribution> entry : stats.getMetrics()
-					.entrySet()) {
-				reportMetric(writer, entry.getKey(), entry.getValue());
-			}
-
-			for (Map.Entry<String, Double> entry : stats.getGauges().entrySet()) {
-				reportNumber(writer, entry.getKey(), entry.getValue());
-			}
+			Lines lines = new Lines(writer);
+			stats.accept(lines);
+			if (lines.failure != null)
+				throw lines.failure;
 			writer.flush();
 		} catch (IOException e) {
 			// cant do nothin
@@ -114,6 +138,91 @@ public class GraphiteStatsReporter implements StatsReporter {
 		}
 	}
 
+	/**
+	 * Writes each stat as a line. The first IOException stops the writing and is kept for
+	 * report() to handle.
+	 */
+	private class Lines implements StatsVisitor {
+		private final Writer writer;
+		private IOException failure;
+
+		Lines(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void counter(String name, long value) {
+			number(name, value);
+		}
+
+		@Override
+		public void label(String name, String value) {
+			if (failure != null)
+				return;
+			try {
+				reportLabel(writer, name, value);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		@Override
+		public void metric(String name, Distribution distribution) {
+			if (failure != null)
+				return;
+			try {
+				reportMetric(writer, MetricKey.flatten(name), distribution);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		@Override
+		public void gauge(String name, double value) {
+			number(name, (long) value);
+		}
+
+		@Override
+		public void meter(String name, MeterSnapshot snapshot) {
+			if (failure != null)
+				return;
+			try {
+				reportMeter(writer, MetricKey.flatten(name), snapshot);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		@Override
+		public void distinct(String name, long estimate) {
+			number(name, estimate);
+		}
+
+		@Override
+		public void topK(String name, TopKSnapshot snapshot) {
+			String flat = MetricKey.flatten(name);
+			for (Map.Entry<String, Long> top : snapshot.toMap().entrySet()) {
+				if (failure != null)
+					return;
+				try {
+					reportNumber(writer, TopKSnapshot.reportName(flat, top.getKey()), top.getValue());
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		}
+
+		private void number(String name, long value) {
+			if (failure != null)
+				return;
+			try {
+				reportNumber(writer, MetricKey.flatten(name), value);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
 	private Writer getWriter() throws IOException {
 		Socket socket = null;
 		try {
@@ -42,6 +42,17 @@ public class Histogram implements Cloneable {
 
     public Histogram(){}
 
+    /**
+     * Build a histogram from raw bucket counts. The array is used as is, it is not copied.
+     */
+    Histogram(long[] buckets, long count, long sum){
+        if (buckets.length != numBuckets)
+            throw new IllegalArgumentException("Expected " + numBuckets + " buckets but got " + buckets.length);
+        this.buckets = buckets;
+        this.count = count;
+        this.sum = sum;
+    }
+
     private static int binarySearch( int[] array, int key, int low, int high) {
         if (low > high) {
           return low;
@@ -85,6 +96,18 @@ public class Histogram implements Cloneable {
         return count;
     }
 
+    /**
+     * Add a long data point. Anything past Integer.MAX_VALUE goes to the infinity bucket.
+     */
+    public long add(long n){
+        if (n > Integer.MAX_VALUE) {
+            addToBucket(numBuckets - 1);
+            sum += n;
+            return count;
+        }
+        return add((int) n);
+    }
+
     public void clear() {
         for(int i=0; i < numBuckets; i++){
             buckets[i] = 0;
@@ -127,6 +150,79 @@ public class Histogram implements Cloneable {
     }
   }
 
+  /**
+   * Several percentiles from one walk over the buckets, each the same as getPercentile()
+   * would give, in the order asked for. A percentile above 1.0 comes back as Int.MaxValue.
+   */
+  public int[] getPercentiles(double... percentiles){
+    int[] out = new int[percentiles.length + 2];
+    scan(percentiles, out);
+    return Arrays.copyOf(out, percentiles.length);
+  }
+
+  /**
+   * Fill out with the percentiles in the order asked for followed by the minimum and the
+   * maximum, walking the buckets once.
+   */
+  void scan(double[] percentiles, int[] out){
+    int n = percentiles.length;
+    // visit the percentiles in ascending order so the running total only moves forward
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      int j = i;
+      while (j > 0 && percentiles[order[j - 1]] > percentiles[i]) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = i;
+    }
+
+    long total = 0L;
+    int next = 0;
+    while (next < n && total >= percentiles[order[next]] * count) {
+      out[order[next++]] = 0;
+    }
+    int first = -1;
+    int last = -1;
+    for (int index = 0; index < buckets.length; index++) {
+      if (buckets[index] != 0) {
+        if (first < 0)
+          first = index;
+        last = index;
+      }
+      total += buckets[index];
+      while (next < n && total >= percentiles[order[next]] * count) {
+        out[order[next++]] = index >= BUCKET_OFFSETS.length ? Integer.MAX_VALUE : getMidpoint(index);
+      }
+    }
+    while (next < n) {
+      out[order[next++]] = Integer.MAX_VALUE;
+    }
+
+    int minimum;
+    if (count == 0)
+      minimum = 0;
+    else if (first < 0 || first >= BUCKET_OFFSETS.length)
+      minimum = Integer.MAX_VALUE;
+    else
+      minimum = getMidpoint(first);
+
+    int maximum;
+    if (buckets[buckets.length - 1] > 0)
+      maximum = Integer.MAX_VALUE;
+    else if (count == 0 || last < 0)
+      maximum = 0;
+    else
+      maximum = getMidpoint(last);
+
+    for (int i = 0; i < n; i++) {
+      if (percentiles[i] == 0.0)
+        out[i] = minimum;
+    }
+    out[n] = minimum;
+    out[n + 1] = maximum;
+  }
+
   /**
    * Maximum value within 5%, but:
    *    0 if no values
@@ -17,6 +17,7 @@
 package atd.pillage;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,8 +28,20 @@ public class HistogramDistribution implements Distribution, Serializable {
 
 	private static final long serialVersionUID = -7341236827901521769L;
 
+	/**
+	 * The percentiles toMap() reports, with their names below.
+	 */
+	static final double[] QUANTILES = {0.25d, 0.5d, 0.75d, 0.9d, 0.95d, 0.99d, 0.999d, 0.9999d};
+	static final String[] QUANTILE_NAMES = {"p25", "p50", "p75", "p90", "p95", "p99", "p999", "p9999"};
+
 	private Histogram histogram;
 
+	// QUANTILES then the minimum and maximum, worked out once on first read
+	private transient volatile int[] scanned;
+
+	// toMap(), built on first read for the reporters and MBean that ask for it every collection
+	private transient volatile Map<String, Number> map;
+
     public HistogramDistribution( Histogram histogram){
         this.histogram = histogram;
     }
@@ -56,7 +69,7 @@ public class HistogramDistribution implements Distribution, Serializable {
      */
     @Override
     public long getMinimum() {
-      return histogram.getMinimum();
+      return scanned()[QUANTILES.length];
     }
 
     /**
@@ -65,7 +78,47 @@ public class HistogramDistribution implements Distribution, Serializable {
      */
     @Override
     public long getMaximum() {
-      return histogram.getMaximum();
+      return scanned()[QUANTILES.length + 1];
+    }
+
+    /**
+     * Values at each quantile, between 0.0 and 1.0, in the order asked for. The QUANTILES
+     * are answered from the values cached for toMap(), anything else walks the buckets once
+     * for all of them.
+     */
+    public double[] quantiles(double... quantiles){
+      double[] values = new double[quantiles.length];
+      int[] cached = scanned();
+      for (int i = 0; i < quantiles.length; i++) {
+        int j = indexOf(quantiles[i]);
+        if (j < 0) {
+          int[] scan = histogram.getPercentiles(quantiles);
+          for (int k = 0; k < scan.length; k++)
+            values[k] = scan[k];
+          return values;
+        }
+        values[i] = cached[j];
+      }
+      return values;
+    }
+
+    private static int indexOf(double quantile){
+      for (int i = 0; i < QUANTILES.length; i++) {
+        if (QUANTILES[i] == quantile)
+          return i;
+      }
+      return -1;
+    }
+
+    // the distribution doesn't change, so one walk over the buckets serves every read
+    private int[] scanned(){
+      int[] values = scanned;
+      if (values == null) {
+        values = new int[QUANTILES.length + 2];
+        histogram.scan(QUANTILES, values);
+        scanned = values;
+      }
+      return values;
     }
 
     /**
@@ -109,26 +162,28 @@ public class HistogramDistribution implements Distribution, Serializable {
      * p9999
      * 
      * where p{num} represents percentile. i.e. p99 means the 99th percentile
+     *
+     * The map is unmodifiable and built once, later calls return the same map.
      */
     @Override
     public Map<String,Number> toMap(){
-        HashMap<String, Number> map = new HashMap<String,Number>();
-        map.put("count", getCount());
-        map.put("sum", getSum());
-        map.put("minimum", getMinimum());
-        map.put("maximum", getMaximum());
-        map.put("mean", getMean());
-        if( histogram.getCount() > 0 ) {
-            map.put("p25", histogram.getPercentile(0.25d));
-            map.put("p50", histogram.getPercentile(0.5d));
-            map.put("p75", histogram.getPercentile(0.75d));
-            map.put("p90", histogram.getPercentile(0.9d));
-            map.put("p95", histogram.getPercentile(0.95d));
-            map.put("p99", histogram.getPercentile(0.99d));
-            map.put("p999", histogram.getPercentile(0.999d));
-            map.put("p9999", histogram.getPercentile(0.9999d));
+        Map<String, Number> cached = map;
+        if (cached == null) {
+            HashMap<String, Number> values = new HashMap<String,Number>();
+            values.put("count", getCount());
+            values.put("sum", getSum());
+            values.put("minimum", getMinimum());
+            values.put("maximum", getMaximum());
+            values.put("mean", getMean());
+            if( histogram.getCount() > 0 ) {
+                int[] scan = scanned();
+                for (int i = 0; i < QUANTILES.length; i++)
+                    values.put(QUANTILE_NAMES[i], scan[i]);
+            }
+            cached = Collections.unmodifiableMap(values);
+            map = cached;
         }
-        return map;
+        return cached;
     }
     
     @Override
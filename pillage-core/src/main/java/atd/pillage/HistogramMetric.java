@@ -17,7 +17,7 @@ package atd.pillage;
 /**
  * This is a metric backed by a histogram.
  */
-public class HistogramMetric implements Metric {
+public class HistogramMetric implements DrainableMetric, LongMetric {
 
   private Histogram histogram;
 
@@ -54,6 +54,20 @@ public class HistogramMetric implements Metric {
     }
   }
 
+  /**
+   * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+   */
+  @Override
+  public long add( long n){
+    if (n > -1) {
+      synchronized(this) {
+        return histogram.add(n);
+      }
+    } else {
+      return histogram.getCount();
+    }
+  }
+
   /**
    * Add a summarized set of data points.
    */
@@ -70,6 +84,19 @@ public class HistogramMetric implements Metric {
     return new HistogramMetric(histogram.clone());
   }
 
+  /**
+   * Swaps in an empty histogram and hands over the old one without copying it.
+   */
+  @Override
+  public HistogramDistribution drain() {
+    Histogram drained;
+    synchronized( this ){
+      drained = histogram;
+      histogram = new Histogram();
+    }
+    return new HistogramDistribution(drained);
+  }
+
   /**
    * Returns a Distribution for this Metric.
    */
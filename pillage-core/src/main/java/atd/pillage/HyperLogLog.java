@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Estimates the number of distinct values it has seen in a fixed amount of memory, after
+ * Flajolet et al, "HyperLogLog: the analysis of a near-optimal cardinality estimation
+ * algorithm". With the default precision of 14 it uses 16KB and the estimate is typically
+ * within 1% of the true count, however many values it sees.
+ * 
+ * Registers are bytes packed four to an int in an AtomicIntegerArray. add() only writes
+ * when it raises a register, with a CAS, so concurrent adds don't lock and most adds of
+ * values already seen don't write at all. Estimators with the same precision merge by
+ * taking the larger of each register, across threads or hosts.
+ * 
+ * Values are mixed with the murmur3 finalizer before use so sequential ids are fine.
+ */
+public class HyperLogLog implements Serializable {
+
+	private static final long serialVersionUID = 1963507125582412871L;
+
+	public static final int DEFAULT_PRECISION = 14;
+
+	private final int precision;
+	private final int registers;
+	private final AtomicIntegerArray words;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision log2 of the number of registers, from 4 to 18. Each step up halves
+	 *        the error and doubles the memory
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18)
+			throw new IllegalArgumentException("precision must be between 4 and 18, got " + precision);
+		this.precision = precision;
+		this.registers = 1 << precision;
+		this.words = new AtomicIntegerArray(registers / 4);
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Add a value, typically an id or a hash of the thing being counted.
+	 */
+	public void add(long value) {
+		long hash = mix(value);
+		int register = (int) (hash >>> (64 - precision));
+		// leading zeros of the remaining bits plus one, capped by a sentinel bit
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		int word = register >>> 2;
+		int shift = (register & 3) << 3;
+		while (true) {
+			int current = words.get(word);
+			if (((current >>> shift) & 0xFF) >= rank)
+				return;
+			int updated = (current & ~(0xFF << shift)) | (rank << shift);
+			if (words.compareAndSet(word, current, updated))
+				return;
+		}
+	}
+
+	/**
+	 * Add a string value.
+	 */
+	public void add(CharSequence value) {
+		add(hash(value));
+	}
+
+	/**
+	 * 64 bit FNV-1a of the characters. String.hashCode() has too few bits for large counts.
+	 */
+	public static long hash(CharSequence value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// murmur3 fmix64
+	static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	int register(int register) {
+		return (words.get(register >>> 2) >>> ((register & 3) << 3)) & 0xFF;
+	}
+
+	/**
+	 * @return estimated number of distinct values added
+	 */
+	public long estimate() {
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < registers; i++) {
+			int rank = register(i);
+			sum += 1.0d / (1L << rank);
+			if (rank == 0)
+				zeros++;
+		}
+		double estimate = alpha() * registers * registers / sum;
+		// small range correction, linear counting is more accurate while registers are empty
+		if (estimate <= 2.5d * registers && zeros > 0)
+			estimate = registers * Math.log((double) registers / zeros);
+		return Math.round(estimate);
+	}
+
+	private double alpha() {
+		switch (registers) {
+		case 16:
+			return 0.673d;
+		case 32:
+			return 0.697d;
+		case 64:
+			return 0.709d;
+		default:
+			return 0.7213d / (1 + 1.079d / registers);
+		}
+	}
+
+	/**
+	 * Fold another estimator with the same precision into this one.
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision)
+			throw new IllegalArgumentException("HyperLogLog with precision " + other.precision
+					+ " cannot be merged into one with precision " + precision);
+		for (int word = 0; word < words.length(); word++) {
+			int theirs = other.words.get(word);
+			if (theirs == 0)
+				continue;
+			while (true) {
+				int current = words.get(word);
+				int updated = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					updated |= Math.max((current >>> shift) & 0xFF, (theirs >>> shift) & 0xFF) << shift;
+				}
+				if (updated == current || words.compareAndSet(word, current, updated))
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Copy the registers, optionally emptying this estimator. Values added while a reset is
+	 * under way land either in the copy or in the emptied estimator, never in neither.
+	 */
+	public HyperLogLog get(boolean reset) {
+		HyperLogLog copy = new HyperLogLog(precision);
+		for (int word = 0; word < words.length(); word++) {
+			copy.words.set(word, reset ? words.getAndSet(word, 0) : words.get(word));
+		}
+		return copy;
+	}
+
+	public void clear() {
+		for (int word = 0; word < words.length(); word++) {
+			words.set(word, 0);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A metric with the same buckets as Histogram that records into one of two buffers. Writers
+ * add to the active buffer with CAS and never block. getIntervalDistribution() swaps in the
+ * other, empty, buffer and uses a WriterReaderPhaser to wait out writers still on the old
+ * one before reading it, so every data point lands in exactly one interval.
+ * 
+ * getDistribution() reads the active buffer without swapping, which is the interval so far
+ * and not a point in time snapshot while writers are active.
+ */
+public class IntervalHistogramMetric implements IntervalMetric, LongMetric {
+
+	private static final int NUM_BUCKETS = Histogram.BUCKET_OFFSETS.length + 1;
+
+	// buffer layout: [sum, count, buckets...]
+	private static final int SUM = 0;
+	private static final int COUNT = 1;
+	private static final int BUCKETS = 2;
+
+	private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+	private volatile AtomicLongArray active = new AtomicLongArray(BUCKETS + NUM_BUCKETS);
+	// only touched under the reader lock
+	private AtomicLongArray inactive = new AtomicLongArray(BUCKETS + NUM_BUCKETS);
+
+	/**
+	 * Resets the state of this Metric.
+	 */
+	@Override
+	public void clear() {
+		phaser.readerLock();
+		try {
+			AtomicLongArray old = active;
+			active = inactive;
+			phaser.flipPhase();
+			reset(old);
+			inactive = old;
+		} finally {
+			phaser.readerUnlock();
+		}
+	}
+
+	/**
+	 * Adds a data point.
+	 * 
+	 * @return the number of data points in the current interval
+	 */
+	@Override
+	public long add(int n) {
+		if (n < 0)
+			return 0L;
+		return record(Histogram.binarySearch(n), n);
+	}
+
+	/**
+	 * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+	 */
+	@Override
+	public long add(long n) {
+		if (n < 0)
+			return 0L;
+		if (n > Integer.MAX_VALUE)
+			return record(NUM_BUCKETS - 1, n);
+		return record(Histogram.binarySearch((int) n), n);
+	}
+
+	private long record(int index, long n) {
+		long epoch = phaser.writerCriticalSectionEnter();
+		try {
+			AtomicLongArray buffer = active;
+			buffer.incrementAndGet(BUCKETS + index);
+			buffer.addAndGet(SUM, n);
+			return buffer.incrementAndGet(COUNT);
+		} finally {
+			phaser.writerCriticalSectionExit(epoch);
+		}
+	}
+
+	/**
+	 * Add a summarized set of data points to the current interval.
+	 */
+	@Override
+	public long add(Distribution dist) {
+		if (!(dist instanceof HistogramDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be added to a IntervalHistogramMetric.");
+		}
+		long[] buckets = ((HistogramDistribution) dist).getHistogram().get(false);
+		long epoch = phaser.writerCriticalSectionEnter();
+		try {
+			AtomicLongArray buffer = active;
+			for (int i = 0; i < buckets.length; i++) {
+				if (buckets[i] != 0)
+					buffer.addAndGet(BUCKETS + i, buckets[i]);
+			}
+			buffer.addAndGet(SUM, dist.getSum());
+			return buffer.addAndGet(COUNT, dist.getCount());
+		} finally {
+			phaser.writerCriticalSectionExit(epoch);
+		}
+	}
+
+	@Override
+	public IntervalHistogramMetric clone() {
+		IntervalHistogramMetric metric = new IntervalHistogramMetric();
+		metric.add(getDistribution());
+		return metric;
+	}
+
+	/**
+	 * Returns the data points recorded so far in the current interval.
+	 */
+	@Override
+	public HistogramDistribution getDistribution() {
+		return read(active);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public HistogramDistribution getIntervalDistribution() {
+		phaser.readerLock();
+		try {
+			AtomicLongArray old = active;
+			active = inactive;
+			phaser.flipPhase();
+			HistogramDistribution interval = read(old);
+			reset(old);
+			inactive = old;
+			return interval;
+		} finally {
+			phaser.readerUnlock();
+		}
+	}
+
+	private static HistogramDistribution read(AtomicLongArray buffer) {
+		long[] buckets = new long[NUM_BUCKETS];
+		long count = 0L;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			buckets[i] = buffer.get(BUCKETS + i);
+			count += buckets[i];
+		}
+		return new HistogramDistribution(new Histogram(buckets, count, buffer.get(SUM)));
+	}
+
+	private static void reset(AtomicLongArray buffer) {
+		for (int i = 0; i < buffer.length(); i++) {
+			buffer.set(i, 0L);
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * A metric that can hand out the data points recorded since it was last asked, resetting
+ * as it goes. The collector reports these directly instead of subtracting the previous
+ * distribution, so it doesn't keep a copy of each one between collections.
+ */
+public interface IntervalMetric extends Metric {
+
+	/**
+	 * Take the data points recorded since the last call and start a new interval.
+	 * 
+	 * @return the distribution of the interval that just ended
+	 */
+	public Distribution getIntervalDistribution();
+
+}
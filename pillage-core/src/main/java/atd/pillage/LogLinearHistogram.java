@@ -0,0 +1,338 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A high dynamic range histogram with log linear buckets, in the style of HdrHistogram.
+ * 
+ * Values are split into power of two ranges and each range is split linearly into enough
+ * sub buckets to keep the configured number of significant decimal digits. Values from 0 up
+ * to highestTrackableValue (at most Long.MAX_VALUE) are tracked. Anything larger lands in
+ * the last bucket.
+ * 
+ * The bucket for a value is found with a leading zero count and a shift, no search.
+ * 
+ * Memory is (bucket ranges + 1) * sub buckets / 2 longs. With 2 significant digits and the full
+ * long range that is 7296 longs (about 57KB). Lower the highest trackable value or the digits
+ * to shrink it.
+ */
+public class LogLinearHistogram implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 2806387734207519745L;
+
+    private final int significantDigits;
+    private final long highestTrackableValue;
+
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+
+    private final long[] counts;
+    private long count = 0;
+    private long sum = 0;
+
+    public LogLinearHistogram(int significantDigits) {
+        this(Long.MAX_VALUE, significantDigits);
+    }
+
+    /**
+     * @param highestTrackableValue largest value that gets its own bucket
+     * @param significantDigits decimal digits of precision kept, 1 to 5
+     */
+    public LogLinearHistogram(long highestTrackableValue, int significantDigits) {
+        validate(highestTrackableValue, significantDigits);
+
+        this.significantDigits = significantDigits;
+        this.highestTrackableValue = highestTrackableValue;
+
+        long largestValueWithSingleUnitResolution = 2L * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        subBucketHalfCountMagnitude = (subBucketCountMagnitude > 1 ? subBucketCountMagnitude : 1) - 1;
+        int subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+        subBucketHalfCount = subBucketCount / 2;
+        subBucketMask = subBucketCount - 1;
+        leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        int bucketCount = bucketsNeeded(highestTrackableValue, subBucketCount);
+        counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+    /**
+     * Check a layout without allocating its buckets.
+     */
+    static void validate(long highestTrackableValue, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5)
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5, got " + significantDigits);
+        if (highestTrackableValue < 2)
+            throw new IllegalArgumentException("highestTrackableValue must be at least 2, got " + highestTrackableValue);
+    }
+
+    private LogLinearHistogram(LogLinearHistogram layout) {
+        significantDigits = layout.significantDigits;
+        highestTrackableValue = layout.highestTrackableValue;
+        subBucketHalfCountMagnitude = layout.subBucketHalfCountMagnitude;
+        subBucketHalfCount = layout.subBucketHalfCount;
+        subBucketMask = layout.subBucketMask;
+        leadingZeroCountBase = layout.leadingZeroCountBase;
+        counts = new long[layout.counts.length];
+    }
+
+    private static int bucketsNeeded(long value, int subBucketCount) {
+        long smallestUntrackableValue = subBucketCount;
+        int buckets = 1;
+        while (smallestUntrackableValue <= value) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2)
+                return buckets + 1;
+            smallestUntrackableValue <<= 1;
+            buckets++;
+        }
+        return buckets;
+    }
+
+    public int getSignificantDigits() { return significantDigits; }
+    public long getHighestTrackableValue() { return highestTrackableValue; }
+    public long getCount() { return count; }
+    public long getSum() { return sum; }
+
+    /**
+     * @return number of buckets
+     */
+    public int size() { return counts.length; }
+
+    /**
+     * Index of the bucket holding value. Negative values are treated as 0.
+     */
+    public int bucketIndex(long value) {
+        if (value < 0)
+            value = 0;
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        int index = ((bucketIndex + 1) << subBucketHalfCountMagnitude) + subBucketIndex - subBucketHalfCount;
+        return index < counts.length ? index : counts.length - 1;
+    }
+
+    /**
+     * Smallest value that lands in the bucket at index.
+     */
+    public long lowestEquivalentValue(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << bucketIndex;
+    }
+
+    private int bucketMagnitude(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        return bucketIndex < 0 ? 0 : bucketIndex;
+    }
+
+    /**
+     * Largest value that lands in the bucket at index.
+     */
+    public long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index) + (1L << bucketMagnitude(index)) - 1;
+    }
+
+    /**
+     * Value reported for the bucket at index.
+     */
+    public long getMidpoint(int index) {
+        return lowestEquivalentValue(index) + ((1L << bucketMagnitude(index)) >> 1);
+    }
+
+    public long add(long value) {
+        counts[bucketIndex(value)]++;
+        sum += value;
+        return ++count;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0L);
+        count = 0;
+        sum = 0;
+    }
+
+    /**
+     * @return a copy of the bucket counts, optionally clearing this histogram
+     */
+    public long[] get(boolean reset) {
+        long[] rv = counts.clone();
+        if (reset) {
+            clear();
+        }
+        return rv;
+    }
+
+    /**
+     * Percentile within the configured precision, but 0 if there are no values.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile == 0.0)
+            return getMinimum();
+        if (count == 0)
+            return 0L;
+
+        long total = 0L;
+        int index = 0;
+        double target = percentile * count;
+        while (index < counts.length) {
+            total += counts[index];
+            if (total >= target && total > 0)
+                return getMidpoint(index);
+            index++;
+        }
+        return getMaximum();
+    }
+
+    public long getMinimum() {
+        if (count == 0)
+            return 0L;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0)
+                return getMidpoint(i);
+        }
+        return 0L;
+    }
+
+    public long getMaximum() {
+        if (count == 0)
+            return 0L;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0)
+                return getMidpoint(i);
+        }
+        return 0L;
+    }
+
+    /**
+     * Two histograms are compatible when they bucket values the same way.
+     */
+    public boolean isCompatible(LogLinearHistogram other) {
+        return significantDigits == other.significantDigits;
+    }
+
+    private void checkCompatible(LogLinearHistogram other) {
+        if (!isCompatible(other))
+            throw new IllegalArgumentException("Cannot combine a histogram with " + other.significantDigits
+                    + " significant digits with one with " + significantDigits);
+    }
+
+    /**
+     * Add the counts of other to this histogram. Buckets past this histogram's range go
+     * to its last bucket.
+     */
+    public void merge(LogLinearHistogram other) {
+        checkCompatible(other);
+        if (other.count > 0) {
+            int shared = Math.min(counts.length, other.counts.length);
+            for (int i = 0; i < shared; i++) {
+                counts[i] += other.counts[i];
+            }
+            for (int i = shared; i < other.counts.length; i++) {
+                counts[counts.length - 1] += other.counts[i];
+            }
+            count += other.count;
+            sum += other.sum;
+        }
+    }
+
+    /**
+     * Create a new histogram with the counts of other subtracted from this one.
+     */
+    public LogLinearHistogram minus(LogLinearHistogram other) {
+        checkCompatible(other);
+        LogLinearHistogram rv = clone();
+        int shared = Math.min(counts.length, other.counts.length);
+        for (int i = 0; i < shared; i++) {
+            rv.counts[i] -= other.counts[i];
+        }
+        for (int i = shared; i < other.counts.length; i++) {
+            rv.counts[counts.length - 1] -= other.counts[i];
+        }
+        rv.count -= other.count;
+        rv.sum -= other.sum;
+        return rv;
+    }
+
+    @Override
+    public LogLinearHistogram clone() {
+        LogLinearHistogram hist = new LogLinearHistogram(this);
+        System.arraycopy(counts, 0, hist.counts, 0, counts.length);
+        hist.count = count;
+        hist.sum = sum;
+        return hist;
+    }
+
+    public LogLinearDistribution getDistribution() {
+        return new LogLinearDistribution(clone());
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(counts);
+        result = prime * result + (int) (count ^ (count >>> 32));
+        result = prime * result + (int) (sum ^ (sum >>> 32));
+        result = prime * result + significantDigits;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        LogLinearHistogram other = (LogLinearHistogram) obj;
+        if (significantDigits != other.significantDigits)
+            return false;
+        if (!Arrays.equals(counts, other.counts))
+            return false;
+        if (count != other.count)
+            return false;
+        if (sum != other.sum)
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append("<LogLinearHistogram count=");
+        str.append(count);
+        str.append(" sum=");
+        str.append(sum);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                str.append(" ");
+                str.append(lowestEquivalentValue(i));
+                str.append("=");
+                str.append(counts[i]);
+            }
+        }
+        str.append(" />");
+        return str.toString();
+    }
+}
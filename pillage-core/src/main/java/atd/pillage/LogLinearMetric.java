@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+/**
+ * This is a metric backed by a LogLinearHistogram. Use it for values that don't fit the
+ * fixed Histogram buckets, like nanosecond timings and byte sizes.
+ */
+public class LogLinearMetric implements DrainableMetric, LongMetric {
+
+  private LogLinearHistogram histogram;
+
+  public LogLinearMetric( LogLinearHistogram histogram) {
+      this.histogram = histogram;
+  }
+
+  public LogLinearMetric( int significantDigits ){
+      this.histogram = new LogLinearHistogram(significantDigits);
+  }
+
+  /**
+   * Resets the state of this Metric. Clears all data points collected so far.
+   */
+  @Override
+  public void clear() {
+    synchronized(this) {
+      histogram.clear();
+    }
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public long add( int n){
+    return add( (long) n );
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public long add( long n){
+    synchronized(this) {
+      if (n > -1)
+        return histogram.add(n);
+      return histogram.getCount();
+    }
+  }
+
+  /**
+   * Add a summarized set of data points. The distribution must come from a histogram with
+   * the same significant digits.
+   */
+  @Override
+  public long add(Distribution dist) {
+    if ( ! ( dist instanceof LogLinearDistribution) ){
+      throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to a LogLinearMetric.");
+    }
+    LogLinearHistogram other = ((LogLinearDistribution) dist).getHistogram();
+    synchronized( this ){
+      histogram.merge( other );
+      return histogram.getCount();
+    }
+  }
+
+  @Override
+  public LogLinearMetric clone(){
+    synchronized( this ){
+      return new LogLinearMetric(histogram.clone());
+    }
+  }
+
+  /**
+   * Copies the data points out and clears, under the same lock as add.
+   */
+  @Override
+  public LogLinearDistribution drain() {
+      synchronized( this) {
+        LogLinearDistribution dist = histogram.getDistribution();
+        histogram.clear();
+        return dist;
+      }
+  }
+
+  /**
+   * Returns a Distribution for this Metric.
+   */
+  @Override
+  public LogLinearDistribution getDistribution() {
+      synchronized( this) {
+        return histogram.getDistribution();
+      }
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * Creates LogLinearMetrics that all share the same bucket layout so their distributions
+ * can be merged and subtracted.
+ */
+public class LogLinearMetricFactory implements MetricFactory {
+
+	private final long highestTrackableValue;
+	private final int significantDigits;
+
+	/**
+	 * Track the full long range with 2 significant digits.
+	 */
+	public LogLinearMetricFactory() {
+		this(Long.MAX_VALUE, 2);
+	}
+
+	public LogLinearMetricFactory(int significantDigits) {
+		this(Long.MAX_VALUE, significantDigits);
+	}
+
+	public LogLinearMetricFactory(long highestTrackableValue, int significantDigits) {
+		this.highestTrackableValue = highestTrackableValue;
+		this.significantDigits = significantDigits;
+		LogLinearHistogram.validate(highestTrackableValue, significantDigits);
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new LogLinearMetric(new LogLinearHistogram(highestTrackableValue, significantDigits));
+	}
+
+}
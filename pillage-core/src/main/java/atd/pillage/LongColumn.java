@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Named long values stored as a NameIndex and a parallel long[]. It is also an unmodifiable
+ * Map so code written against the maps keeps working, but values are only boxed when read
+ * through the Map interface. Read value(i) and getIndex().name(i), or use a StatsVisitor,
+ * to skip boxing.
+ */
+public class LongColumn extends AbstractMap<String, Long> {
+
+	private final NameIndex index;
+	private final long[] values;
+
+	public LongColumn(NameIndex index, long[] values) {
+		if (index.size() != values.length)
+			throw new IllegalArgumentException(values.length + " values for " + index.size() + " names");
+		this.index = index;
+		this.values = values;
+	}
+
+	public NameIndex getIndex() {
+		return index;
+	}
+
+	public long value(int i) {
+		return values[i];
+	}
+
+	/**
+	 * @return a column with the zero values left out
+	 */
+	public LongColumn withoutZeros() {
+		NameIndex.Builder names = new NameIndex.Builder(null);
+		long[] kept = new long[values.length];
+		int n = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != 0) {
+				names.add(index.name(i));
+				kept[n++] = values[i];
+			}
+		}
+		return n == values.length ? this : new LongColumn(names.build(), Arrays.copyOf(kept, n));
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return index.indexOf(key) >= 0;
+	}
+
+	@Override
+	public Long get(Object key) {
+		int i = index.indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	@Override
+	public Set<Map.Entry<String, Long>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Long>>() {
+			@Override
+			public int size() {
+				return values.length;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Long>> iterator() {
+				return new Iterator<Map.Entry<String, Long>>() {
+					private int i = 0;
+
+					@Override
+					public boolean hasNext() {
+						return i < values.length;
+					}
+
+					@Override
+					public Map.Entry<String, Long> next() {
+						if (i >= values.length)
+							throw new NoSuchElementException();
+						Map.Entry<String, Long> entry = new SimpleImmutableEntry<String, Long>(index.name(i), values[i]);
+						i++;
+						return entry;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package atd.pillage;
+
+/**
+ * A metric that takes long data points as they are. Metric itself only takes ints, so
+ * existing implementations keep working; StatUtils.add(Metric, long) clamps long values for
+ * those.
+ */
+public interface LongMetric extends Metric {
+
+	/**
+	 * add a long data point value to the metric. Implementations that can't represent
+	 * the full long range clamp the value to the largest value they track.
+	 * @param l long
+	 * @return  data point count
+	 */
+	public long add(long l);
+
+}
@@ -0,0 +1,209 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A StatsContainer that mirrors its counters and histogram metrics into a memory mapped
+ * file, in the spirit of hsperfdata. Tools in other processes read the file with
+ * MappedStatsReader and never touch the application: no JMX, no sockets.
+ * 
+ * Recording still goes to the regular counters and metrics. publish() copies their values
+ * into the file from one thread at a time. Each record is written as a fresh checksummed
+ * copy, see MappedStatsRegion, so readers never accept a half written record. publish()
+ * runs on every flush(), so a StatsCollectorImpl publishes once per collection. Call it
+ * from a scheduled task to publish more often.
+ * 
+ * Only metrics with a HistogramDistribution or CompactDistribution are published. Names are
+ * kept in the index for the life of the file. A name dropped from the container is
+ * published as zero.
+ * 
+ * @author ATD
+ */
+public class MappedStatsContainer extends StatsContainerImpl {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final int maxEntries;
+	private final MappedByteBuffer buffer;
+	private final Map<String, Integer> counterOffsets = new HashMap<String, Integer>();
+	private final Map<String, Integer> metricOffsets = new HashMap<String, Integer>();
+	private int entryCount = 0;
+	private int nextData;
+	private int dropped = 0;
+	private final long[] counterPayload = new long[MappedStatsRegion.COUNTER_WORDS];
+	private final long[] metricPayload = new long[MappedStatsRegion.METRIC_WORDS];
+
+	/**
+	 * Create or truncate the file and map it.
+	 * 
+	 * @param maxEntries number of counters plus metrics the file has room for
+	 */
+	public MappedStatsContainer(File file, int maxEntries, MetricFactory mFactory) throws IOException {
+		this(file, maxEntries, mFactory, new AtomicCounterFactory());
+	}
+
+	public MappedStatsContainer(File file, int maxEntries, MetricFactory mFactory, CounterFactory cFactory) throws IOException {
+		super(mFactory, cFactory);
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be positive, got " + maxEntries);
+		long size = MappedStatsRegion.fileSize(maxEntries);
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("maxEntries " + maxEntries + " doesn't fit a single mapping");
+		this.file = file;
+		this.maxEntries = maxEntries;
+		this.nextData = MappedStatsRegion.dataStart(maxEntries);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(size);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(MappedStatsRegion.VERSION_OFFSET, MappedStatsRegion.VERSION);
+		buffer.putInt(MappedStatsRegion.MAX_ENTRIES_OFFSET, maxEntries);
+		buffer.putInt(MappedStatsRegion.ENTRY_COUNT_OFFSET, 0);
+		buffer.putLong(MappedStatsRegion.START_OFFSET, start);
+		buffer.putInt(MappedStatsRegion.BUCKETS_OFFSET, MappedStatsRegion.NUM_BUCKETS);
+		// magic goes last so a reader that checks it isn't handed a blank header
+		buffer.putInt(MappedStatsRegion.MAGIC_OFFSET, MappedStatsRegion.MAGIC);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Also publishes the current values to the mapped file.
+	 */
+	@Override
+	public void flush() {
+		super.flush();
+		publish();
+	}
+
+	/**
+	 * Copy the current counter and metric values into the mapped file.
+	 */
+	public synchronized void publish() {
+		for (Map.Entry<String, Integer> entry : counterOffsets.entrySet()) {
+			if (!counterMap.containsKey(entry.getKey()))
+				writeCounter(entry.getValue(), 0L);
+		}
+		for (Map.Entry<String, Counter> entry : counterMap.entrySet()) {
+			Integer offset = counterOffsets.get(entry.getKey());
+			if (offset == null) {
+				offset = register(entry.getKey(), MappedStatsRegion.TYPE_COUNTER, MappedStatsRegion.COUNTER_BYTES);
+				if (offset < 0)
+					continue;
+				counterOffsets.put(entry.getKey(), offset);
+			}
+			writeCounter(offset, entry.getValue().value());
+		}
+
+		long[] empty = null;
+		for (Map.Entry<String, Integer> entry : metricOffsets.entrySet()) {
+			if (!metricMap.containsKey(entry.getKey())) {
+				if (empty == null)
+					empty = new long[MappedStatsRegion.NUM_BUCKETS];
+				writeMetric(entry.getValue(), 0L, 0L, empty);
+			}
+		}
+		for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+			Distribution dist = entry.getValue().getDistribution();
+			Histogram histogram;
+			if (dist instanceof HistogramDistribution)
+				histogram = ((HistogramDistribution) dist).getHistogram();
+			else if (dist instanceof CompactDistribution)
+				histogram = ((CompactDistribution) dist).getHistogram().toHistogram();
+			else
+				continue;
+			Integer offset = metricOffsets.get(entry.getKey());
+			if (offset == null) {
+				offset = register(entry.getKey(), MappedStatsRegion.TYPE_METRIC, MappedStatsRegion.METRIC_BYTES);
+				if (offset < 0)
+					continue;
+				metricOffsets.put(entry.getKey(), offset);
+			}
+			writeMetric(offset, histogram.getCount(), histogram.getSum(), histogram.get(false));
+		}
+		buffer.putLong(MappedStatsRegion.START_OFFSET, start);
+		buffer.putLong(MappedStatsRegion.PUBLISHED_OFFSET, System.currentTimeMillis());
+	}
+
+	private int register(String name, byte type, int dataBytes) {
+		byte[] bytes = name.getBytes(UTF8);
+		if (entryCount == maxEntries || bytes.length > MappedStatsRegion.MAX_NAME_BYTES) {
+			buffer.putInt(MappedStatsRegion.DROPPED_OFFSET, ++dropped);
+			return -1;
+		}
+		int data = nextData;
+		nextData += dataBytes;
+
+		int entry = MappedStatsRegion.entryOffset(entryCount);
+		buffer.put(entry + MappedStatsRegion.ENTRY_TYPE, type);
+		buffer.putShort(entry + MappedStatsRegion.ENTRY_NAME_LENGTH, (short) bytes.length);
+		buffer.putInt(entry + MappedStatsRegion.ENTRY_DATA_OFFSET, data);
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(entry + MappedStatsRegion.ENTRY_NAME + i, bytes[i]);
+		}
+		buffer.putLong(entry + MappedStatsRegion.ENTRY_CHECKSUM, MappedStatsRegion.entryChecksum(type, data, bytes, bytes.length));
+		buffer.putInt(MappedStatsRegion.ENTRY_COUNT_OFFSET, ++entryCount);
+		return data;
+	}
+
+	private void writeCounter(int offset, long value) {
+		counterPayload[0] = value;
+		writeRecord(offset, counterPayload);
+	}
+
+	private void writeMetric(int offset, long count, long sum, long[] buckets) {
+		metricPayload[0] = count;
+		metricPayload[1] = sum;
+		System.arraycopy(buckets, 0, metricPayload, 2, buckets.length);
+		writeRecord(offset, metricPayload);
+	}
+
+	/**
+	 * Copy the payload into the slot readers aren't pointed at, then publish its version.
+	 */
+	private void writeRecord(int offset, long[] payload) {
+		long version = buffer.getLong(offset) + 1;
+		int slot = MappedStatsRegion.slotOffset(offset, version, payload.length);
+		for (int i = 0; i < payload.length; i++) {
+			buffer.putLong(slot + MappedStatsRegion.SLOT_PAYLOAD + i * 8, payload[i]);
+		}
+		buffer.putLong(slot + MappedStatsRegion.SLOT_CHECKSUM, MappedStatsRegion.checksum(version, payload));
+		buffer.putLong(slot + MappedStatsRegion.SLOT_VERSION, version);
+		buffer.putLong(offset, version);
+	}
+}
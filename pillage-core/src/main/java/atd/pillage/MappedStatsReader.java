@@ -0,0 +1,155 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the file written by a MappedStatsContainer, usually from another JVM, and turns it
+ * into a StatsSummary. Reading never blocks or signals the writing process.
+ * 
+ * @author ATD
+ */
+public class MappedStatsReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_RETRIES = 1000;
+
+	private final MappedByteBuffer buffer;
+	private final int maxEntries;
+
+	/**
+	 * Map the file read only.
+	 * 
+	 * @throws IOException if the file can't be mapped or isn't a pillage stats file
+	 */
+	public MappedStatsReader(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.capacity() < MappedStatsRegion.HEADER_BYTES || buffer.getInt(MappedStatsRegion.MAGIC_OFFSET) != MappedStatsRegion.MAGIC)
+			throw new IOException(file + " is not a pillage stats file");
+		if (buffer.getInt(MappedStatsRegion.VERSION_OFFSET) != MappedStatsRegion.VERSION)
+			throw new IOException(file + " has unsupported version " + buffer.getInt(MappedStatsRegion.VERSION_OFFSET));
+		if (buffer.getInt(MappedStatsRegion.BUCKETS_OFFSET) != MappedStatsRegion.NUM_BUCKETS)
+			throw new IOException(file + " uses an incompatible histogram layout");
+		maxEntries = buffer.getInt(MappedStatsRegion.MAX_ENTRIES_OFFSET);
+	}
+
+	/**
+	 * @return names the writer couldn't fit into the file
+	 */
+	public int getDropped() {
+		return buffer.getInt(MappedStatsRegion.DROPPED_OFFSET);
+	}
+
+	/**
+	 * Read every published counter and metric. Records being written at that moment are
+	 * retried. A record that keeps changing is left out of the summary.
+	 * 
+	 * The summary spans from the writer's start to its last publish.
+	 */
+	public StatsSummary read() {
+		Map<String, Long> counters = new HashMap<String, Long>();
+		Map<String, Distribution> metrics = new HashMap<String, Distribution>();
+
+		int entries = Math.min(buffer.getInt(MappedStatsRegion.ENTRY_COUNT_OFFSET), maxEntries);
+		byte[] name = new byte[MappedStatsRegion.MAX_NAME_BYTES];
+		for (int i = 0; i < entries; i++) {
+			int entry = MappedStatsRegion.entryOffset(i);
+			byte type = buffer.get(entry + MappedStatsRegion.ENTRY_TYPE);
+			int length = buffer.getShort(entry + MappedStatsRegion.ENTRY_NAME_LENGTH);
+			int data = buffer.getInt(entry + MappedStatsRegion.ENTRY_DATA_OFFSET);
+			long checksum = buffer.getLong(entry + MappedStatsRegion.ENTRY_CHECKSUM);
+			if (length < 0 || length > MappedStatsRegion.MAX_NAME_BYTES)
+				continue;
+			for (int j = 0; j < length; j++) {
+				name[j] = buffer.get(entry + MappedStatsRegion.ENTRY_NAME + j);
+			}
+			// an entry still being registered is picked up by the next read
+			if (checksum != MappedStatsRegion.entryChecksum(type, data, name, length))
+				continue;
+			if (data < MappedStatsRegion.dataStart(maxEntries) || data > buffer.capacity() - MappedStatsRegion.METRIC_BYTES)
+				continue;
+			String key = new String(name, 0, length, UTF8);
+			if (type == MappedStatsRegion.TYPE_COUNTER) {
+				Long value = readCounter(data);
+				if (value != null)
+					counters.put(key, value);
+			} else if (type == MappedStatsRegion.TYPE_METRIC) {
+				Histogram histogram = readMetric(data);
+				if (histogram != null)
+					metrics.put(key, new HistogramDistribution(histogram));
+			}
+		}
+
+		return new StatsSummary(counters, metrics, new HashMap<String, String>(),
+				buffer.getLong(MappedStatsRegion.START_OFFSET), buffer.getLong(MappedStatsRegion.PUBLISHED_OFFSET));
+	}
+
+	private Long readCounter(int offset) {
+		long[] payload = readRecord(offset, MappedStatsRegion.COUNTER_WORDS);
+		return payload == null ? null : payload[0];
+	}
+
+	private Histogram readMetric(int offset) {
+		long[] payload = readRecord(offset, MappedStatsRegion.METRIC_WORDS);
+		if (payload == null)
+			return null;
+		long[] buckets = new long[MappedStatsRegion.NUM_BUCKETS];
+		System.arraycopy(payload, 2, buckets, 0, buckets.length);
+		return new Histogram(buckets, payload[0], payload[1]);
+	}
+
+	/**
+	 * Copy the published slot of a record. The copy is only trusted when its version and
+	 * checksum agree with what was published, see MappedStatsRegion.
+	 * 
+	 * @return the payload, or null if the record was never published or kept changing
+	 */
+	private long[] readRecord(int offset, int words) {
+		long[] payload = new long[words];
+		for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+			long version = buffer.getLong(offset);
+			if (version == 0)
+				return null;
+			int slot = MappedStatsRegion.slotOffset(offset, version, words);
+			long slotVersion = buffer.getLong(slot + MappedStatsRegion.SLOT_VERSION);
+			long checksum = buffer.getLong(slot + MappedStatsRegion.SLOT_CHECKSUM);
+			for (int i = 0; i < words; i++) {
+				payload[i] = buffer.getLong(slot + MappedStatsRegion.SLOT_PAYLOAD + i * 8);
+			}
+			if (slotVersion == version && checksum == MappedStatsRegion.checksum(version, payload)
+					&& buffer.getLong(offset) == version)
+				return payload;
+			Thread.yield();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * Layout of the memory mapped stats file shared by MappedStatsContainer and
+ * MappedStatsReader. All values are big endian.
+ * 
+ * <pre>
+ * header, HEADER_BYTES
+ *   0  int  magic "PILG"
+ *   4  int  version
+ *   8  int  max entries
+ *   12 int  published entry count
+ *   16 long start millis
+ *   24 long last publish millis
+ *   32 int  buckets per histogram
+ *   36 int  names dropped because the region was full or the name was too long
+ * index, ENTRY_BYTES per entry
+ *   0  byte  type, TYPE_COUNTER or TYPE_METRIC
+ *   2  short name length in bytes
+ *   4  int   offset of the entry's data
+ *   8  long  checksum of type, name length, data offset and name
+ *   16 bytes UTF-8 name, up to MAX_NAME_BYTES
+ * data, a record per entry
+ *   0  long  published version, 0 until the first publish
+ *   8  slot for odd versions
+ *   .. slot for even versions
+ * slot
+ *   0  long  version
+ *   8  long  checksum of version and payload
+ *   16 payload, counter: long value
+ *               metric:  long count, long sum, long per bucket
+ * </pre>
+ * 
+ * A record is never updated in place. The writer copies the new values into the slot the
+ * published version doesn't point at, then stores the new version in the record's first word.
+ * A reader takes the published version, copies the slot it selects and accepts the copy only
+ * if the slot carries that version, its checksum matches and the published version hasn't
+ * moved. Otherwise it retries.
+ * 
+ * The checksum is what makes this correct, not the order of the stores. The reader usually
+ * lives in another process, where the Java memory model promises nothing, and Java 6 has no
+ * portable fence for mapped memory, so a reader may observe the writer's stores in any order.
+ * A copy that mixes words from two writes of the same slot still fails the checksum except
+ * with probability around 2^-64, so it is never accepted. Double buffering keeps that case
+ * rare: the writer only touches the slot the reader is copying after it has published the
+ * record once more and started yet another write. Index entries are written once and are
+ * checked the same way, so a reader that races a registration skips that entry until the next
+ * read. The header is written before the magic, and a reader that sees the magic too early
+ * rejects the file rather than guessing.
+ */
+final class MappedStatsRegion {
+
+	static final int MAGIC = 0x50494C47;
+	static final int VERSION = 2;
+
+	static final int HEADER_BYTES = 64;
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int MAX_ENTRIES_OFFSET = 8;
+	static final int ENTRY_COUNT_OFFSET = 12;
+	static final int START_OFFSET = 16;
+	static final int PUBLISHED_OFFSET = 24;
+	static final int BUCKETS_OFFSET = 32;
+	static final int DROPPED_OFFSET = 36;
+
+	static final int ENTRY_BYTES = 128;
+	static final int ENTRY_TYPE = 0;
+	static final int ENTRY_NAME_LENGTH = 2;
+	static final int ENTRY_DATA_OFFSET = 4;
+	static final int ENTRY_CHECKSUM = 8;
+	static final int ENTRY_NAME = 16;
+	static final int MAX_NAME_BYTES = ENTRY_BYTES - ENTRY_NAME;
+
+	static final byte TYPE_COUNTER = 1;
+	static final byte TYPE_METRIC = 2;
+
+	static final int NUM_BUCKETS = Histogram.BUCKET_OFFSETS.length + 1;
+	static final int SLOT_VERSION = 0;
+	static final int SLOT_CHECKSUM = 8;
+	static final int SLOT_PAYLOAD = 16;
+	static final int COUNTER_WORDS = 1;
+	static final int METRIC_WORDS = 2 + NUM_BUCKETS;
+	static final int COUNTER_BYTES = recordBytes(COUNTER_WORDS);
+	static final int METRIC_BYTES = recordBytes(METRIC_WORDS);
+
+	private MappedStatsRegion() {
+	}
+
+	static long fileSize(int maxEntries) {
+		return HEADER_BYTES + (long) maxEntries * (ENTRY_BYTES + METRIC_BYTES);
+	}
+
+	static int entryOffset(int entry) {
+		return HEADER_BYTES + entry * ENTRY_BYTES;
+	}
+
+	static int dataStart(int maxEntries) {
+		return HEADER_BYTES + maxEntries * ENTRY_BYTES;
+	}
+
+	static int recordBytes(int payloadWords) {
+		return 8 + 2 * slotBytes(payloadWords);
+	}
+
+	/**
+	 * @return offset of the slot that holds the given version of a record
+	 */
+	static int slotOffset(int record, long version, int payloadWords) {
+		return record + 8 + (int) (version & 1) * slotBytes(payloadWords);
+	}
+
+	private static int slotBytes(int payloadWords) {
+		return SLOT_PAYLOAD + payloadWords * 8;
+	}
+
+	/**
+	 * Checksum of a slot's version and payload.
+	 */
+	static long checksum(long version, long[] payload) {
+		long h = mix(MAGIC, version);
+		for (int i = 0; i < payload.length; i++) {
+			h = mix(h, payload[i]);
+		}
+		return h;
+	}
+
+	/**
+	 * Checksum of an index entry.
+	 */
+	static long entryChecksum(byte type, int data, byte[] name, int length) {
+		long h = mix(MAGIC, type);
+		h = mix(h, length);
+		h = mix(h, data);
+		for (int i = 0; i < length; i++) {
+			h = mix(h, name[i]);
+		}
+		return h;
+	}
+
+	private static long mix(long h, long word) {
+		h ^= word;
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the rate of events: the mean rate since creation and 1, 5 and 15 minute
+ * exponentially weighted moving averages, all in events per second. Rates don't depend on
+ * how often the collector runs.
+ * 
+ * mark() adds to one AtomicLong after checking whether a tick is due. The averages tick
+ * lazily every 5 seconds on whichever thread marks or reads first once a tick is due. That
+ * thread feeds the events since the last tick to all three averages, so there is no timer
+ * thread and no extra atomics per mark.
+ */
+public class Meter {
+
+	private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(EWMA.TICK_INTERVAL);
+
+	private final EWMA m1 = EWMA.oneMinute();
+	private final EWMA m5 = EWMA.fiveMinutes();
+	private final EWMA m15 = EWMA.fifteenMinutes();
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong lastTick;
+	private final long startTime;
+	// count at the last tick, only touched by the ticking thread
+	private long tickedCount = 0;
+
+	public Meter() {
+		this.startTime = nanoTime();
+		this.lastTick = new AtomicLong(startTime);
+	}
+
+	/**
+	 * Mark one event.
+	 */
+	public void mark() {
+		mark(1);
+	}
+
+	/**
+	 * Mark n events.
+	 */
+	public void mark(long n) {
+		tickIfNecessary();
+		count.addAndGet(n);
+	}
+
+	private void tickIfNecessary() {
+		long oldTick = lastTick.get();
+		long newTick = nanoTime();
+		long age = newTick - oldTick;
+		if (age > TICK_INTERVAL) {
+			long newIntervalStartTick = newTick - age % TICK_INTERVAL;
+			if (lastTick.compareAndSet(oldTick, newIntervalStartTick)) {
+				long requiredTicks = age / TICK_INTERVAL;
+				synchronized (this) {
+					long current = count.get();
+					long events = current - tickedCount;
+					tickedCount = current;
+					for (long i = 0; i < requiredTicks; i++) {
+						m1.tick(events);
+						m5.tick(events);
+						m15.tick(events);
+						events = 0;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return events marked since this meter was created
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return events per second since this meter was created
+	 */
+	public double getMeanRate() {
+		long count = getCount();
+		if (count == 0)
+			return 0.0;
+		double elapsed = nanoTime() - startTime;
+		return count / elapsed * TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return one minute moving average in events per second
+	 */
+	public double getOneMinuteRate() {
+		tickIfNecessary();
+		return m1.getRate(TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return five minute moving average in events per second
+	 */
+	public double getFiveMinuteRate() {
+		tickIfNecessary();
+		return m5.getRate(TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return fifteen minute moving average in events per second
+	 */
+	public double getFifteenMinuteRate() {
+		tickIfNecessary();
+		return m15.getRate(TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return the current count and rates
+	 */
+	public MeterSnapshot getSnapshot() {
+		tickIfNecessary();
+		return new MeterSnapshot(getCount(), getMeanRate(), m1.getRate(TimeUnit.SECONDS),
+				m5.getRate(TimeUnit.SECONDS), m15.getRate(TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Override to control the clock, in tests for example.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The count and rates of a Meter at one point in time. Rates are events per second.
+ */
+public class MeterSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 6209415262512936012L;
+
+	private final long count;
+	private final double meanRate;
+	private final double oneMinuteRate;
+	private final double fiveMinuteRate;
+	private final double fifteenMinuteRate;
+
+	public MeterSnapshot(long count, double meanRate, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate) {
+		this.count = count;
+		this.meanRate = meanRate;
+		this.oneMinuteRate = oneMinuteRate;
+		this.fiveMinuteRate = fiveMinuteRate;
+		this.fifteenMinuteRate = fifteenMinuteRate;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanRate() {
+		return meanRate;
+	}
+
+	public double getOneMinuteRate() {
+		return oneMinuteRate;
+	}
+
+	public double getFiveMinuteRate() {
+		return fiveMinuteRate;
+	}
+
+	public double getFifteenMinuteRate() {
+		return fifteenMinuteRate;
+	}
+
+	/**
+	 * this will return
+	 * count
+	 * mean_rate
+	 * m1_rate
+	 * m5_rate
+	 * m15_rate
+	 */
+	public Map<String, Number> toMap() {
+		HashMap<String, Number> map = new HashMap<String, Number>();
+		map.put("count", count);
+		map.put("mean_rate", meanRate);
+		map.put("m1_rate", oneMinuteRate);
+		map.put("m5_rate", fiveMinuteRate);
+		map.put("m15_rate", fifteenMinuteRate);
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{\n");
+		for (Map.Entry<String, Number> entry : toMap().entrySet()) {
+			str.append(entry.getKey()).append(": ").append(entry.getValue()).append(" , \n");
+		}
+		str.append("}");
+		return str.toString();
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * A pre-resolved reference to a named metric. Works like CounterHandle: resolve it once
+ * with StatsContainerImpl.metricHandle(name) and add data points through it without a map
+ * lookup.
+ * 
+ * @author ATD
+ */
+public class MetricHandle {
+
+	private static final class Binding {
+		final Metric metric;
+		final int generation;
+
+		Binding(Metric metric, int generation) {
+			this.metric = metric;
+			this.generation = generation;
+		}
+	}
+
+	private final StatsContainerImpl container;
+	private final String name;
+
+	// Binding is immutable so it is safe to publish without volatile
+	private Binding binding;
+
+	MetricHandle(StatsContainerImpl container, String name) {
+		this.container = container;
+		this.name = name;
+		this.binding = resolve();
+	}
+
+	private Binding resolve() {
+		int generation = container.generation();
+		return new Binding(container.getMetric(name), generation);
+	}
+
+	/**
+	 * @return the Metric currently behind this handle
+	 */
+	public Metric getMetric() {
+		Binding b = binding;
+		if (b.generation != container.generation()) {
+			b = resolve();
+			binding = b;
+		}
+		return b.metric;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void add(int value) {
+		getMetric().add(value);
+	}
+
+	public void add(long value) {
+		StatUtils.add(getMetric(), value);
+	}
+
+	public void add(Distribution distribution) {
+		getMetric().add(distribution);
+	}
+
+	public Distribution getDistribution() {
+		return getMetric().getDistribution();
+	}
+
+	@Override
+	public String toString() {
+		return "MetricHandle[" + name + "]";
+	}
+}
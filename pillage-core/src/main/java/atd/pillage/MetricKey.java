@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A metric name plus a set of tags, for example latency with method=GET and status=200.
+ * The key renders once, when it is created, to a canonical name such as
+ * latency{method=GET,status=200} with the tags sorted by tag name. That canonical name is
+ * what the container stores and what shows up in a StatsSummary.
+ * 
+ * Build keys for repeated tag combinations through a MetricTemplate, which hands back the
+ * same MetricKey instance for the same values without allocating. Reporters call
+ * flatten(name) to turn a canonical name into a plain dotted name.
+ * 
+ * The characters {}=, and whitespace in tag names and values are replaced by an underscore.
+ * 
+ * @author ATD
+ */
+public final class MetricKey {
+
+	private final String metricName;
+	private final String[] tagNames;
+	private final String[] tagValues;
+	private final String name;
+
+	/**
+	 * Build a key from alternating tag names and values. This allocates on every call; use a
+	 * MetricTemplate on hot paths.
+	 */
+	public static MetricKey of(String metricName, String... tags) {
+		if (tags.length % 2 != 0)
+			throw new IllegalArgumentException("tags must be name value pairs, got " + tags.length + " strings");
+		String[] names = new String[tags.length / 2];
+		String[] values = new String[tags.length / 2];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = tags[i * 2];
+			values[i] = tags[i * 2 + 1];
+		}
+		return new MetricKey(metricName, names, values);
+	}
+
+	/**
+	 * Build a key from a map of tag names to values. This allocates on every call; use a
+	 * MetricTemplate on hot paths.
+	 */
+	public static MetricKey of(String metricName, Map<String, String> tags) {
+		String[] names = new String[tags.size()];
+		String[] values = new String[tags.size()];
+		int i = 0;
+		for (Map.Entry<String, String> entry : tags.entrySet()) {
+			names[i] = entry.getKey();
+			values[i++] = entry.getValue();
+		}
+		return new MetricKey(metricName, names, values);
+	}
+
+	MetricKey(String metricName, String[] names, String[] values) {
+		if (metricName == null || metricName.length() == 0)
+			throw new IllegalArgumentException("metric name is required");
+		if (metricName.indexOf('{') >= 0)
+			throw new IllegalArgumentException("metric name can't contain '{': " + metricName);
+		this.metricName = metricName;
+		this.tagNames = new String[names.length];
+		this.tagValues = new String[names.length];
+
+		Integer[] order = new Integer[names.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		final String[] clean = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			clean[i] = sanitize(names[i]);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return clean[a].compareTo(clean[b]);
+			}
+		});
+
+		StringBuilder str = new StringBuilder(metricName);
+		if (names.length > 0)
+			str.append('{');
+		for (int i = 0; i < order.length; i++) {
+			tagNames[i] = clean[order[i]];
+			tagValues[i] = sanitize(values[order[i]]);
+			if (i > 0) {
+				if (tagNames[i].equals(tagNames[i - 1]))
+					throw new IllegalArgumentException("duplicate tag " + tagNames[i] + " on " + metricName);
+				str.append(',');
+			}
+			str.append(tagNames[i]).append('=').append(tagValues[i]);
+		}
+		if (names.length > 0)
+			str.append('}');
+		this.name = str.toString();
+	}
+
+	static String sanitize(String s) {
+		if (s == null || s.length() == 0)
+			return "_";
+		StringBuilder str = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '{' || c == '}' || c == '=' || c == ',' || Character.isWhitespace(c)) {
+				if (str == null)
+					str = new StringBuilder(s);
+				str.setCharAt(i, '_');
+			}
+		}
+		return str == null ? s : str.toString();
+	}
+
+	/**
+	 * @return the canonical name, metric name plus sorted tags, used as the container key
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the metric name without tags
+	 */
+	public String getMetricName() {
+		return metricName;
+	}
+
+	/**
+	 * @return tag names to values, sorted by tag name
+	 */
+	public Map<String, String> getTags() {
+		Map<String, String> tags = new LinkedHashMap<String, String>();
+		for (int i = 0; i < tagNames.length; i++) {
+			tags.put(tagNames[i], tagValues[i]);
+		}
+		return Collections.unmodifiableMap(tags);
+	}
+
+	/**
+	 * Turn a canonical name into a dotted one: latency{method=GET,status=200} becomes
+	 * latency.method.GET.status.200. Names without tags come back unchanged.
+	 */
+	public static String flatten(String name) {
+		int open = name.indexOf('{');
+		if (open < 0 || name.charAt(name.length() - 1) != '}')
+			return name;
+		StringBuilder str = new StringBuilder(name.length());
+		str.append(name, 0, open);
+		for (int i = open + 1; i < name.length() - 1; i++) {
+			char c = name.charAt(i);
+			str.append(c == '=' || c == ',' ? '.' : c);
+		}
+		str.insert(open, '.');
+		return str.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof MetricKey))
+			return false;
+		return name.equals(((MetricKey) obj).name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
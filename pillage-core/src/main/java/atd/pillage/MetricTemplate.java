@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A metric name with a fixed list of tag names. key(...) interns one MetricKey per
+ * combination of tag values, so the first call for a combination builds the key and every
+ * later call is a few map lookups with no allocation and no string building.
+ * 
+ * <pre>
+ * static final MetricTemplate LATENCY = new MetricTemplate("api.latency", "method", "status");
+ * ...
+ * stats.add(LATENCY.key(method, status), elapsed);
+ * </pre>
+ * 
+ * At most maxKeys combinations are interned, DEFAULT_MAX_KEYS unless given. Past that, new
+ * combinations still get a key, built on every call and never kept, so tag values that
+ * shouldn't be tags cost allocations rather than memory.
+ * 
+ * Prefer the fixed arity key methods; key(String...) allocates its varargs array.
+ * 
+ * @author ATD
+ */
+public class MetricTemplate {
+
+	public static final int DEFAULT_MAX_KEYS = 10000;
+
+	private static final class Node {
+		final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<String, Node>(4);
+		volatile MetricKey key;
+	}
+
+	private final String metricName;
+	private final String[] tagNames;
+	private final int maxKeys;
+	private final Node root = new Node();
+	private final AtomicInteger interned = new AtomicInteger();
+
+	public MetricTemplate(String metricName, String... tagNames) {
+		this(metricName, DEFAULT_MAX_KEYS, tagNames);
+	}
+
+	/**
+	 * @param maxKeys number of tag combinations to intern
+	 */
+	public MetricTemplate(String metricName, int maxKeys, String... tagNames) {
+		if (maxKeys < 0)
+			throw new IllegalArgumentException("maxKeys can't be negative, got " + maxKeys);
+		this.metricName = metricName;
+		this.tagNames = tagNames.clone();
+		this.maxKeys = maxKeys;
+		// validate the name and tag names up front
+		new MetricKey(metricName, this.tagNames, this.tagNames);
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+
+	public int getArity() {
+		return tagNames.length;
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	public MetricKey key() {
+		checkArity(0);
+		MetricKey key = root.key;
+		return key != null ? key : create(new String[0]);
+	}
+
+	public MetricKey key(String v1) {
+		checkArity(1);
+		Node node = find(root, v1);
+		MetricKey key = node == null ? null : node.key;
+		return key != null ? key : create(new String[] { v1 });
+	}
+
+	public MetricKey key(String v1, String v2) {
+		checkArity(2);
+		Node node = find(find(root, v1), v2);
+		MetricKey key = node == null ? null : node.key;
+		return key != null ? key : create(new String[] { v1, v2 });
+	}
+
+	public MetricKey key(String v1, String v2, String v3) {
+		checkArity(3);
+		Node node = find(find(find(root, v1), v2), v3);
+		MetricKey key = node == null ? null : node.key;
+		return key != null ? key : create(new String[] { v1, v2, v3 });
+	}
+
+	public MetricKey key(String v1, String v2, String v3, String v4) {
+		checkArity(4);
+		Node node = find(find(find(find(root, v1), v2), v3), v4);
+		MetricKey key = node == null ? null : node.key;
+		return key != null ? key : create(new String[] { v1, v2, v3, v4 });
+	}
+
+	/**
+	 * Look up a key for any number of tag values, in the order the tag names were given.
+	 */
+	public MetricKey key(String... values) {
+		checkArity(values.length);
+		Node node = root;
+		for (String value : values) {
+			node = find(node, value);
+		}
+		MetricKey key = node == null ? null : node.key;
+		return key != null ? key : create(values.clone());
+	}
+
+	/**
+	 * @return the number of tag combinations interned so far
+	 */
+	public int size() {
+		return interned.get();
+	}
+
+	/**
+	 * @return the node for value under parent, or null if there isn't one
+	 */
+	private static Node find(Node parent, String value) {
+		return parent == null ? null : parent.children.get(nonNull(value));
+	}
+
+	/**
+	 * Intern the key for values. Nodes are only added once a slot has been reserved, so a
+	 * full template never grows the tree.
+	 */
+	private MetricKey create(String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = nonNull(values[i]);
+		}
+		if (!reserve())
+			return new MetricKey(metricName, tagNames, values);
+		Node node = root;
+		for (String value : values) {
+			Node child = node.children.get(value);
+			if (child == null) {
+				Node created = new Node();
+				child = node.children.putIfAbsent(value, created);
+				if (child == null)
+					child = created;
+			}
+			node = child;
+		}
+		synchronized (node) {
+			MetricKey key = node.key;
+			if (key == null) {
+				key = new MetricKey(metricName, tagNames, values);
+				node.key = key;
+			} else {
+				// another thread interned it first
+				interned.decrementAndGet();
+			}
+			return key;
+		}
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int n = interned.get();
+			if (n >= maxKeys)
+				return false;
+			if (interned.compareAndSet(n, n + 1))
+				return true;
+		}
+	}
+
+	private void checkArity(int n) {
+		if (n != tagNames.length)
+			throw new IllegalArgumentException(metricName + " takes " + tagNames.length + " tag values, got " + n);
+	}
+
+	private static String nonNull(String value) {
+		return value == null ? "null" : value;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ordered set of names shared by the columns of a snapshot. The container hands out the
+ * same index every time its names haven't changed, so collections line up by position and
+ * can be compared without hashing. Lookup by name builds a map the first time it is needed.
+ */
+public final class NameIndex {
+
+	private final String[] names;
+	private volatile Map<String, Integer> positions;
+
+	NameIndex(String[] names) {
+		this.names = names;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String name(int i) {
+		return names[i];
+	}
+
+	/**
+	 * @return the position of name or -1
+	 */
+	public int indexOf(Object name) {
+		Map<String, Integer> map = positions;
+		if (map == null) {
+			map = new HashMap<String, Integer>(names.length * 2);
+			for (int i = 0; i < names.length; i++) {
+				map.put(names[i], i);
+			}
+			positions = map;
+		}
+		Integer i = map.get(name);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Collects names in iteration order, reusing the previous index if the names come out
+	 * the same. Names are compared by identity, the map keys are the same String objects
+	 * from one pass to the next.
+	 */
+	static final class Builder {
+		private final NameIndex previous;
+		private boolean same;
+		private String[] names;
+		private int size;
+
+		Builder(NameIndex previous) {
+			this.previous = previous;
+			this.same = previous != null;
+		}
+
+		/**
+		 * @return the position of name
+		 */
+		int add(String name) {
+			if (same && (size >= previous.names.length || previous.names[size] != name)) {
+				same = false;
+				names = Arrays.copyOf(previous.names, Math.max(size + 16, previous.names.length));
+			}
+			if (!same) {
+				if (names == null)
+					names = new String[16];
+				else if (size == names.length)
+					names = Arrays.copyOf(names, size * 2);
+				names[size] = name;
+			}
+			return size++;
+		}
+
+		NameIndex build() {
+			if (same && size == previous.names.length)
+				return previous;
+			if (same)
+				return new NameIndex(Arrays.copyOf(previous.names, size));
+			return new NameIndex(names == null ? new String[0] : Arrays.copyOf(names, size));
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A reusable timer that measures with System.nanoTime() and records durations in
+ * microseconds. Metrics are named like the Timer ones with a .micros suffix:
+ * 
+ * {timer name}.micros
+ * {timer name}-{milestone_name}.micros
+ * 
+ * Microseconds fit the default Histogram buckets up to about a second; nanoseconds would
+ * overflow them after about a millisecond. The elapsed times returned are still in
+ * nanoseconds. The metric under the timer name is only created by the first stop().
+ * 
+ * Unlike Timer, a NanoTimer is meant to be kept and restarted rather than created per use.
+ * Metric handles are resolved once per milestone and cached, and the milestones recorded
+ * since the last start() are kept in a fixed size ring. When the ring is full the oldest
+ * entry is overwritten and counted as dropped. Once every milestone has been seen a timed
+ * request allocates nothing. For zero hashing, resolve a Milestone once with milestone(name)
+ * and pass it to stop() or lap().
+ * 
+ * A NanoTimer is not thread safe. StatsContainerImpl.getNanoTimer(name) hands out one per
+ * thread.
+ */
+public class NanoTimer {
+
+	public static final int DEFAULT_MAX_MILESTONES = 16;
+
+	/**
+	 * A resolved milestone of a particular timer.
+	 */
+	public static final class Milestone {
+		private final String name;
+		private final MetricHandle handle;
+
+		Milestone(String name, MetricHandle handle) {
+			this.name = name;
+			this.handle = handle;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getMetricName() {
+			return handle.getName();
+		}
+	}
+
+	private final StatsContainerImpl container;
+	private final String name;
+	private final String safeName;
+	private MetricHandle total;
+	private final Map<String, Milestone> milestones = new HashMap<String, Milestone>();
+
+	private final Milestone[] recorded;
+	private final long[] recordedNanos;
+	private int next = 0;
+	private int size = 0;
+	private long dropped = 0;
+
+	private long startTime = 0;
+	private long elapsedTime = 0;
+	private boolean running = false;
+
+	public NanoTimer(StatsContainerImpl container, String name) {
+		this(container, name, DEFAULT_MAX_MILESTONES);
+	}
+
+	/**
+	 * @param maxMilestones number of milestones kept between starts
+	 */
+	public NanoTimer(StatsContainerImpl container, String name, int maxMilestones) {
+		if (maxMilestones < 1)
+			throw new IllegalArgumentException("maxMilestones must be positive, got " + maxMilestones);
+		this.container = container;
+		this.name = name;
+		this.safeName = name.replace(" ", "_");
+		this.recorded = new Milestone[maxMilestones];
+		this.recordedNanos = new long[maxMilestones];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getSafeName() {
+		return safeName;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Resolve a milestone of this timer. The result can be kept and passed to stop() and
+	 * lap() to skip the milestone lookup.
+	 */
+	public Milestone milestone(String milestone) {
+		Milestone m = milestones.get(milestone);
+		if (m == null) {
+			String metricName = safeName + "-" + milestone.replace(" ", "_") + ".micros";
+			m = new Milestone(milestone, container.metricHandle(metricName));
+			milestones.put(milestone, m);
+		}
+		return m;
+	}
+
+	/**
+	 * Start the timer and forget the milestones recorded since the last start. If the timer
+	 * is already running this resets the start time to now.
+	 */
+	public void start() {
+		next = 0;
+		size = 0;
+		dropped = 0;
+		elapsedTime = -1L;
+		running = true;
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Stop the timer and record the elapsed microseconds under the timer name.
+	 * 
+	 * @return elapsed nanoseconds
+	 */
+	public long stop() {
+		if (running) {
+			elapsedTime = System.nanoTime() - startTime;
+			running = false;
+			if (total == null)
+				total = container.metricHandle(safeName + ".micros");
+			total.add(elapsedTime / 1000L);
+		}
+		return elapsedTime;
+	}
+
+	public long stop(String milestone) {
+		return stop(milestone(milestone));
+	}
+
+	/**
+	 * Stop the timer and record the elapsed microseconds under the milestone.
+	 * 
+	 * @return elapsed nanoseconds
+	 */
+	public long stop(Milestone milestone) {
+		if (running) {
+			elapsedTime = System.nanoTime() - startTime;
+			running = false;
+			record(milestone, elapsedTime);
+		}
+		return elapsedTime;
+	}
+
+	public long lap(String milestone) {
+		return lap(milestone(milestone));
+	}
+
+	/**
+	 * Record the elapsed microseconds under the milestone without stopping the timer.
+	 * 
+	 * @return elapsed nanoseconds
+	 */
+	public long lap(Milestone milestone) {
+		if (running) {
+			elapsedTime = System.nanoTime() - startTime;
+			record(milestone, elapsedTime);
+		}
+		return elapsedTime;
+	}
+
+	public long stopAndStart(String milestone) {
+		return stopAndStart(milestone(milestone));
+	}
+
+	/**
+	 * Stop the timer at the milestone and restart it. Unlike start() the milestones
+	 * recorded so far are kept.
+	 * 
+	 * @return elapsed nanoseconds
+	 */
+	public long stopAndStart(Milestone milestone) {
+		long elapsed = stop(milestone);
+		elapsedTime = -1L;
+		running = true;
+		startTime = System.nanoTime();
+		return elapsed;
+	}
+
+	private void record(Milestone milestone, long nanos) {
+		milestone.handle.add(nanos / 1000L);
+		if (size == recorded.length)
+			dropped++;
+		else
+			size++;
+		recorded[next] = milestone;
+		recordedNanos[next] = nanos;
+		next = (next + 1) % recorded.length;
+	}
+
+	/**
+	 * Nanoseconds between the last start and stop, or since the last start if the timer is
+	 * still running.
+	 */
+	public long getElapsedTime() {
+		return (elapsedTime == -1L) ? System.nanoTime() - startTime : elapsedTime;
+	}
+
+	/**
+	 * @return number of milestones currently held, oldest first in toString()
+	 */
+	public int getMilestoneCount() {
+		return size;
+	}
+
+	/**
+	 * @return number of milestones overwritten since the last start
+	 */
+	public long getDroppedMilestones() {
+		return dropped;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		int first = (next - size + recorded.length) % recorded.length;
+		for (int i = 0; i < size; i++) {
+			int index = (first + i) % recorded.length;
+			str.append(recorded[index].getMetricName());
+			str.append("[");
+			str.append(recordedNanos[index]);
+			str.append("]");
+			str.append(" : ");
+		}
+		if (dropped > 0) {
+			str.append("dropped[").append(dropped).append("]");
+		}
+		return str.toString();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A metric with the Histogram bucket layout whose counts live in a slot of an
+ * OffHeapHistogramMetricFactory slab instead of on the heap. Snapshots are read straight
+ * out of the slot.
+ * 
+ * Slot layout, in longs: count, sum, then one long per bucket.
+ */
+public class OffHeapHistogramMetric implements DrainableMetric, LongMetric, Releasable {
+
+  static final int NUM_BUCKETS = Histogram.BUCKET_OFFSETS.length + 1;
+  static final int SLOT_BYTES = (NUM_BUCKETS + 2) * 8;
+
+  private static final int COUNT = 0;
+  private static final int SUM = 8;
+  private static final int BUCKETS = 16;
+
+  private final OffHeapHistogramMetricFactory slab;
+  private final int slot;
+  private final ByteBuffer buffer;
+  private final int offset;
+  private boolean released = false;
+
+  OffHeapHistogramMetric(OffHeapHistogramMetricFactory slab, int slot, ByteBuffer buffer, int offset) {
+      this.slab = slab;
+      this.slot = slot;
+      this.buffer = buffer;
+      this.offset = offset;
+  }
+
+  /**
+   * Resets the state of this Metric. Clears all data points collected so far.
+   */
+  @Override
+  public synchronized void clear() {
+    if (!released)
+      zero();
+  }
+
+  void zero() {
+    for (int i = 0; i < SLOT_BYTES; i += 8) {
+      buffer.putLong(offset + i, 0L);
+    }
+  }
+
+  private long record(int index, long n) {
+    int bucket = offset + BUCKETS + index * 8;
+    buffer.putLong(bucket, buffer.getLong(bucket) + 1);
+    buffer.putLong(offset + SUM, buffer.getLong(offset + SUM) + n);
+    long count = buffer.getLong(offset + COUNT) + 1;
+    buffer.putLong(offset + COUNT, count);
+    return count;
+  }
+
+  /**
+   * Adds a data point.
+   */
+  @Override
+  public synchronized long add( int n){
+    if (released || n < 0)
+      return 0L;
+    return record(Histogram.binarySearch(n), n);
+  }
+
+  /**
+   * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+   */
+  @Override
+  public synchronized long add( long n){
+    if (released || n < 0)
+      return 0L;
+    if (n > Integer.MAX_VALUE)
+      return record(NUM_BUCKETS - 1, n);
+    return record(Histogram.binarySearch((int) n), n);
+  }
+
+  /**
+   * Add a summarized set of data points.
+   */
+  @Override
+  public long add(Distribution dist) {
+    if ( ! ( dist instanceof HistogramDistribution) ){
+      throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to an OffHeapHistogramMetric.");
+    }
+    long[] other = ((HistogramDistribution) dist).getHistogram().get(false);
+    synchronized( this ){
+      if (released)
+        return 0L;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        if (other[i] != 0) {
+          int bucket = offset + BUCKETS + i * 8;
+          buffer.putLong(bucket, buffer.getLong(bucket) + other[i]);
+        }
+      }
+      buffer.putLong(offset + SUM, buffer.getLong(offset + SUM) + dist.getSum());
+      long count = buffer.getLong(offset + COUNT) + dist.getCount();
+      buffer.putLong(offset + COUNT, count);
+      return count;
+    }
+  }
+
+  /**
+   * Copies the counts into a heap HistogramMetric.
+   */
+  @Override
+  public HistogramMetric clone(){
+    return new HistogramMetric(getDistribution().getHistogram());
+  }
+
+  /**
+   * Returns a Distribution read from the slot.
+   */
+  @Override
+  public synchronized HistogramDistribution getDistribution() {
+    long[] buckets = new long[NUM_BUCKETS];
+    if (released)
+      return new HistogramDistribution(new Histogram(buckets, 0L, 0L));
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets[i] = buffer.getLong(offset + BUCKETS + i * 8);
+    }
+    return new HistogramDistribution(new Histogram(buckets, buffer.getLong(offset + COUNT), buffer.getLong(offset + SUM)));
+  }
+
+  /**
+   * Copies the slot out and zeroes it, under the same lock as add.
+   */
+  @Override
+  public synchronized HistogramDistribution drain() {
+    HistogramDistribution dist = getDistribution();
+    if (!released)
+      zero();
+    return dist;
+  }
+
+  /**
+   * Give the slot back to the slab. The metric ignores data points after this.
+   */
+  @Override
+  public void release() {
+    synchronized (this) {
+      if (released)
+        return;
+      released = true;
+    }
+    slab.free(slot);
+  }
+
+  public synchronized boolean isReleased() {
+    return released;
+  }
+
+}
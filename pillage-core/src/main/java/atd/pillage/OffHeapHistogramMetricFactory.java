@@ -0,0 +1,111 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates OffHeapHistogramMetrics whose bucket arrays live in a pooled slab of direct
+ * ByteBuffers. The slab grows a chunk at a time and released slots are reused, so heap usage
+ * stays flat no matter how many metrics there are.
+ * 
+ * Lifecycle: a metric holds its slot until release() is called on it. StatsContainerImpl
+ * releases metrics it drops. close() releases the whole slab. The direct memory itself is
+ * given back when the chunks are garbage collected.
+ */
+public class OffHeapHistogramMetricFactory implements MetricFactory {
+
+	public static final int DEFAULT_SLOTS_PER_CHUNK = 1024;
+
+	private final int slotsPerChunk;
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private int[] free = new int[16];
+	private int freeCount = 0;
+	private int allocated = 0;
+	private boolean closed = false;
+
+	public OffHeapHistogramMetricFactory() {
+		this(DEFAULT_SLOTS_PER_CHUNK);
+	}
+
+	/**
+	 * @param slotsPerChunk metrics per direct buffer. Each slot takes about 1.1KB.
+	 */
+	public OffHeapHistogramMetricFactory(int slotsPerChunk) {
+		if (slotsPerChunk < 1)
+			throw new IllegalArgumentException("slotsPerChunk must be positive, got " + slotsPerChunk);
+		this.slotsPerChunk = slotsPerChunk;
+	}
+
+	@Override
+	public synchronized Metric newMetric() {
+		if (closed)
+			throw new IllegalStateException("OffHeapHistogramMetricFactory has been closed");
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		} else {
+			slot = allocated++;
+			if (slot / slotsPerChunk >= chunks.size()) {
+				chunks.add(ByteBuffer.allocateDirect(slotsPerChunk * OffHeapHistogramMetric.SLOT_BYTES).order(ByteOrder.nativeOrder()));
+			}
+		}
+		ByteBuffer chunk = chunks.get(slot / slotsPerChunk);
+		OffHeapHistogramMetric metric = new OffHeapHistogramMetric(this, slot, chunk, (slot % slotsPerChunk) * OffHeapHistogramMetric.SLOT_BYTES);
+		metric.zero();
+		return metric;
+	}
+
+	synchronized void free(int slot) {
+		if (closed)
+			return;
+		if (freeCount == free.length) {
+			int[] grown = new int[free.length * 2];
+			System.arraycopy(free, 0, grown, 0, freeCount);
+			free = grown;
+		}
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * @return number of slots held by live metrics
+	 */
+	public synchronized int slotsInUse() {
+		return allocated - freeCount;
+	}
+
+	/**
+	 * @return bytes of direct memory held by the slab
+	 */
+	public synchronized long capacityBytes() {
+		return (long) chunks.size() * slotsPerChunk * OffHeapHistogramMetric.SLOT_BYTES;
+	}
+
+	/**
+	 * Drop the slab. Metrics created by this factory must not be used after this.
+	 */
+	public synchronized void close() {
+		closed = true;
+		chunks.clear();
+		freeCount = 0;
+		allocated = 0;
+	}
+
+}
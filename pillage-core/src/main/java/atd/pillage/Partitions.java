@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a range of indexes into contiguous partitions and works them on an executor. The
+ * calling thread works the first partition itself and then waits for the rest.
+ */
+final class Partitions {
+
+	interface Task {
+		void run(int from, int to);
+	}
+
+	private Partitions() {
+	}
+
+	static void run(ExecutorService executor, int partitions, int size, final Task task) {
+		int n = Math.max(1, Math.min(partitions, size));
+		if (n == 1) {
+			task.run(0, size);
+			return;
+		}
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(n - 1);
+		try {
+			for (int p = 1; p < n; p++) {
+				final int from = (int) ((long) size * p / n);
+				final int to = (int) ((long) size * (p + 1) / n);
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						task.run(from, to);
+						return null;
+					}
+				}));
+			}
+			task.run(0, size / n);
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for partitions", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the metric for a name from a list of routes, the first route whose pattern matches
+ * wins and names no route matches get the default factory. A route either hands the name to
+ * another MetricFactory or creates a BucketHistogramMetric with its own bucket layout and
+ * quantiles.
+ * 
+ * <pre>
+ * RoutingMetricFactory factory = new RoutingMetricFactory(new ConcurrentHistogramMetricFactory());
+ * factory.route("api.*.latency", BucketLayout.exponential(100, 1.2, 60), 0.5, 0.99, 0.9999);
+ * factory.route("queue.depth", BucketLayout.linear(10, 100), 0.5, 0.9);
+ * factory.route("rpc.*.latency", BucketLayout.exponential(100, 1.1, 200), 16, 0.5, 0.99);
+ * factory.route("batch.**", new LogLinearMetricFactory(2));
+ * StatsContainer stats = new StatsContainerImpl(factory);
+ * </pre>
+ * 
+ * Patterns match the metric name without its tags. A * matches within one dot separated
+ * part of the name, ** matches across parts. Patterns are compiled when the route is added,
+ * so a new name costs one regex match per route until one fits.
+ */
+public class RoutingMetricFactory implements NamedMetricFactory {
+
+	private static final class Route {
+		final Pattern pattern;
+		final MetricFactory factory;
+
+		Route(Pattern pattern, MetricFactory factory) {
+			this.pattern = pattern;
+			this.factory = factory;
+		}
+	}
+
+	private final MetricFactory defaultFactory;
+	private final List<Route> routes = new CopyOnWriteArrayList<Route>();
+
+	public RoutingMetricFactory(MetricFactory defaultFactory) {
+		if (defaultFactory == null)
+			throw new IllegalArgumentException("defaultFactory can't be null");
+		this.defaultFactory = defaultFactory;
+	}
+
+	/**
+	 * Send names matching pattern to factory. Routes are tried in the order they were added.
+	 */
+	public void route(String pattern, MetricFactory factory) {
+		if (factory == null)
+			throw new IllegalArgumentException("factory can't be null");
+		routes.add(new Route(compile(pattern), factory));
+	}
+
+	/**
+	 * Give names matching pattern a BucketHistogramMetric with this layout, reporting these
+	 * quantiles.
+	 */
+	public void route(String pattern, BucketLayout layout, double... quantiles) {
+		route(pattern, layout, BucketHistogramMetric.DEFAULT_STRIPES, quantiles);
+	}
+
+	/**
+	 * Give names matching pattern a BucketHistogramMetric with this layout spread over stripes
+	 * bucket arrays, reporting these quantiles. Each metric holds a long per bucket per stripe,
+	 * so keep the stripe count near the number of threads that write one name at once.
+	 */
+	public void route(String pattern, final BucketLayout layout, final int stripes, double... quantiles) {
+		if (layout == null)
+			throw new IllegalArgumentException("layout can't be null");
+		final double[] reported = BucketHistogramMetric.checkQuantiles(quantiles).clone();
+		route(pattern, new MetricFactory() {
+			@Override
+			public Metric newMetric() {
+				return new BucketHistogramMetric(layout, stripes, reported);
+			}
+		});
+	}
+
+	/**
+	 * @return a metric from the default factory
+	 */
+	@Override
+	public Metric newMetric() {
+		return defaultFactory.newMetric();
+	}
+
+	@Override
+	public Metric newMetric(String name) {
+		return StatUtils.newMetric(factoryFor(name), name);
+	}
+
+	/**
+	 * @return the factory a name is routed to
+	 */
+	public MetricFactory factoryFor(String name) {
+		int tags = name.indexOf('{');
+		String metricName = tags < 0 ? name : name.substring(0, tags);
+		for (Route route : routes) {
+			if (route.pattern.matcher(metricName).matches())
+				return route.factory;
+		}
+		return defaultFactory;
+	}
+
+	static Pattern compile(String glob) {
+		if (glob == null || glob.length() == 0)
+			throw new IllegalArgumentException("pattern can't be empty");
+		StringBuilder regex = new StringBuilder();
+		int literal = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			if (glob.charAt(i) != '*')
+				continue;
+			if (i > literal)
+				regex.append(Pattern.quote(glob.substring(literal, i)));
+			if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+				regex.append(".*");
+				i++;
+			} else {
+				regex.append("[^.]*");
+			}
+			literal = i + 1;
+		}
+		if (literal < glob.length())
+			regex.append(Pattern.quote(glob.substring(literal)));
+		return Pattern.compile(regex.toString());
+	}
+}
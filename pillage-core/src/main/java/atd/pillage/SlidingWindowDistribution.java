@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * The distribution of a SlidingWindowMetric. It already covers only the recent window, so
+ * delta() returns it as it is rather than subtracting an earlier window.
+ */
+public class SlidingWindowDistribution extends HistogramDistribution {
+
+	private static final long serialVersionUID = -2383540215718016458L;
+
+	public SlidingWindowDistribution(Histogram histogram) {
+		super(histogram);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Returns this distribution unchanged.
+	 */
+	@Override
+	public Distribution delta(Distribution dist) throws IllegalArgumentException {
+		if (!(dist instanceof HistogramDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName()
+					+ " cannot be subtracted from a SlidingWindowDistribution.");
+		}
+		return this;
+	}
+
+}
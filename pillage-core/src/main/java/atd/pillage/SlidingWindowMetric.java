@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * A histogram metric over the last window of time instead of since the last reset. Readers
+ * like JMX or an HTTP status page get a rolling p99 without depending on when the collector
+ * runs.
+ * 
+ * The window is a ring of slices, each a Histogram that covers window / slices millis. A
+ * write goes to the slice for the current time. The first write into a slice after it fell
+ * out of the window clears and reuses it, so rotating allocates nothing and takes no global
+ * lock: writers only share a monitor with writers to the same slice. Reads merge the slices
+ * still inside the window.
+ * 
+ * The window moves a slice at a time, so a read covers between window - window / slices and
+ * window millis.
+ */
+public class SlidingWindowMetric implements TimeBasedMetric, LongMetric {
+
+	private static final class Slice {
+		final Histogram histogram = new Histogram();
+		long epoch = -1;
+	}
+
+	private final Slice[] slices;
+	private final long sliceMillis;
+
+	/**
+	 * @param windowMillis length of the window
+	 * @param slices number of slices the window is split into
+	 */
+	public SlidingWindowMetric(long windowMillis, int slices) {
+		validate(windowMillis, slices);
+		this.sliceMillis = windowMillis / slices;
+		this.slices = new Slice[slices];
+		for (int i = 0; i < slices; i++) {
+			this.slices[i] = new Slice();
+		}
+	}
+
+	static void validate(long windowMillis, int slices) {
+		if (slices < 1)
+			throw new IllegalArgumentException("slices must be positive, got " + slices);
+		if (windowMillis < slices)
+			throw new IllegalArgumentException("windowMillis must be at least one milli per slice, got " + windowMillis);
+	}
+
+	public long getWindowMillis() {
+		return sliceMillis * slices.length;
+	}
+
+	/**
+	 * Resets the state of this Metric. Clears all data points collected so far.
+	 */
+	@Override
+	public void clear() {
+		for (Slice slice : slices) {
+			synchronized (slice) {
+				slice.histogram.clear();
+				slice.epoch = -1;
+			}
+		}
+	}
+
+	/**
+	 * Adds a data point.
+	 */
+	@Override
+	public long add(int n) {
+		return add((long) n);
+	}
+
+	/**
+	 * Adds a long data point. Values past Integer.MAX_VALUE land in the infinity bucket.
+	 * 
+	 * @return data point count of the current slice
+	 */
+	@Override
+	public long add(long n) {
+		if (n < 0)
+			return 0;
+		long epoch = currentTimeMillis() / sliceMillis;
+		Slice slice = slices[(int) (epoch % slices.length)];
+		synchronized (slice) {
+			rotate(slice, epoch);
+			return slice.histogram.add(n);
+		}
+	}
+
+	/**
+	 * Add a summarized set of data points to the current slice.
+	 */
+	@Override
+	public long add(Distribution dist) {
+		if (!(dist instanceof HistogramDistribution)) {
+			throw new IllegalArgumentException("Distribution of type: " + dist.getClass().getCanonicalName() + " cannot be added to a SlidingWindowMetric.");
+		}
+		Histogram other = ((HistogramDistribution) dist).getHistogram();
+		long epoch = currentTimeMillis() / sliceMillis;
+		Slice slice = slices[(int) (epoch % slices.length)];
+		synchronized (slice) {
+			rotate(slice, epoch);
+			slice.histogram.merge(other);
+			return slice.histogram.getCount();
+		}
+	}
+
+	// callers hold the slice's monitor
+	private static void rotate(Slice slice, long epoch) {
+		// a writer that stalled past a whole rotation lands in the newer slice, that's fine
+		if (slice.epoch < epoch) {
+			slice.histogram.clear();
+			slice.epoch = epoch;
+		}
+	}
+
+	/**
+	 * Override to control the clock, in tests for example.
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public SlidingWindowMetric clone() {
+		SlidingWindowMetric copy = new SlidingWindowMetric(getWindowMillis(), slices.length);
+		for (int i = 0; i < slices.length; i++) {
+			synchronized (slices[i]) {
+				copy.slices[i].histogram.merge(slices[i].histogram);
+				copy.slices[i].epoch = slices[i].epoch;
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the data points of the current window.
+	 */
+	@Override
+	public SlidingWindowDistribution getDistribution() {
+		long oldest = currentTimeMillis() / sliceMillis - slices.length + 1;
+		Histogram merged = new Histogram();
+		for (Slice slice : slices) {
+			synchronized (slice) {
+				if (slice.epoch >= oldest)
+					merged.merge(slice.histogram);
+			}
+		}
+		return new SlidingWindowDistribution(merged);
+	}
+
+}
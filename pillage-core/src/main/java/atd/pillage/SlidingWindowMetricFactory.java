@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * Creates SlidingWindowMetrics that all cover the same window.
+ */
+public class SlidingWindowMetricFactory implements MetricFactory {
+
+	private final long windowMillis;
+	private final int slices;
+
+	/**
+	 * A one minute window in 12 slices of 5 seconds.
+	 */
+	public SlidingWindowMetricFactory() {
+		this(60000L, 12);
+	}
+
+	public SlidingWindowMetricFactory(long windowMillis, int slices) {
+		this.windowMillis = windowMillis;
+		this.slices = slices;
+		SlidingWindowMetric.validate(windowMillis, slices);
+	}
+
+	@Override
+	public Metric newMetric() {
+		return new SlidingWindowMetric(windowMillis, slices);
+	}
+
+}
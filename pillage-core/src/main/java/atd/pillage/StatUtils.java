@@ -39,6 +39,21 @@ public class StatUtils {
 		}
 	}
 
+	// helper function for creating a metric, passing the name to a NamedMetricFactory
+	public static Metric newMetric(MetricFactory factory, String name) {
+		if (factory instanceof NamedMetricFactory)
+			return ((NamedMetricFactory) factory).newMetric(name);
+		return factory.newMetric();
+	}
+
+	// helper function for adding a long data point, clamped to the int range for metrics
+	// that only take ints
+	public static long add(Metric metric, long value) {
+		if (metric instanceof LongMetric)
+			return ((LongMetric) metric).add(value);
+		return metric.add((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value)));
+	}
+
 	// helper function for computing deltas over gauges
 	public static double delta(double oldValue, double newValue) {
 		if (oldValue <= newValue) {
@@ -23,19 +23,41 @@ import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 import java.lang.management.RuntimeMXBean;
 import java.lang.management.ThreadMXBean;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 
 /**
  * Attaches to a StatsContainer and reports on all the counters, metrics, gauges, and labels.
  * Each report resets state, so counters are reported as deltas, and metrics distributions are
- * only tracked since the last report.
+ * only tracked since the last report. Meters are reported as their current rates. Distinct
+ * counts and top-ks are emptied on each report so they cover just the interval.
+ * 
+ * Flushing recorders, dirty tracking, reset on read, interval metrics and parallel reads
+ * need a StatsContainerImpl. Any other StatsContainer is read through counters(),
+ * metrics(), distincts() and topKs() alone, so its distinct counts and top-ks aren't
+ * emptied.
  */
 public class StatsCollectorImpl implements StatsCollector {
+
+    /**
+     * What a delta summary holds for counters and metrics that didn't change in the interval.
+     */
+    public enum UnchangedPolicy {
+        /** report them with a zero delta, the default */
+        ZERO,
+        /** leave them out of the summary */
+        OMIT
+    }
+
     private StatsContainer container;
+    // the same container when it offers the collector plumbing, otherwise null
+    private CollectableContainer collectable;
     private List<StatsReporter> reporters = new ArrayList<StatsReporter>();
     private long lastSnap;
     private long currentSnap;
@@ -43,10 +65,33 @@ public class StatsCollectorImpl implements StatsCollector {
 
     private Map<String, Long> lastCounterMap = new HashMap<String, Long>();
     private Map<String, Long> deltaCounterMap = new HashMap<String, Long>();
+    // the last counters() when it came back as a LongColumn, instead of lastCounterMap
+    private LongColumn lastCounterColumn;
     private Map<String, Distribution> lastMetricMap = new HashMap<String, Distribution>();
     private Map<String, Distribution> deltaMetricMap = new HashMap<String, Distribution>();
     private Map<String, Double> lastGaugeMap = new HashMap<String, Double>();
     private Map<String, Double> deltaGaugeMap = new HashMap<String, Double>();
+    private Map<String, Long> deltaDistinctMap = new HashMap<String, Long>();
+    private Map<String, TopKSnapshot> deltaTopKMap = new HashMap<String, TopKSnapshot>();
+
+    // consecutive collections without change, only tracked when eviction is on
+    private int evictAfterIdle = 0;
+    private Map<String, Integer> idleCounters = new HashMap<String, Integer>();
+    private Map<String, Integer> idleMetrics = new HashMap<String, Integer>();
+
+    private UnchangedPolicy unchangedPolicy = UnchangedPolicy.ZERO;
+    // empty distributions reported for quiet metrics under ZERO with dirty tracking
+    private Map<String, Distribution> zeroMetricMap = new HashMap<String, Distribution>();
+
+    // reset on read keeps running totals for getFullSummary() instead of last values
+    private boolean resetOnRead = false;
+    private long totalStart;
+    private Map<String, Long> totalCounterMap = new HashMap<String, Long>();
+    private Map<String, TotalDistribution> totalMetricMap = new HashMap<String, TotalDistribution>();
+
+    // reads metrics and works out their deltas in parallel when set
+    private ExecutorService collectionExecutor;
+    private int partitions;
     
     public StatsCollectorImpl(StatsContainer container){
     	this(container, true, false);
@@ -58,6 +103,7 @@ public class StatsCollectorImpl implements StatsCollector {
     
     public StatsCollectorImpl(StatsContainer container, boolean startClean, boolean includeJvmStats){
     	this.container = container;
+    	this.collectable = container instanceof CollectableContainer ? (CollectableContainer) container : null;
     	this.includeJvmStats = includeJvmStats;
         if (startClean) {
             for (Map.Entry<String, Long> entry : this.container.counters().entrySet()) {
@@ -67,6 +113,11 @@ public class StatsCollectorImpl implements StatsCollector {
                 lastMetricMap.put(entry.getKey(), entry.getValue());
             }
             lastGaugeMap.putAll(this.container.gauges());
+            if (collectable != null) {
+                collectable.drainDistincts();
+                collectable.drainTopKs();
+                collectable.drainIntervals();
+            }
         }
     }
        
@@ -92,7 +143,7 @@ public class StatsCollectorImpl implements StatsCollector {
      */
     @Override
 	public StatsSummary getFullSummary() {
-    	StatsSummary summary = container.getSummary();
+    	StatsSummary summary = resetOnRead ? getTotalSummary() : container.getSummary();
     	
     	if(!includeJvmStats){
     		return summary;
@@ -100,7 +151,7 @@ public class StatsCollectorImpl implements StatsCollector {
     	
     	Map<String, Double> gauges = getJvmStats();
     	gauges.putAll(summary.getGauges());
-    	return new StatsSummary(summary.getCounters(), summary.getMetrics(), summary.getLabels(), gauges, summary.getStart(), summary.getEnd());
+    	return new StatsSummary(summary.getCounters(), summary.getMetrics(), summary.getLabels(), gauges, summary.getMeters(), summary.getDistincts(), summary.getTopKs(), summary.getStart(), summary.getEnd());
 	}
 
     /**
@@ -109,11 +160,11 @@ public class StatsCollectorImpl implements StatsCollector {
 	@Override
 	public StatsSummary getDeltaSummary() {
 		if ( ! includeJvmStats )
-			return new StatsSummary(deltaCounterMap, deltaMetricMap, container.labels(), container.gauges() , lastSnap, currentSnap);
+			return new StatsSummary(deltaCounterMap, deltaMetricMap, container.labels(), container.gauges(), meters(), deltaDistinctMap, deltaTopKMap, lastSnap, currentSnap);
 		else {
 			Map<String, Double> gauges = getJvmStats();
 	    	gauges.putAll(container.gauges());
-	    	return new StatsSummary(deltaCounterMap, deltaMetricMap, container.labels(), gauges , lastSnap, currentSnap);
+	    	return new StatsSummary(deltaCounterMap, deltaMetricMap, container.labels(), gauges, meters(), deltaDistinctMap, deltaTopKMap, lastSnap, currentSnap);
 		}
 	}
 
@@ -122,9 +173,13 @@ public class StatsCollectorImpl implements StatsCollector {
 	 */
 	@Override
 	public StatsSummary collect() {
+		if (collectable != null)
+			collectable.flush();
 		triggerCounterSnap();
 		//triggerGaugeSnap();
 		triggerMetricSnap();
+		triggerDistinctSnap();
+		triggerTopKSnap();
 		lastSnap = currentSnap;
 		currentSnap = System.currentTimeMillis();
 		StatsSummary deltas = getDeltaSummary();
@@ -154,47 +209,520 @@ public class StatsCollectorImpl implements StatsCollector {
 		}
 	}
 
+	/**
+	 * Remove counters and metrics from the container once they go this many collections in a
+	 * row without changing. An evicted name that is used again starts over from zero. 0, the
+	 * default, never evicts. A name updated after the collection that found it idle is kept.
+	 * 
+	 * @param intervals
+	 */
+	public void setEvictAfterIdle(int intervals) {
+		if (intervals < 0)
+			throw new IllegalArgumentException("intervals can't be negative, got " + intervals);
+		if (intervals > 0 && collectable == null)
+			throw new IllegalStateException("evicting needs a StatsContainerImpl, got " + container.getClass().getName());
+		synchronized (this) {
+			evictAfterIdle = intervals;
+			idleCounters.clear();
+			idleMetrics.clear();
+		}
+	}
+
+	public int getEvictAfterIdle() {
+		return evictAfterIdle;
+	}
+
+	/**
+	 * Collect by draining counters and metrics, reading and resetting them in one step,
+	 * instead of keeping a copy of each to subtract from the next collection. This halves the
+	 * memory held for metrics and skips the subtraction. Metrics that are neither
+	 * DrainableMetrics nor IntervalMetrics, like SlidingWindowMetric, are reported as they
+	 * are.
+	 * 
+	 * getFullSummary() then reports running totals from when the mode was turned on:
+	 * counter totals and, for metrics, a TotalDistribution with count, sum, minimum and
+	 * maximum but no percentiles. Anything else reading the same container's counters or
+	 * metrics sees values since the last collection.
+	 * 
+	 * With dirty tracking and UnchangedPolicy.OMIT only the names that changed are drained.
+	 * 
+	 * @throws IllegalStateException if the container isn't a StatsContainerImpl
+	 */
+	public void setResetOnRead(boolean flag) {
+		if (flag && collectable == null)
+			throw new IllegalStateException("reset on read needs a StatsContainerImpl, got " + container.getClass().getName());
+		synchronized (this) {
+			if (flag == resetOnRead)
+				return;
+			resetOnRead = flag;
+			totalCounterMap.clear();
+			totalMetricMap.clear();
+			totalStart = System.currentTimeMillis();
+		}
+	}
+
+	public boolean isResetOnRead() {
+		return resetOnRead;
+	}
+
+	/**
+	 * Read metrics and work out their deltas in up to partitions tasks on executor, instead
+	 * of one after another on the collecting thread. Worth it for containers with tens of
+	 * thousands of metrics; everything else about a collection stays on the collecting
+	 * thread. The executor is not shut down by the collector. Pass a null executor to go
+	 * back to collecting on one thread.
+	 * 
+	 * Dirty tracking and reset on read collections aren't split up. Containers other than
+	 * StatsContainerImpl are read on the collecting thread; only the deltas are split up.
+	 */
+	public void setCollectionExecutor(ExecutorService executor, int partitions) {
+		if (executor != null && partitions < 1)
+			throw new IllegalArgumentException("partitions must be at least 1, got " + partitions);
+		synchronized (this) {
+			this.collectionExecutor = executor;
+			this.partitions = partitions;
+		}
+	}
+
+	public ExecutorService getCollectionExecutor() {
+		return collectionExecutor;
+	}
+
+	// only a CollectableContainer has meters
+	private Map<String, MeterSnapshot> meters() {
+		return collectable == null ? new HashMap<String, MeterSnapshot>() : collectable.meters();
+	}
+
+	private StatsSummary getTotalSummary() {
+		Map<String, Long> counters;
+		Map<String, Distribution> metrics;
+		long start;
+		synchronized (this) {
+			counters = new HashMap<String, Long>(totalCounterMap);
+			metrics = new HashMap<String, Distribution>(totalMetricMap);
+			start = totalStart;
+		}
+		return new StatsSummary(counters, metrics, container.labels(), container.gauges(), collectable.meters(),
+				collectable.distincts(), collectable.topKs(), start, System.currentTimeMillis());
+	}
+
+	/**
+	 * Report counters and metrics that didn't change with a zero delta, the default, or leave
+	 * them out. With a container that tracks changes, see
+	 * StatsContainerImpl.enableDirtyTracking(), OMIT makes collection cost depend only on the
+	 * number of names that changed.
+	 */
+	public void setUnchangedPolicy(UnchangedPolicy policy) {
+		if (policy == null)
+			throw new IllegalArgumentException("policy can't be null");
+		synchronized (this) {
+			unchangedPolicy = policy;
+			zeroMetricMap.clear();
+		}
+	}
+
+	public UnchangedPolicy getUnchangedPolicy() {
+		return unchangedPolicy;
+	}
+
+	// true when name has been idle long enough to evict
+	private boolean idle(Map<String, Integer> idleMap, String name, boolean changed) {
+		if (changed) {
+			idleMap.remove(name);
+			return false;
+		}
+		Integer idle = idleMap.get(name);
+		int intervals = idle == null ? 1 : idle + 1;
+		if (intervals >= evictAfterIdle) {
+			idleMap.remove(name);
+			return true;
+		}
+		idleMap.put(name, intervals);
+		return false;
+	}
+
 	/**
 	 * Trigger a collection of the counters and overwrite the last collection.
+	 * 
+	 * Names the container no longer has are dropped from the last collection too.
 	 */
     protected void triggerCounterSnap() {
+        if (resetOnRead) {
+            triggerDrainCounterSnap();
+            return;
+        }
+        Map<String, Long> dirty = collectable == null ? null : collectable.dirtyCounters();
+        if (dirty != null) {
+            triggerDirtyCounterSnap(dirty);
+            return;
+        }
         Map<String, Long> deltas = new HashMap<String, Long>();
         synchronized (this) {
-
-            for (Map.Entry<String, Long> entry : container.counters().entrySet()) {
+            Map<String, Long> counters = container.counters();
+            if (counters instanceof LongColumn && evictAfterIdle == 0) {
+                deltaCounterMap = columnCounterSnap((LongColumn) counters);
+                return;
+            }
+            inflateLastCounters();
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
                 long lastValue = 0;
                 if (lastCounterMap.containsKey(entry.getKey()))
                 	lastValue = lastCounterMap.get(entry.getKey());
                 
-                deltas.put(entry.getKey(), StatUtils.delta(lastValue, entry.getValue()));
+                long delta = StatUtils.delta(lastValue, entry.getValue());
+                if (evictAfterIdle > 0 && idle(idleCounters, entry.getKey(), delta != 0)
+                        && collectable.evictCounter(entry.getKey(), entry.getValue())) {
+                    lastCounterMap.remove(entry.getKey());
+                    continue;
+                }
+                deltas.put(entry.getKey(), delta);
                 lastCounterMap.put(entry.getKey(), entry.getValue());
             }
+            if (lastCounterMap.size() > deltas.size()) {
+                lastCounterMap.keySet().retainAll(deltas.keySet());
+                idleCounters.keySet().retainAll(deltas.keySet());
+            }
+            if (unchangedPolicy == UnchangedPolicy.OMIT)
+                deltas.values().removeAll(Collections.singleton(0L));
+        }
+        deltaCounterMap = deltas;
+    }
+
+    /**
+     * Work out counter deltas position by position. While the counter names don't change the
+     * container hands back the same NameIndex, so the last collection lines up with this one
+     * and nothing is looked up or boxed.
+     */
+    private LongColumn columnCounterSnap(LongColumn counters) {
+        NameIndex index = counters.getIndex();
+        LongColumn last = lastCounterColumn;
+        boolean aligned = last != null && last.getIndex() == index;
+        long[] deltas = new long[index.size()];
+        for (int i = 0; i < deltas.length; i++) {
+            long lastValue;
+            if (aligned) {
+                lastValue = last.value(i);
+            } else {
+                Long value = last != null ? last.get(index.name(i)) : lastCounterMap.get(index.name(i));
+                lastValue = value == null ? 0 : value;
+            }
+            deltas[i] = StatUtils.delta(lastValue, counters.value(i));
+        }
+        lastCounterColumn = counters;
+        lastCounterMap.clear();
+        idleCounters.clear();
+        LongColumn column = new LongColumn(index, deltas);
+        return unchangedPolicy == UnchangedPolicy.OMIT ? column.withoutZeros() : column;
+    }
+
+    // move the last column collection back into lastCounterMap for the other paths
+    private void inflateLastCounters() {
+        if (lastCounterColumn != null) {
+            lastCounterMap.putAll(lastCounterColumn);
+            lastCounterColumn = null;
+        }
+    }
+
+    /**
+     * Take counter deltas by draining the counters. Values kept from before reset on read was
+     * turned on are subtracted once and dropped.
+     */
+    private void triggerDrainCounterSnap() {
+        Map<String, Long> deltas = new HashMap<String, Long>();
+        synchronized (this) {
+            inflateLastCounters();
+            boolean changedOnly = unchangedPolicy == UnchangedPolicy.OMIT;
+            Map<String, Long> drained = collectable.drainCounters(changedOnly);
+            if (drained == null)
+                drained = Collections.emptyMap();
+            for (Map.Entry<String, Long> entry : drained.entrySet()) {
+                String name = entry.getKey();
+                if (entry.getValue() == null) {
+                    totalCounterMap.remove(name);
+                    idleCounters.remove(name);
+                    continue;
+                }
+                long delta = entry.getValue();
+                Long last = lastCounterMap.remove(name);
+                if (last != null && delta >= last)
+                    delta -= last;
+                if (evictAfterIdle > 0 && idle(idleCounters, name, delta != 0)
+                        && collectable.evictCounter(name, 0L)) {
+                    totalCounterMap.remove(name);
+                    continue;
+                }
+                Long total = totalCounterMap.get(name);
+                totalCounterMap.put(name, total == null ? delta : total + delta);
+                if (delta != 0 || !changedOnly)
+                    deltas.put(name, delta);
+            }
+            lastCounterMap.clear();
+            if (changedOnly && evictAfterIdle > 0) {
+                Iterator<String> names = totalCounterMap.keySet().iterator();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    if (!drained.containsKey(name) && idle(idleCounters, name, false)
+                            && collectable.evictCounter(name, 0L)) {
+                        names.remove();
+                    }
+                }
+            } else if (!changedOnly && totalCounterMap.size() > deltas.size()) {
+                totalCounterMap.keySet().retainAll(deltas.keySet());
+                idleCounters.keySet().retainAll(deltas.keySet());
+            }
+        }
+        deltaCounterMap = deltas;
+    }
+
+    /**
+     * Work out counter deltas from just the counters that changed.
+     */
+    private void triggerDirtyCounterSnap(Map<String, Long> dirty) {
+        Map<String, Long> deltas = new HashMap<String, Long>();
+        synchronized (this) {
+            inflateLastCounters();
+            for (Map.Entry<String, Long> entry : dirty.entrySet()) {
+                String name = entry.getKey();
+                if (entry.getValue() == null) {
+                    lastCounterMap.remove(name);
+                    idleCounters.remove(name);
+                    continue;
+                }
+                Long last = lastCounterMap.put(name, entry.getValue());
+                long delta = StatUtils.delta(last == null ? 0 : last, entry.getValue());
+                if (delta != 0 || unchangedPolicy == UnchangedPolicy.ZERO)
+                    deltas.put(name, delta);
+            }
+            if (unchangedPolicy == UnchangedPolicy.ZERO || evictAfterIdle > 0) {
+                Iterator<String> names = lastCounterMap.keySet().iterator();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    boolean changed = deltas.containsKey(name) && deltas.get(name) != 0;
+                    if (evictAfterIdle > 0 && idle(idleCounters, name, changed)
+                            && collectable.evictCounter(name, lastCounterMap.get(name))) {
+                        names.remove();
+                        deltas.remove(name);
+                    } else if (!dirty.containsKey(name) && unchangedPolicy == UnchangedPolicy.ZERO) {
+                        deltas.put(name, 0L);
+                    }
+                }
+            }
         }
         deltaCounterMap = deltas;
     }
 
     /**
      * Trigger a collection of the metrics and overwrite the last collection.
+     * 
+     * Names the container no longer has are dropped from the last collection too.
+     * IntervalMetrics hand over their interval directly and aren't kept in the last
+     * collection.
      */
     public void triggerMetricSnap() {
+        if (resetOnRead) {
+            triggerDrainMetricSnap();
+            return;
+        }
         Map<String, Distribution> deltas = new HashMap<String, Distribution>();
         synchronized (this) {
+            Map<String, Distribution> intervals = collectable == null ? null : collectable.drainIntervals();
+            Map<String, Distribution> dirty = collectable == null ? null : collectable.dirtyMetrics();
+            if (intervals != null) {
+                for (Map.Entry<String, Distribution> entry : intervals.entrySet()) {
+                    lastMetricMap.remove(entry.getKey());
+                    if (evictAfterIdle > 0 && idle(idleMetrics, entry.getKey(), entry.getValue().getCount() != 0)
+                            && collectable.evictMetric(entry.getKey(), 0L, true)) {
+                        continue;
+                    }
+                    if (entry.getValue().getCount() != 0 || unchangedPolicy == UnchangedPolicy.ZERO)
+                        deltas.put(entry.getKey(), entry.getValue());
+                }
+            }
 
-            for (Map.Entry<String, Distribution> entry : container.metrics().entrySet()) {
+            if (dirty != null) {
+                dirtyMetricSnap(dirty, deltas);
+                deltaMetricMap = deltas;
+                return;
+            }
 
-                if (lastMetricMap.containsKey(entry.getKey())) {
+            Map<String, Distribution> metrics;
+            Map<String, Distribution> computed = null;
+            if (collectionExecutor == null) {
+                metrics = container.metrics();
+            } else {
+                metrics = collectable == null ? container.metrics() : collectable.metrics(collectionExecutor, partitions);
+                computed = parallelDeltas(metrics, intervals);
+            }
+            for (Map.Entry<String, Distribution> entry : metrics.entrySet()) {
+                if (intervals != null && intervals.containsKey(entry.getKey()))
+                    continue;
+                Distribution delta;
+                if (computed != null) {
+                    delta = computed.get(entry.getKey());
+                } else if (lastMetricMap.containsKey(entry.getKey())) {
                     Distribution dist = lastMetricMap.get(entry.getKey());
-                    deltas.put(entry.getKey(), entry.getValue().delta(dist));
-
+                    delta = entry.getValue().delta(dist);
                 } else {
-                    deltas.put(entry.getKey(), entry.getValue());
+                    delta = entry.getValue();
+                }
+                if (evictAfterIdle > 0 && idle(idleMetrics, entry.getKey(), delta.getCount() != 0)
+                        && collectable.evictMetric(entry.getKey(), entry.getValue().getCount(), false)) {
+                    lastMetricMap.remove(entry.getKey());
+                    continue;
                 }
+                deltas.put(entry.getKey(), delta);
                 lastMetricMap.put(entry.getKey(), entry.getValue());
             }
+            if (lastMetricMap.size() > deltas.size()) {
+                lastMetricMap.keySet().retainAll(deltas.keySet());
+                idleMetrics.keySet().retainAll(deltas.keySet());
+            }
+            if (unchangedPolicy == UnchangedPolicy.OMIT) {
+                Iterator<Distribution> values = deltas.values().iterator();
+                while (values.hasNext()) {
+                    if (values.next().getCount() == 0)
+                        values.remove();
+                }
+            }
+        }
+
+        deltaMetricMap = deltas;
+    }
+
+    /**
+     * Work out the delta of each metric against the last collection on the collection
+     * executor. lastMetricMap is only read while the tasks run.
+     */
+    private Map<String, Distribution> parallelDeltas(Map<String, Distribution> metrics,
+            final Map<String, Distribution> intervals) {
+        final List<Map.Entry<String, Distribution>> entries = new ArrayList<Map.Entry<String, Distribution>>(metrics.entrySet());
+        final Distribution[] deltas = new Distribution[entries.size()];
+        final Map<String, Distribution> last = lastMetricMap;
+        Partitions.run(collectionExecutor, partitions, deltas.length, new Partitions.Task() {
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    String name = entries.get(i).getKey();
+                    if (intervals != null && intervals.containsKey(name))
+                        continue;
+                    Distribution current = entries.get(i).getValue();
+                    Distribution dist = last.get(name);
+                    deltas[i] = dist == null ? current : current.delta(dist);
+                }
+            }
+        });
+        Map<String, Distribution> map = new HashMap<String, Distribution>(deltas.length * 2);
+        for (int i = 0; i < deltas.length; i++) {
+            map.put(entries.get(i).getKey(), deltas[i]);
         }
+        return map;
+    }
 
+    /**
+     * Take metric deltas by draining the metrics. Distributions kept from before reset on read
+     * was turned on are subtracted once and dropped.
+     */
+    private void triggerDrainMetricSnap() {
+        Map<String, Distribution> deltas = new HashMap<String, Distribution>();
+        synchronized (this) {
+            boolean changedOnly = unchangedPolicy == UnchangedPolicy.OMIT;
+            Map<String, Distribution> drained = collectable.drainMetrics(changedOnly);
+            if (drained == null)
+                drained = Collections.emptyMap();
+            for (Map.Entry<String, Distribution> entry : drained.entrySet()) {
+                String name = entry.getKey();
+                if (entry.getValue() == null) {
+                    totalMetricMap.remove(name);
+                    idleMetrics.remove(name);
+                    continue;
+                }
+                Distribution delta = entry.getValue();
+                Distribution last = lastMetricMap.remove(name);
+                if (last != null)
+                    delta = delta.delta(last);
+                if (evictAfterIdle > 0 && idle(idleMetrics, name, delta.getCount() != 0)
+                        && collectable.evictMetric(name, entry.getValue().getCount(), true)) {
+                    totalMetricMap.remove(name);
+                    continue;
+                }
+                TotalDistribution total = totalMetricMap.get(name);
+                totalMetricMap.put(name, (total == null ? TotalDistribution.EMPTY : total).plus(delta));
+                if (delta.getCount() != 0 || !changedOnly)
+                    deltas.put(name, delta);
+            }
+            lastMetricMap.clear();
+            zeroMetricMap.clear();
+            if (changedOnly && evictAfterIdle > 0) {
+                Iterator<String> names = totalMetricMap.keySet().iterator();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    if (!drained.containsKey(name) && idle(idleMetrics, name, false)
+                            && collectable.evictMetric(name, 0L, true)) {
+                        names.remove();
+                    }
+                }
+            } else if (!changedOnly && totalMetricMap.size() > deltas.size()) {
+                totalMetricMap.keySet().retainAll(deltas.keySet());
+                idleMetrics.keySet().retainAll(deltas.keySet());
+            }
+        }
         deltaMetricMap = deltas;
     }
+
+    /**
+     * Work out metric deltas from just the metrics that changed. Called holding the lock.
+     */
+    private void dirtyMetricSnap(Map<String, Distribution> dirty, Map<String, Distribution> deltas) {
+        for (Map.Entry<String, Distribution> entry : dirty.entrySet()) {
+            String name = entry.getKey();
+            zeroMetricMap.remove(name);
+            if (entry.getValue() == null) {
+                lastMetricMap.remove(name);
+                idleMetrics.remove(name);
+                continue;
+            }
+            Distribution last = lastMetricMap.put(name, entry.getValue());
+            Distribution delta = last == null ? entry.getValue() : entry.getValue().delta(last);
+            if (delta.getCount() != 0 || unchangedPolicy == UnchangedPolicy.ZERO)
+                deltas.put(name, delta);
+        }
+        if (unchangedPolicy == UnchangedPolicy.ZERO || evictAfterIdle > 0) {
+            Iterator<Map.Entry<String, Distribution>> lasts = lastMetricMap.entrySet().iterator();
+            while (lasts.hasNext()) {
+                Map.Entry<String, Distribution> last = lasts.next();
+                String name = last.getKey();
+                boolean changed = deltas.containsKey(name) && deltas.get(name).getCount() != 0;
+                if (evictAfterIdle > 0 && idle(idleMetrics, name, changed)
+                        && collectable.evictMetric(name, last.getValue().getCount(), false)) {
+                    lasts.remove();
+                    deltas.remove(name);
+                    zeroMetricMap.remove(name);
+                } else if (!dirty.containsKey(name) && unchangedPolicy == UnchangedPolicy.ZERO) {
+                    Distribution zero = zeroMetricMap.get(name);
+                    if (zero == null) {
+                        zero = last.getValue().delta(last.getValue());
+                        zeroMetricMap.put(name, zero);
+                    }
+                    deltas.put(name, zero);
+                }
+            }
+        }
+    }
+
+    /**
+     * Trigger a collection of the distinct counts, emptying them for the next interval.
+     */
+    protected void triggerDistinctSnap() {
+        Map<String, Long> distincts = collectable == null ? null : collectable.drainDistincts();
+        deltaDistinctMap = distincts == null ? new HashMap<String, Long>() : distincts;
+    }
+
+    /**
+     * Trigger a collection of the top-ks, emptying them for the next interval.
+     */
+    protected void triggerTopKSnap() {
+        Map<String, TopKSnapshot> topKs = collectable == null ? null : collectable.drainTopKs();
+        deltaTopKMap = topKs == null ? new HashMap<String, TopKSnapshot>() : topKs;
+    }
    
     /**
      * Snap gauges into metrics
@@ -202,7 +730,7 @@ public class StatsCollectorImpl implements StatsCollector {
     public void triggerGaugeSnap(){
         Map<String, Double> deltas = new HashMap<String, Double>();
         synchronized (this) {
-        	Map<String, Double> gauges = container.gauges();
+        	Map<String, Double> gauges = new HashMap<String, Double>(container.gauges());
             if(includeJvmStats){
             	gauges.putAll( getJvmStats() );
             }
@@ -52,8 +52,20 @@ public class StatsCollectorMBean implements DynamicMBean {
      if(stats.getMetrics().containsKey(attribute)){
     	 return stats.getMetrics().get(attribute).toMap();
      }
+
+     if(stats.getMeters().containsKey(attribute)){
+    	 return stats.getMeters().get(attribute).toMap();
+     }
+
+     if(stats.getDistincts().containsKey(attribute)){
+    	 return stats.getDistincts().get(attribute);
+     }
+
+     if(stats.getTopKs().containsKey(attribute)){
+    	 return stats.getTopKs().get(attribute).toMap();
+     }
      
-     throw new AttributeNotFoundException(attribute + " not found in counters, labels or metrics.");
+     throw new AttributeNotFoundException(attribute + " not found in counters, labels, metrics, meters, distincts or top-ks.");
     	
     }
 
@@ -78,6 +90,12 @@ public class StatsCollectorMBean implements DynamicMBean {
         		list.add(new Attribute(attribute, stats.getLabels().get(attribute)));
         	} else if( stats.getMetrics().containsKey(attribute)){
         		list.add(new Attribute(attribute, stats.getMetrics().get(attribute).toMap()));
+        	} else if( stats.getMeters().containsKey(attribute)){
+        		list.add(new Attribute(attribute, stats.getMeters().get(attribute).toMap()));
+        	} else if( stats.getDistincts().containsKey(attribute)){
+        		list.add(new Attribute(attribute, stats.getDistincts().get(attribute)));
+        	} else if( stats.getTopKs().containsKey(attribute)){
+        		list.add(new Attribute(attribute, stats.getTopKs().get(attribute).toMap()));
         	}
         }
         
@@ -106,7 +124,10 @@ public class StatsCollectorMBean implements DynamicMBean {
         
     	MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[stats.getCounters().size() + 
     	                                                    stats.getLabels().size()   +
-    	                                                    stats.getMetrics().size() 
+    	                                                    stats.getMetrics().size()  +
+    	                                                    stats.getMeters().size()   +
+    	                                                    stats.getDistincts().size() +
+    	                                                    stats.getTopKs().size()
     	                                                    ];
     	int i = 0;
     	for (Map.Entry<String, Long> entry : stats.getCounters().entrySet()  ){
@@ -121,6 +142,18 @@ public class StatsCollectorMBean implements DynamicMBean {
     		attrs[i++] = new MBeanAttributeInfo(entry.getKey(),"java.util.Map<String,Number>", "Metric Distribution: " + entry.getKey(), false, false, false );
     	}
     	
+    	for (Map.Entry<String, MeterSnapshot> entry : stats.getMeters().entrySet()  ){
+    		attrs[i++] = new MBeanAttributeInfo(entry.getKey(),"java.util.Map<String,Number>", "Meter Rates: " + entry.getKey(), false, false, false );
+    	}
+    	
+    	for (Map.Entry<String, Long> entry : stats.getDistincts().entrySet()  ){
+    		attrs[i++] = new MBeanAttributeInfo(entry.getKey(),"java.lang.Long", "Distinct Count: " + entry.getKey(), false, false, false );
+    	}
+    	
+    	for (Map.Entry<String, TopKSnapshot> entry : stats.getTopKs().entrySet()  ){
+    		attrs[i++] = new MBeanAttributeInfo(entry.getKey(),"java.util.Map<String,Long>", "Top Keys: " + entry.getKey(), false, false, false );
+    	}
+    	
         return new MBeanInfo(collector.getClass().getCanonicalName(),
         							  "A stats container mBean",
         							  attrs,
@@ -90,7 +90,8 @@ public interface StatsContainer {
   public Timer getTimer(String name);
   
   /**
-   * evaluate all the counters in this collection.
+   * evaluate all the counters in this collection. StatsContainerImpl returns a LongColumn
+   * that shares its NameIndex with the previous call while the counter names are unchanged.
    */
   public Map<String,Long> counters();
 
@@ -18,23 +18,107 @@ package atd.pillage;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class acts as a container for stats
  * 
  * @author ATD
  */
-public class StatsContainerImpl implements StatsContainer {
+public class StatsContainerImpl implements CollectableContainer {
 	private MetricFactory metricFactory;
+	private CounterFactory counterFactory;
 	public long start = System.currentTimeMillis();
 
+	private final List<BufferedRecorder> recorders = new CopyOnWriteArrayList<BufferedRecorder>();
+
+	private final ThreadLocal<Map<String, NanoTimer>> nanoTimers = new ThreadLocal<Map<String, NanoTimer>>() {
+		@Override
+		protected Map<String, NanoTimer> initialValue() {
+			return new HashMap<String, NanoTimer>();
+		}
+	};
+
+	/**
+	 * Caps the number of distinct counter and metric names under a prefix.
+	 */
+	private static final class CardinalityLimit {
+		final String prefix;
+		final String overflow;
+		final int max;
+		final AtomicInteger counters = new AtomicInteger();
+		final AtomicInteger metrics = new AtomicInteger();
+
+		CardinalityLimit(String prefix, int max) {
+			this.prefix = prefix;
+			this.overflow = prefix.length() == 0 || prefix.endsWith(".") ? prefix + OVERFLOW : prefix + "." + OVERFLOW;
+			this.max = max;
+		}
+
+		/**
+		 * A prefix that doesn't end with "." only matches whole name segments, so "user"
+		 * covers "user" and "user.1" but not "username".
+		 */
+		boolean matches(String name) {
+			if (!name.startsWith(prefix) || name.equals(overflow))
+				return false;
+			return prefix.length() == 0 || prefix.endsWith(".") || name.length() == prefix.length()
+					|| name.charAt(prefix.length()) == '.';
+		}
+
+		static boolean reserve(AtomicInteger names, int max) {
+			while (true) {
+				int n = names.get();
+				if (n >= max)
+					return false;
+				if (names.compareAndSet(n, n + 1))
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * Last segment of the name that takes the data for names over a cardinality limit.
+	 */
+	public static final String OVERFLOW = "overflow";
+
+	private final List<CardinalityLimit> limits = new CopyOnWriteArrayList<CardinalityLimit>();
+
+	// bumped whenever counters or metrics are dropped so handles know to resolve again
+	private final AtomicInteger generation = new AtomicInteger();
+
 	protected ConcurrentHashMap<String, Counter> counterMap = new ConcurrentHashMap<String, Counter>();
 	protected ConcurrentHashMap<String, Metric> metricMap = new ConcurrentHashMap<String, Metric>();
 	protected ConcurrentHashMap<String, String> labelMap = new ConcurrentHashMap<String, String>();
 	protected ConcurrentHashMap<String, Gauge> gaugeMap = new ConcurrentHashMap<String, Gauge>();
+	protected ConcurrentHashMap<String, Meter> meterMap = new ConcurrentHashMap<String, Meter>();
+	protected ConcurrentHashMap<String, HyperLogLog> distinctMap = new ConcurrentHashMap<String, HyperLogLog>();
+	protected ConcurrentHashMap<String, TopK> topKMap = new ConcurrentHashMap<String, TopK>();
+
+	// names of counters and metrics changed since the collector last asked, when tracking
+	private volatile boolean dirtyTracking = false;
+	private final ConcurrentLinkedQueue<String> dirtyCounterNames = new ConcurrentLinkedQueue<String>();
+	private final ConcurrentLinkedQueue<String> dirtyMetricNames = new ConcurrentLinkedQueue<String>();
+
+	// skips the walk in drainIntervals() until an IntervalMetric exists
+	private volatile boolean hasIntervals = false;
+	// skips the walk for untracked metrics in dirtyMetrics() until a TimeBasedMetric exists
+	private volatile boolean hasTimeBased = false;
+
+	// names from the last counters() and gauges(), handed out again while they don't change
+	private volatile NameIndex counterIndex;
+	private volatile NameIndex gaugeIndex;
 
 	public StatsContainerImpl(MetricFactory mFactory) {
+		this(mFactory, new AtomicCounterFactory());
+	}
+
+	public StatsContainerImpl(MetricFactory mFactory, CounterFactory cFactory) {
 		metricFactory = mFactory;
+		counterFactory = cFactory;
 	}
 
 	/**
@@ -45,6 +129,14 @@ public class StatsContainerImpl implements StatsContainer {
 		getMetric(name).add(value);
 	}
 
+	/**
+	 * Adds a long value to a named metric. Use this for nanosecond timings, byte sizes and
+	 * anything else that can overflow an int.
+	 */
+	public void add(String name, long value) {
+		StatUtils.add(getMetric(name), value);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -58,7 +150,7 @@ public class StatsContainerImpl implements StatsContainer {
 	 */
 	@Override
 	public void incr(String name, int count) {
-		getCounter(name).incr(count);
+		getCounter(name).add(count);
 	}
 
 	/**
@@ -66,7 +158,143 @@ public class StatsContainerImpl implements StatsContainer {
 	 */
 	@Override
 	public void incr(String name) {
-		getCounter(name).incr();
+		getCounter(name).add(1);
+	}
+
+	/**
+	 * Adds a value to a tagged metric. The metric is stored under key.getName().
+	 */
+	public void add(MetricKey key, int value) {
+		getMetric(key.getName()).add(value);
+	}
+
+	/**
+	 * Adds a long value to a tagged metric. The metric is stored under key.getName().
+	 */
+	public void add(MetricKey key, long value) {
+		StatUtils.add(getMetric(key.getName()), value);
+	}
+
+	/**
+	 * Increments a tagged counter. The counter is stored under key.getName().
+	 */
+	public void incr(MetricKey key, int count) {
+		getCounter(key.getName()).add(count);
+	}
+
+	/**
+	 * Increments a tagged counter by one. The counter is stored under key.getName().
+	 */
+	public void incr(MetricKey key) {
+		getCounter(key.getName()).add(1);
+	}
+
+	/**
+	 * Mark one event on a named meter.
+	 */
+	public void mark(String name) {
+		getMeter(name).mark();
+	}
+
+	/**
+	 * Mark n events on a named meter.
+	 */
+	public void mark(String name, long n) {
+		getMeter(name).mark(n);
+	}
+
+	/**
+	 * Get the Meter object representing a named meter.
+	 */
+	public Meter getMeter(String name) {
+		Meter meter = meterMap.get(name);
+		if (meter == null) {
+			Meter created = new Meter();
+			meter = meterMap.putIfAbsent(name, created);
+			if (meter == null)
+				meter = created;
+		}
+		return meter;
+	}
+
+	/**
+	 * Count a value towards the number of distinct values seen by a named estimator, for
+	 * example a user id. Sequential ids are fine, values are mixed before use.
+	 */
+	public void addDistinct(String name, long value) {
+		getDistinct(name).add(value);
+	}
+
+	/**
+	 * Count a string value towards the number of distinct values seen by a named estimator.
+	 */
+	public void addDistinct(String name, CharSequence value) {
+		getDistinct(name).add(value);
+	}
+
+	/**
+	 * Merge an estimator built elsewhere, another process or host, into a named estimator.
+	 */
+	public void addDistinct(String name, HyperLogLog estimator) {
+		HyperLogLog distinct = distinctMap.get(name);
+		if (distinct == null) {
+			HyperLogLog created = new HyperLogLog(estimator.getPrecision());
+			distinct = distinctMap.putIfAbsent(name, created);
+			if (distinct == null)
+				distinct = created;
+		}
+		distinct.merge(estimator);
+	}
+
+	/**
+	 * Get the HyperLogLog estimator behind a named distinct count.
+	 */
+	public HyperLogLog getDistinct(String name) {
+		HyperLogLog distinct = distinctMap.get(name);
+		if (distinct == null) {
+			HyperLogLog created = new HyperLogLog();
+			distinct = distinctMap.putIfAbsent(name, created);
+			if (distinct == null)
+				distinct = created;
+		}
+		return distinct;
+	}
+
+	/**
+	 * Count one occurrence of key, an endpoint or tenant say, in a named top-k. Only the most
+	 * frequent keys are kept so the number of keys doesn't matter.
+	 */
+	public void addTopK(String name, String key) {
+		getTopK(name).add(key);
+	}
+
+	/**
+	 * Count n occurrences of key in a named top-k.
+	 */
+	public void addTopK(String name, String key, long n) {
+		getTopK(name).add(key, n);
+	}
+
+	/**
+	 * Get the TopK behind a named top-k, created with the default of 10 keys if needed.
+	 */
+	public TopK getTopK(String name) {
+		TopK topK = topKMap.get(name);
+		if (topK == null) {
+			TopK created = new TopK();
+			topK = topKMap.putIfAbsent(name, created);
+			if (topK == null)
+				topK = created;
+		}
+		return topK;
+	}
+
+	/**
+	 * Use topK for a name instead of the default, to report more keys say. Does nothing if the
+	 * name is already in use.
+	 */
+	public void registerTopK(String name, TopK topK) {
+		topKMap.putIfAbsent(name, topK);
 	}
 
 	/**
@@ -102,11 +330,17 @@ public class StatsContainerImpl implements StatsContainer {
 	 */
 	@Override
 	public Map<String, Double> gauges() {
-		HashMap<String, Double> map = new HashMap<String, Double>();
-		for(Map.Entry<String, Gauge> entry :gaugeMap.entrySet()){
-			map.put(entry.getKey(), entry.getValue().read());
+		NameIndex.Builder names = new NameIndex.Builder(gaugeIndex);
+		double[] values = new double[gaugeMap.size() + 16];
+		for (Map.Entry<String, Gauge> entry : gaugeMap.entrySet()) {
+			int i = names.add(entry.getKey());
+			if (i == values.length)
+				values = Arrays.copyOf(values, i * 2);
+			values[i] = entry.getValue().read();
 		}
-		return map;
+		NameIndex index = names.build();
+		gaugeIndex = index;
+		return new DoubleColumn(index, Arrays.copyOf(values, index.size()));
 	}
 
 	/**
@@ -140,8 +374,15 @@ public class StatsContainerImpl implements StatsContainer {
 	public Counter getCounter(String name) {
 		Counter counter = counterMap.get(name);
 		if (counter == null) {
-			counterMap.putIfAbsent(name, new Counter());
-			counter = counterMap.get(name);
+			CardinalityLimit limit = limitFor(name);
+			if (limit != null && !CardinalityLimit.reserve(limit.counters, limit.max))
+				return getCounter(limit.overflow);
+			Counter created = track(name, counterFactory.newCounter());
+			counter = counterMap.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+			else if (limit != null)
+				limit.counters.decrementAndGet();
 		}
 		return counter;
 	}
@@ -153,12 +394,307 @@ public class StatsContainerImpl implements StatsContainer {
 	public Metric getMetric(String name) {
 		Metric metric = metricMap.get(name);
 		if (metric == null) {
-			metricMap.putIfAbsent(name, metricFactory.newMetric());
-			metric = metricMap.get(name);
+			CardinalityLimit limit = limitFor(name);
+			if (limit != null && !CardinalityLimit.reserve(limit.metrics, limit.max))
+				return getMetric(limit.overflow);
+			Metric created = track(name, StatUtils.newMetric(metricFactory, name));
+			metric = metricMap.putIfAbsent(name, created);
+			if (metric == null) {
+				metric = created;
+				if (created instanceof IntervalMetric)
+					hasIntervals = true;
+				if (created instanceof TimeBasedMetric)
+					hasTimeBased = true;
+			} else {
+				retire(created);
+				if (limit != null)
+					limit.metrics.decrementAndGet();
+			}
 		}
 		return metric;
 	}
 
+	/**
+	 * Drop a counter from the container. Increments through a Counter fetched earlier are
+	 * lost, handles resolve the name again.
+	 * 
+	 * @return true if the counter existed
+	 */
+	public boolean removeCounter(String name) {
+		Counter counter = counterMap.remove(name);
+		if (counter == null)
+			return false;
+		generation.incrementAndGet();
+		counterRemoved(name);
+		return true;
+	}
+
+	private void counterRemoved(String name) {
+		CardinalityLimit limit = limitFor(name);
+		if (limit != null)
+			limit.counters.decrementAndGet();
+		if (dirtyTracking)
+			dirtyCounterNames.offer(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean evictCounter(String name, long value) {
+		Counter counter = counterMap.get(name);
+		if (counter == null || !unchanged(counter, value) || !counterMap.remove(name, counter))
+			return false;
+		// handles resolve again from here on, so read once more for updates that got in first
+		generation.incrementAndGet();
+		if (unchanged(counter, value)) {
+			counterRemoved(name);
+			return true;
+		}
+		Counter existing = counterMap.putIfAbsent(name, counter);
+		if (existing != null) {
+			// the name was used again in between, move the value over to the new counter
+			for (long rest = counter.value(); rest != 0;) {
+				int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, rest));
+				existing.add(step);
+				rest -= step;
+			}
+			CardinalityLimit limit = limitFor(name);
+			if (limit != null)
+				limit.counters.decrementAndGet();
+		}
+		return false;
+	}
+
+	private static boolean unchanged(Counter counter, long value) {
+		if (counter instanceof TrackedCounter)
+			return !((TrackedCounter) counter).isDirty();
+		return counter.value() == value;
+	}
+
+	/**
+	 * Drop a metric from the container. Data added through a Metric fetched earlier is lost,
+	 * handles resolve the name again.
+	 * 
+	 * @return true if the metric existed
+	 */
+	public boolean removeMetric(String name) {
+		Metric metric = metricMap.remove(name);
+		if (metric == null)
+			return false;
+		generation.incrementAndGet();
+		metricRemoved(name, metric);
+		return true;
+	}
+
+	private void metricRemoved(String name, Metric metric) {
+		CardinalityLimit limit = limitFor(name);
+		if (limit != null)
+			limit.metrics.decrementAndGet();
+		retire(metric);
+		if (dirtyTracking)
+			dirtyMetricNames.offer(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean evictMetric(String name, long count, boolean drained) {
+		Metric metric = metricMap.get(name);
+		if (metric == null || !unchanged(metric, count, drained) || !metricMap.remove(name, metric))
+			return false;
+		// handles resolve again from here on, so read once more for data that got in first
+		generation.incrementAndGet();
+		if (unchanged(metric, count, drained)) {
+			metricRemoved(name, metric);
+			return true;
+		}
+		Metric existing = metricMap.putIfAbsent(name, metric);
+		if (existing != null) {
+			// the name was used again in between, move the data over to the new metric
+			existing.add(metric.getDistribution());
+			CardinalityLimit limit = limitFor(name);
+			if (limit != null)
+				limit.metrics.decrementAndGet();
+			retire(metric);
+		}
+		return false;
+	}
+
+	private static boolean unchanged(Metric metric, long count, boolean drained) {
+		if (metric instanceof TrackedMetric)
+			return !((TrackedMetric) metric).isDirty();
+		if (drained && (metric instanceof IntervalMetric || metric instanceof DrainableMetric))
+			count = 0L;
+		return metric.getDistribution().getCount() == count;
+	}
+
+	/**
+	 * Cap the number of distinct counter names, and separately metric names, under prefix:
+	 * names equal to it or starting with prefix followed by a ".". Once a prefix is full, new names under it record into prefix.overflow instead, so
+	 * a bug that puts ids into names can't grow the container without bound. Names that
+	 * already exist keep working. Removing names frees room for new ones.
+	 * 
+	 * When prefixes nest, the longest matching prefix applies.
+	 * 
+	 * @param maxNames distinct counter names and distinct metric names allowed under prefix
+	 */
+	public void setCardinalityLimit(String prefix, int maxNames) {
+		if (maxNames < 1)
+			throw new IllegalArgumentException("maxNames must be positive, got " + maxNames);
+		CardinalityLimit limit = new CardinalityLimit(prefix, maxNames);
+		for (String name : counterMap.keySet()) {
+			if (limit.matches(name))
+				limit.counters.incrementAndGet();
+		}
+		for (String name : metricMap.keySet()) {
+			if (limit.matches(name))
+				limit.metrics.incrementAndGet();
+		}
+		synchronized (limits) {
+			for (CardinalityLimit existing : limits) {
+				if (existing.prefix.equals(prefix))
+					limits.remove(existing);
+			}
+			limits.add(limit);
+		}
+	}
+
+	/**
+	 * Track which counters and metrics change so a collector only reads those, through
+	 * dirtyCounters() and dirtyMetrics(), instead of every one. Each update pays one volatile
+	 * read, plus a CAS and a queue insert the first time after a collection. Worth it when
+	 * most names are quiet in a given interval.
+	 * 
+	 * Existing counters and metrics are wrapped too and count as changed. TimeBasedMetrics,
+	 * like SlidingWindowMetric or DecayingMetric, change with time alone, so they aren't
+	 * tracked and are read on every collection.
+	 */
+	public void enableDirtyTracking() {
+		synchronized (this) {
+			if (dirtyTracking)
+				return;
+			dirtyTracking = true;
+			for (Map.Entry<String, Counter> entry : counterMap.entrySet()) {
+				Counter tracked = track(entry.getKey(), entry.getValue());
+				if (counterMap.replace(entry.getKey(), entry.getValue(), tracked))
+					dirtyCounterNames.offer(entry.getKey());
+			}
+			for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+				Metric tracked = track(entry.getKey(), entry.getValue());
+				if (tracked != entry.getValue() && metricMap.replace(entry.getKey(), entry.getValue(), tracked))
+					dirtyMetricNames.offer(entry.getKey());
+			}
+			// handles bound to the unwrapped stats resolve again
+			generation.incrementAndGet();
+		}
+	}
+
+	public boolean isDirtyTracking() {
+		return dirtyTracking;
+	}
+
+	private Counter track(String name, Counter counter) {
+		if (!dirtyTracking || counter instanceof TrackedCounter)
+			return counter;
+		return new TrackedCounter(counter, name, dirtyCounterNames);
+	}
+
+	private Metric track(String name, Metric metric) {
+		if (!dirtyTracking || metric instanceof TrackedMetric || metric instanceof IntervalMetric
+				|| metric instanceof TimeBasedMetric)
+			return metric;
+		return new TrackedMetric(metric, name, dirtyMetricNames);
+	}
+
+	/**
+	 * @return the name that takes the data for names over the limit on prefix
+	 */
+	public String getOverflowName(String prefix) {
+		return new CardinalityLimit(prefix, 1).overflow;
+	}
+
+	private CardinalityLimit limitFor(String name) {
+		CardinalityLimit match = null;
+		for (CardinalityLimit limit : limits) {
+			if (limit.matches(name) && (match == null || limit.prefix.length() > match.prefix.length()))
+				match = limit;
+		}
+		return match;
+	}
+
+	/**
+	 * Resolve a named counter once. The handle increments the counter directly, without
+	 * looking up the name again, so hold on to it for hot paths.
+	 */
+	public CounterHandle counterHandle(String name) {
+		return new CounterHandle(this, name);
+	}
+
+	/**
+	 * Resolve a named metric once. The handle adds data points directly, without looking
+	 * up the name again, so hold on to it for hot paths.
+	 */
+	public MetricHandle metricHandle(String name) {
+		return new MetricHandle(this, name);
+	}
+
+	/**
+	 * Create a recorder that buffers counter increments and metric samples per thread and
+	 * flushes them into this container in batches. The container flushes it on flush().
+	 * 
+	 * Samples are grouped in scratch metrics from this container's MetricFactory before they
+	 * are flushed. Create a BufferedRecorder directly to pick a cheaper scratch metric, like a
+	 * HistogramMetric in front of ConcurrentHistogramMetrics.
+	 * 
+	 * @param capacity samples buffered per thread before a flush
+	 */
+	public BufferedRecorder newRecorder(int capacity) {
+		BufferedRecorder recorder = new BufferedRecorder(this, metricFactory, capacity);
+		recorders.add(recorder);
+		return recorder;
+	}
+
+	/**
+	 * Register a recorder created directly so flush() pushes its buffers too.
+	 */
+	public void addRecorder(BufferedRecorder recorder) {
+		recorders.add(recorder);
+	}
+
+	/**
+	 * Stop flushing a recorder, see BufferedRecorder.close().
+	 */
+	public void removeRecorder(BufferedRecorder recorder) {
+		recorders.remove(recorder);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		for (BufferedRecorder recorder : recorders) {
+			recorder.flushAll();
+		}
+	}
+
+	/**
+	 * Free whatever a dropped metric holds outside the heap.
+	 */
+	protected void retire(Metric metric) {
+		if (metric instanceof Releasable)
+			((Releasable) metric).release();
+	}
+
+	/**
+	 * Changes every time counters or metrics are dropped from this container.
+	 */
+	int generation() {
+		return generation.get();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -175,16 +711,39 @@ public class StatsContainerImpl implements StatsContainer {
 		return new Timer(this, name);
 	}
 
+	/**
+	 * return the calling thread's NanoTimer for name. The same instance is handed back on
+	 * every call from the same thread so timing a request allocates nothing. Don't nest
+	 * timers with the same name on one thread.
+	 * 
+	 * @return a reusable timer that records microseconds
+	 */
+	public NanoTimer getNanoTimer(String name) {
+		Map<String, NanoTimer> timers = nanoTimers.get();
+		NanoTimer timer = timers.get(name);
+		if (timer == null) {
+			timer = new NanoTimer(this, name);
+			timers.put(name, timer);
+		}
+		return timer;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public Map<String, Long> counters() {
-		HashMap<String, Long> map = new HashMap<String, Long>(counterMap.size());
+		NameIndex.Builder names = new NameIndex.Builder(counterIndex);
+		long[] values = new long[counterMap.size() + 16];
 		for (Map.Entry<String, Counter> entry : counterMap.entrySet()) {
-			map.put(entry.getKey(), entry.getValue().value());
+			int i = names.add(entry.getKey());
+			if (i == values.length)
+				values = Arrays.copyOf(values, i * 2);
+			values[i] = entry.getValue().value();
 		}
-		return map;
+		NameIndex index = names.build();
+		counterIndex = index;
+		return new LongColumn(index, Arrays.copyOf(values, index.size()));
 	}
 
 	/**
@@ -200,6 +759,206 @@ public class StatsContainerImpl implements StatsContainer {
 		return map;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Distribution> metrics(ExecutorService executor, int partitions) {
+		final List<Map.Entry<String, Metric>> entries = new ArrayList<Map.Entry<String, Metric>>(metricMap.entrySet());
+		final Distribution[] distributions = new Distribution[entries.size()];
+		Partitions.run(executor, partitions, distributions.length, new Partitions.Task() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					distributions[i] = entries.get(i).getValue().getDistribution();
+				}
+			}
+		});
+		HashMap<String, Distribution> map = new HashMap<String, Distribution>(distributions.length * 2);
+		for (int i = 0; i < distributions.length; i++) {
+			map.put(entries.get(i).getKey(), distributions[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Distribution> drainIntervals() {
+		HashMap<String, Distribution> map = new HashMap<String, Distribution>();
+		if (!hasIntervals)
+			return map;
+		for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+			if (entry.getValue() instanceof IntervalMetric)
+				map.put(entry.getKey(), ((IntervalMetric) entry.getValue()).getIntervalDistribution());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> dirtyCounters() {
+		if (!dirtyTracking)
+			return null;
+		HashMap<String, Long> map = new HashMap<String, Long>();
+		String name;
+		while ((name = dirtyCounterNames.poll()) != null) {
+			Counter counter = counterMap.get(name);
+			if (counter instanceof TrackedCounter)
+				map.put(name, ((TrackedCounter) counter).clean());
+			else if (counter == null)
+				map.put(name, null);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Distribution> dirtyMetrics() {
+		if (!dirtyTracking)
+			return null;
+		HashMap<String, Distribution> map = new HashMap<String, Distribution>();
+		String name;
+		while ((name = dirtyMetricNames.poll()) != null) {
+			Metric metric = metricMap.get(name);
+			if (metric instanceof TrackedMetric)
+				map.put(name, ((TrackedMetric) metric).clean());
+			else if (metric == null)
+				map.put(name, null);
+		}
+		if (hasTimeBased) {
+			for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+				if (entry.getValue() instanceof TimeBasedMetric)
+					map.put(entry.getKey(), entry.getValue().getDistribution());
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> drainCounters(boolean changedOnly) {
+		HashMap<String, Long> map = new HashMap<String, Long>();
+		if (dirtyTracking && changedOnly) {
+			String name;
+			while ((name = dirtyCounterNames.poll()) != null) {
+				Counter counter = counterMap.get(name);
+				map.put(name, counter == null ? null : Long.valueOf(counter.drain()));
+			}
+			return map;
+		}
+		if (dirtyTracking)
+			dirtyCounterNames.clear();
+		for (Map.Entry<String, Counter> entry : counterMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().drain());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Distribution> drainMetrics(boolean changedOnly) {
+		HashMap<String, Distribution> map = new HashMap<String, Distribution>();
+		if (dirtyTracking && changedOnly) {
+			String name;
+			while ((name = dirtyMetricNames.poll()) != null) {
+				Metric metric = metricMap.get(name);
+				map.put(name, metric == null ? null : drain(metric));
+			}
+			if (hasIntervals || hasTimeBased) {
+				for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+					if (entry.getValue() instanceof IntervalMetric || entry.getValue() instanceof TimeBasedMetric)
+						map.put(entry.getKey(), drain(entry.getValue()));
+				}
+			}
+			return map;
+		}
+		if (dirtyTracking)
+			dirtyMetricNames.clear();
+		for (Map.Entry<String, Metric> entry : metricMap.entrySet()) {
+			map.put(entry.getKey(), drain(entry.getValue()));
+		}
+		return map;
+	}
+
+	private static Distribution drain(Metric metric) {
+		if (metric instanceof TrackedMetric)
+			metric = ((TrackedMetric) metric).cleanForDrain();
+		if (metric instanceof IntervalMetric)
+			return ((IntervalMetric) metric).getIntervalDistribution();
+		if (metric instanceof DrainableMetric)
+			return ((DrainableMetric) metric).drain();
+		return metric.getDistribution();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, MeterSnapshot> meters() {
+		HashMap<String, MeterSnapshot> map = new HashMap<String, MeterSnapshot>(meterMap.size());
+		for (Map.Entry<String, Meter> entry : meterMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().getSnapshot());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> distincts() {
+		HashMap<String, Long> map = new HashMap<String, Long>(distinctMap.size());
+		for (Map.Entry<String, HyperLogLog> entry : distinctMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().estimate());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, Long> drainDistincts() {
+		HashMap<String, Long> map = new HashMap<String, Long>(distinctMap.size());
+		for (Map.Entry<String, HyperLogLog> entry : distinctMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().get(true).estimate());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, TopKSnapshot> topKs() {
+		HashMap<String, TopKSnapshot> map = new HashMap<String, TopKSnapshot>(topKMap.size());
+		for (Map.Entry<String, TopK> entry : topKMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().get(false));
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, TopKSnapshot> drainTopKs() {
+		HashMap<String, TopKSnapshot> map = new HashMap<String, TopKSnapshot>(topKMap.size());
+		for (Map.Entry<String, TopK> entry : topKMap.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().get(true));
+		}
+		return map;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -213,9 +972,25 @@ public class StatsContainerImpl implements StatsContainer {
 	 */
 	@Override
 	public void clearAll() {
+		if (dirtyTracking) {
+			dirtyCounterNames.addAll(counterMap.keySet());
+			dirtyMetricNames.addAll(metricMap.keySet());
+		}
 		counterMap.clear();
 		labelMap.clear();
+		meterMap.clear();
+		distinctMap.clear();
+		topKMap.clear();
+		List<Metric> dropped = new ArrayList<Metric>(metricMap.values());
 		metricMap.clear();
+		generation.incrementAndGet();
+		for (Metric metric : dropped) {
+			retire(metric);
+		}
+		for (CardinalityLimit limit : limits) {
+			limit.counters.set(0);
+			limit.metrics.set(0);
+		}
 		start = System.currentTimeMillis();
 	}
 
@@ -224,7 +999,8 @@ public class StatsContainerImpl implements StatsContainer {
 	 */
 	@Override
 	public StatsSummary getSummary() {
-		return new StatsSummary(counters(), metrics(), labels(), gauges(), start,
+		flush();
+		return new StatsSummary(counters(), metrics(), labels(), gauges(), meters(), distincts(), topKs(), start,
 				System.currentTimeMillis());
 	}
 
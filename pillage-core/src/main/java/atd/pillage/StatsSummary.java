@@ -24,6 +24,10 @@ import java.util.regex.Pattern;
 /**
  * A small object to encapsulate a summary of stats. A summary is an immutable 
  * object.
+ * 
+ * Counters and gauges collected from a StatsContainerImpl are held as a LongColumn and a
+ * DoubleColumn, primitive arrays over a shared NameIndex. The map getters are views over
+ * them, accept(StatsVisitor) reads them without boxing.
  */
 public class StatsSummary {
 	private long start;
@@ -39,6 +43,9 @@ public class StatsSummary {
     private Map<String, Distribution> metrics;
     private Map<String, String> labels;
     private Map<String, Double> gauges;
+    private Map<String, MeterSnapshot> meters;
+    private Map<String, Long> distincts;
+    private Map<String, TopKSnapshot> topKs;
 
     public StatsSummary(Map<String, Long> counters, Map<String, Distribution> metrics, Map<String, String> labels){
     	this(counters, metrics, labels, new HashMap<String, Double>());
@@ -53,10 +60,25 @@ public class StatsSummary {
     }
         
     public StatsSummary(Map<String, Long> counters, Map<String, Distribution> metrics, Map<String, String> labels, Map<String,Double> gauges, long start, long end){
+    	this(counters, metrics, labels, gauges, new HashMap<String, MeterSnapshot>(), start, end);
+    }
+
+    public StatsSummary(Map<String, Long> counters, Map<String, Distribution> metrics, Map<String, String> labels, Map<String,Double> gauges, Map<String, MeterSnapshot> meters, long start, long end){
+    	this(counters, metrics, labels, gauges, meters, new HashMap<String, Long>(), start, end);
+    }
+
+    public StatsSummary(Map<String, Long> counters, Map<String, Distribution> metrics, Map<String, String> labels, Map<String,Double> gauges, Map<String, MeterSnapshot> meters, Map<String, Long> distincts, long start, long end){
+    	this(counters, metrics, labels, gauges, meters, distincts, new HashMap<String, TopKSnapshot>(), start, end);
+    }
+
+    public StatsSummary(Map<String, Long> counters, Map<String, Distribution> metrics, Map<String, String> labels, Map<String,Double> gauges, Map<String, MeterSnapshot> meters, Map<String, Long> distincts, Map<String, TopKSnapshot> topKs, long start, long end){
     	this.counters = counters;
     	this.metrics = metrics;
     	this.labels = labels;
     	this.gauges = gauges;
+    	this.meters = meters;
+    	this.distincts = distincts;
+    	this.topKs = topKs;
     	this.start = start;
     	this.end = end;
     }
@@ -99,6 +121,75 @@ public class StatsSummary {
     	return Collections.unmodifiableMap(gauges);
     }
     
+    /**
+     * return an unmodifiable map of meter names and their rates.
+     * 
+     * @return
+     */
+    public Map<String, MeterSnapshot> getMeters(){
+    	if(meters == null || meters.isEmpty())
+    		return Collections.emptyMap();
+
+    	return Collections.unmodifiableMap(meters);
+    }
+
+    /**
+     * return an unmodifiable map of distinct value counters and their estimated cardinality.
+     * 
+     * @return
+     */
+    public Map<String, Long> getDistincts(){
+    	if(distincts == null || distincts.isEmpty())
+    		return Collections.emptyMap();
+
+    	return Collections.unmodifiableMap(distincts);
+    }
+
+    /**
+     * return an unmodifiable map of top-k names and their most frequent keys.
+     * 
+     * @return
+     */
+    public Map<String, TopKSnapshot> getTopKs(){
+    	if(topKs == null || topKs.isEmpty())
+    		return Collections.emptyMap();
+
+    	return Collections.unmodifiableMap(topKs);
+    }
+
+    /**
+     * Hand every stat in this summary to visitor: counters, labels, metrics, gauges, meters,
+     * distinct counts and top-ks, in that order.
+     */
+    public void accept(StatsVisitor visitor){
+    	if(counters instanceof LongColumn){
+    		LongColumn column = (LongColumn) counters;
+    		for(int i = 0; i < column.size(); i++)
+    			visitor.counter(column.getIndex().name(i), column.value(i));
+    	} else {
+    		for(Map.Entry<String, Long> entry :counters.entrySet())
+    			visitor.counter(entry.getKey(), entry.getValue());
+    	}
+    	for(Map.Entry<String, String> entry :labels.entrySet())
+    		visitor.label(entry.getKey(), entry.getValue());
+    	for(Map.Entry<String, Distribution> entry :metrics.entrySet())
+    		visitor.metric(entry.getKey(), entry.getValue());
+    	if(gauges instanceof DoubleColumn){
+    		DoubleColumn column = (DoubleColumn) gauges;
+    		for(int i = 0; i < column.size(); i++)
+    			visitor.gauge(column.getIndex().name(i), column.value(i));
+    	} else {
+    		for(Map.Entry<String, Double> entry :getGauges().entrySet())
+    			visitor.gauge(entry.getKey(), entry.getValue());
+    	}
+    	for(Map.Entry<String, MeterSnapshot> entry :getMeters().entrySet())
+    		visitor.meter(entry.getKey(), entry.getValue());
+    	for(Map.Entry<String, Long> entry :getDistincts().entrySet())
+    		visitor.distinct(entry.getKey(), entry.getValue());
+    	for(Map.Entry<String, TopKSnapshot> entry :getTopKs().entrySet())
+    		visitor.topK(entry.getKey(), entry.getValue());
+    }
+
     /**
      * get the start time in milliseconds for this summary.
      * @return
@@ -126,6 +217,9 @@ public class StatsSummary {
         Map<String, Long> counters = new HashMap<String, Long>();
         Map<String, Distribution> metrics = new HashMap<String, Distribution>();
         Map<String, String> labels = new HashMap<String, String>();
+        Map<String, MeterSnapshot> meters = new HashMap<String, MeterSnapshot>();
+        Map<String, Long> distincts = new HashMap<String, Long>();
+        Map<String, TopKSnapshot> topKs = new HashMap<String, TopKSnapshot>();
 
         for(Map.Entry<String, Long> entry :this.counters.entrySet()){
             if(!pattern.matcher(entry.getKey()).matches()){
@@ -142,7 +236,22 @@ public class StatsSummary {
                 labels.put(entry.getKey(), entry.getValue());
             }
         }
-        return new StatsSummary(counters, metrics, labels);
+        for(Map.Entry<String, MeterSnapshot> entry :getMeters().entrySet()){
+            if(!pattern.matcher(entry.getKey()).matches()){
+                meters.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for(Map.Entry<String, Long> entry :getDistincts().entrySet()){
+            if(!pattern.matcher(entry.getKey()).matches()){
+                distincts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for(Map.Entry<String, TopKSnapshot> entry :getTopKs().entrySet()){
+            if(!pattern.matcher(entry.getKey()).matches()){
+                topKs.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new StatsSummary(counters, metrics, labels, new HashMap<String, Double>(), meters, distincts, topKs, System.currentTimeMillis(), System.currentTimeMillis());
     }
     
     @Override
@@ -152,6 +261,9 @@ public class StatsSummary {
     	str.append("counters : ").append(countersToString());
     	str.append("metrics : ").append(metricsToString());
     	str.append("gauges : ").append(gaugesToString());
+    	str.append("meters : ").append(metersToString());
+    	str.append("distincts : ").append(distinctsToString());
+    	str.append("topKs : ").append(topKsToString());
     	str.append("} \n");
     	return str.toString();
     }
@@ -183,6 +295,33 @@ public class StatsSummary {
     	return str.toString();
     }
     
+    private String metersToString(){
+    	StringBuilder str = new StringBuilder("{ \n");
+    	for( Map.Entry<String, MeterSnapshot> entry : getMeters().entrySet()){
+    		str.append(entry.getKey()).append(": ").append(entry.getValue()).append(", \n");
+    	}
+    	str.append("}, \n");
+    	return str.toString();
+    }
+
+    private String distinctsToString(){
+    	StringBuilder str = new StringBuilder("{ \n");
+    	for( Map.Entry<String, Long> entry : getDistincts().entrySet()){
+    		str.append(entry.getKey()).append(": ").append(entry.getValue()).append(", \n");
+    	}
+    	str.append("}, \n");
+    	return str.toString();
+    }
+
+    private String topKsToString(){
+    	StringBuilder str = new StringBuilder("{ \n");
+    	for( Map.Entry<String, TopKSnapshot> entry : getTopKs().entrySet()){
+    		str.append(entry.getKey()).append(": ").append(entry.getValue()).append(", \n");
+    	}
+    	str.append("}, \n");
+    	return str.toString();
+    }
+
     private String gaugesToString(){
     	StringBuilder str = new StringBuilder("{ \n");
     	for( Map.Entry<String, Double> entry : gauges.entrySet()){
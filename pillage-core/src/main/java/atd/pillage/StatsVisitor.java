@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+/**
+ * Receives each stat in a StatsSummary, see StatsSummary.accept(StatsVisitor). Counters,
+ * gauges and distinct counts come through as primitives, so a reporter walking a columnar
+ * summary never boxes a value.
+ */
+public interface StatsVisitor {
+
+	void counter(String name, long value);
+
+	void label(String name, String value);
+
+	void metric(String name, Distribution distribution);
+
+	void gauge(String name, double value);
+
+	void meter(String name, MeterSnapshot snapshot);
+
+	void distinct(String name, long estimate);
+
+	void topK(String name, TopKSnapshot snapshot);
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for hot paths. Increments are spread over a set of cells, one per core by
+ * default, and each cell sits on its own cache line so writers on different cores don't
+ * fight over the same line. The cells are summed when the value is read.
+ * 
+ * Use add() on the hot path. incr() has to sum the cells to return the new value, which
+ * pulls every cell's cache line to the calling core.
+ * 
+ * Each cell takes a 128 byte line, so a counter costs about 128 bytes per stripe plus one
+ * line of padding: 1.1KB at the default of up to DEFAULT_MAX_STRIPES stripes, 8.3KB at 64.
+ * Keep the stripe count low for containers with many counters.
+ * 
+ * As long as only positive increments are added the value read is never smaller than a
+ * value read before it, so deltas computed by the StatsCollector stay correct. update() and
+ * reset() are not atomic with concurrent increments. An increment that races with them may
+ * or may not survive.
+ * 
+ * @author ATD
+ */
+public class StripedCounter extends Counter {
+
+	/**
+	 * Upper bound on the default stripe count, which is otherwise one per core.
+	 */
+	public static final int DEFAULT_MAX_STRIPES = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	public StripedCounter() {
+		this(defaultStripes());
+	}
+
+	/**
+	 * @param stripes number of cells. This is rounded up to a power of two.
+	 */
+	public StripedCounter(int stripes) {
+		super(false);
+		int size = Stripes.size(stripes);
+		cells = new AtomicLongArray((size + 1) * Stripes.PAD);
+		mask = size - 1;
+	}
+
+	static int defaultStripes() {
+		return Math.min(Stripes.defaultSize(), DEFAULT_MAX_STRIPES);
+	}
+
+	private int slot(int probe) {
+		// skip the first PAD longs so cell 0 doesn't share a line with the array header
+		return ((probe & mask) + 1) * Stripes.PAD;
+	}
+
+	@Override
+	public void add(int i) {
+		int slot = slot(Stripes.probe());
+		long v = cells.get(slot);
+		if (!cells.compareAndSet(slot, v, v + i)) {
+			cells.addAndGet(slot(Stripes.advanceProbe()), i);
+		}
+	}
+
+	@Override
+	public long incr() {
+		add(1);
+		return value();
+	}
+
+	@Override
+	public long incr(int i) {
+		add(i);
+		return value();
+	}
+
+	@Override
+	public long value() {
+		long sum = 0L;
+		for (int i = 0; i <= mask; i++) {
+			sum += cells.get((i + 1) * Stripes.PAD);
+		}
+		return sum;
+	}
+
+	@Override
+	public void update(long l) {
+		reset();
+		cells.set(Stripes.PAD, l);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i <= mask; i++) {
+			cells.set((i + 1) * Stripes.PAD, 0L);
+		}
+	}
+
+	/**
+	 * Takes and zeroes each cell in turn. Every increment is counted by exactly one drain.
+	 */
+	@Override
+	public long drain() {
+		long sum = 0L;
+		for (int i = 0; i <= mask; i++) {
+			sum += cells.getAndSet((i + 1) * Stripes.PAD, 0L);
+		}
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		return "StripedCounter[" + value() + "]";
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+/**
+ * Helpers shared by the striped stats implementations. Each thread carries a probe
+ * that picks its stripe. When a thread loses a CAS on its stripe the probe is moved
+ * so threads that collide spread out over time.
+ */
+final class Stripes {
+
+	/**
+	 * Number of longs between two stripes in an AtomicLongArray. 16 longs is 128 bytes which
+	 * keeps stripes off each other's cache lines, including with adjacent line prefetch.
+	 */
+	static final int PAD = 16;
+
+	/**
+	 * Upper bound on the number of stripes, regardless of core count.
+	 */
+	static final int MAX_STRIPES = 64;
+
+	private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			long id = Thread.currentThread().getId();
+			int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+			return new int[] { h == 0 ? 1 : h };
+		}
+	};
+
+	private Stripes() {
+	}
+
+	/**
+	 * @return the probe for the calling thread
+	 */
+	static int probe() {
+		return PROBE.get()[0];
+	}
+
+	/**
+	 * Move the calling thread's probe after it hit contention.
+	 * 
+	 * @return the new probe
+	 */
+	static int advanceProbe() {
+		int[] probe = PROBE.get();
+		int h = probe[0];
+		h ^= h << 13;
+		h ^= h >>> 17;
+		h ^= h << 5;
+		probe[0] = h;
+		return h;
+	}
+
+	/**
+	 * Round the requested stripe count up to a power of two between 1 and MAX_STRIPES.
+	 */
+	static int size(int requested) {
+		int n = 1;
+		while (n < requested && n < MAX_STRIPES)
+			n <<= 1;
+		return n;
+	}
+
+	/**
+	 * Default stripe count, one per available processor.
+	 */
+	static int defaultSize() {
+		return size(Runtime.getRuntime().availableProcessors());
+	}
+}
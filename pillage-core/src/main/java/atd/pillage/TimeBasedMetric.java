@@ -0,0 +1,25 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package atd.pillage;
+
+/**
+ * A metric whose distribution changes with time alone, like a window that slides or samples
+ * that decay. Dirty tracking can't tell when these change, so a container never tracks them
+ * and a collector reads them on every collection.
+ */
+public interface TimeBasedMetric extends Metric {
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the most frequent keys, endpoints or tenants say, in bounded memory with the
+ * Space-Saving algorithm of Metwally et al, "Efficient Computation of Frequent and Top-k
+ * Elements in Data Streams". Each summary keeps a fixed number of counters. A key that
+ * isn't tracked takes over the smallest counter and inherits its count as error, so any
+ * key seen more than total / capacity times is guaranteed to be tracked and counts are
+ * over estimated by at most the recorded error.
+ * 
+ * Updates go to one of several striped summaries, each behind its own lock. A thread that
+ * finds its stripe busy moves to another rather than waiting. Reading merges the stripes,
+ * adding up the counts of each key.
+ */
+public class TopK {
+
+	public static final int DEFAULT_K = 10;
+
+	private final int k;
+	private final int capacity;
+	private final Summary[] stripes;
+
+	/**
+	 * Track the top 10 keys.
+	 */
+	public TopK() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Track the top k keys with 8 counters per reported key.
+	 */
+	public TopK(int k) {
+		this(k, Math.max(8 * k, 64));
+	}
+
+	/**
+	 * @param k number of keys reported
+	 * @param capacity counters per stripe, more counters means smaller errors
+	 */
+	public TopK(int k, int capacity) {
+		this(k, capacity, Stripes.defaultSize());
+	}
+
+	public TopK(int k, int capacity, int stripes) {
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive, got " + k);
+		if (capacity < k)
+			throw new IllegalArgumentException("capacity " + capacity + " is less than k " + k);
+		this.k = k;
+		this.capacity = capacity;
+		this.stripes = new Summary[Stripes.size(stripes)];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Summary(capacity);
+		}
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Count one occurrence of key.
+	 */
+	public void add(String key) {
+		add(key, 1);
+	}
+
+	/**
+	 * Count n occurrences of key.
+	 */
+	public void add(String key, long n) {
+		if (key == null)
+			throw new IllegalArgumentException("key can't be null");
+		if (n <= 0)
+			return;
+		int mask = stripes.length - 1;
+		int h = Stripes.probe();
+		for (int attempt = 0; attempt < stripes.length; attempt++) {
+			Summary stripe = stripes[h & mask];
+			if (stripe.lock.tryLock()) {
+				try {
+					stripe.add(key, n);
+				} finally {
+					stripe.lock.unlock();
+				}
+				return;
+			}
+			h = Stripes.advanceProbe();
+		}
+		// everything was busy, wait on our own stripe
+		Summary stripe = stripes[h & mask];
+		stripe.lock.lock();
+		try {
+			stripe.add(key, n);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Merge the stripes into a snapshot of the top k keys, optionally emptying them so the
+	 * next snapshot starts from zero.
+	 */
+	public TopKSnapshot get(boolean reset) {
+		Map<String, long[]> merged = new HashMap<String, long[]>();
+		long total = 0;
+		// a key missing from a full stripe may have had up to that stripe's minimum there
+		long[] minimums = new long[stripes.length];
+		boolean full = false;
+		List<Map<String, long[]>> perStripe = new ArrayList<Map<String, long[]>>(stripes.length);
+		for (int i = 0; i < stripes.length; i++) {
+			Summary stripe = stripes[i];
+			Map<String, long[]> counts;
+			stripe.lock.lock();
+			try {
+				counts = stripe.counts();
+				total += stripe.total;
+				if (stripe.size == capacity) {
+					minimums[i] = stripe.heap[0].count;
+					full = true;
+				}
+				if (reset)
+					stripe.clear();
+			} finally {
+				stripe.lock.unlock();
+			}
+			perStripe.add(counts);
+		}
+		for (Map<String, long[]> counts : perStripe) {
+			for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+				long[] sum = merged.get(entry.getKey());
+				if (sum == null)
+					merged.put(entry.getKey(), sum = new long[2]);
+				sum[0] += entry.getValue()[0];
+				sum[1] += entry.getValue()[1];
+			}
+		}
+		List<TopKSnapshot.Entry> entries = new ArrayList<TopKSnapshot.Entry>(merged.size());
+		for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+			long error = entry.getValue()[1];
+			if (full) {
+				for (int i = 0; i < minimums.length; i++) {
+					if (minimums[i] > 0 && !perStripe.get(i).containsKey(entry.getKey()))
+						error += minimums[i];
+				}
+			}
+			entries.add(new TopKSnapshot.Entry(entry.getKey(), entry.getValue()[0], error));
+		}
+		Collections.sort(entries, BY_COUNT);
+		return new TopKSnapshot(entries.size() > k ? new ArrayList<TopKSnapshot.Entry>(entries.subList(0, k)) : entries, total);
+	}
+
+	static final Comparator<TopKSnapshot.Entry> BY_COUNT = new Comparator<TopKSnapshot.Entry>() {
+		@Override
+		public int compare(TopKSnapshot.Entry a, TopKSnapshot.Entry b) {
+			if (a.getCount() != b.getCount())
+				return a.getCount() > b.getCount() ? -1 : 1;
+			return a.getKey().compareTo(b.getKey());
+		}
+	};
+
+	/**
+	 * Empty all the stripes.
+	 */
+	public void clear() {
+		for (Summary stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				stripe.clear();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+	}
+
+	private static final class Counter {
+		String key;
+		long count;
+		long error;
+		int index;
+	}
+
+	/**
+	 * One Space-Saving summary, a map from key to counter plus a min heap of the counters
+	 * ordered by count so the smallest can be replaced in O(log capacity).
+	 */
+	private static final class Summary {
+		final ReentrantLock lock = new ReentrantLock();
+		final HashMap<String, Counter> counters;
+		final Counter[] heap;
+		int size;
+		long total;
+
+		Summary(int capacity) {
+			counters = new HashMap<String, Counter>(capacity * 2);
+			heap = new Counter[capacity];
+		}
+
+		void add(String key, long n) {
+			total += n;
+			Counter counter = counters.get(key);
+			if (counter != null) {
+				counter.count += n;
+				siftDown(counter.index);
+				return;
+			}
+			if (size < heap.length) {
+				counter = new Counter();
+				counter.key = key;
+				counter.count = n;
+				counter.index = size;
+				heap[size++] = counter;
+				counters.put(key, counter);
+				siftUp(counter.index);
+				return;
+			}
+			counter = heap[0];
+			counters.remove(counter.key);
+			counter.key = key;
+			counter.error = counter.count;
+			counter.count += n;
+			counters.put(key, counter);
+			siftDown(0);
+		}
+
+		Map<String, long[]> counts() {
+			Map<String, long[]> counts = new HashMap<String, long[]>(size * 2);
+			for (int i = 0; i < size; i++) {
+				counts.put(heap[i].key, new long[] { heap[i].count, heap[i].error });
+			}
+			return counts;
+		}
+
+		void clear() {
+			counters.clear();
+			for (int i = 0; i < size; i++) {
+				heap[i] = null;
+			}
+			size = 0;
+			total = 0;
+		}
+
+		private void siftUp(int i) {
+			Counter counter = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (heap[parent].count <= counter.count)
+					break;
+				place(heap[parent], i);
+				i = parent;
+			}
+			place(counter, i);
+		}
+
+		private void siftDown(int i) {
+			Counter counter = heap[i];
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && heap[child + 1].count < heap[child].count)
+					child++;
+				if (counter.count <= heap[child].count)
+					break;
+				place(heap[child], i);
+				i = child;
+			}
+			place(counter, i);
+		}
+
+		private void place(Counter counter, int i) {
+			heap[i] = counter;
+			counter.index = i;
+		}
+	}
+}
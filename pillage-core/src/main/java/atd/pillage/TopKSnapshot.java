@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The top keys of a TopK at one point in time, most frequent first.
+ */
+public class TopKSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -2214939370711516018L;
+
+	private final List<Entry> entries;
+	private final long total;
+
+	public TopKSnapshot(List<Entry> entries, long total) {
+		this.entries = entries;
+		this.total = total;
+	}
+
+	/**
+	 * @return the top keys, most frequent first
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return count of everything added, tracked or not
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * this will return the top keys and their estimated counts, most frequent first
+	 */
+	public Map<String, Long> toMap() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Entry entry : entries) {
+			map.put(entry.getKey(), entry.getCount());
+		}
+		return map;
+	}
+
+	/**
+	 * Combine the top keys of two intervals, the same way TopK combines its stripes: counts of
+	 * a key are summed, and a key missing from one side gets that side's lowest count added to
+	 * its error since it may have been just below the cut. Keeps as many keys as the longer of
+	 * the two.
+	 */
+	public TopKSnapshot plus(TopKSnapshot other) {
+		Map<String, Entry> mine = byKey(entries);
+		Map<String, Entry> theirs = byKey(other.entries);
+		List<Entry> merged = new ArrayList<Entry>(mine.size() + theirs.size());
+		for (Entry entry : entries) {
+			Entry match = theirs.get(entry.getKey());
+			if (match == null)
+				merged.add(new Entry(entry.getKey(), entry.getCount(), entry.getError() + other.lowest()));
+			else
+				merged.add(new Entry(entry.getKey(), entry.getCount() + match.getCount(), entry.getError() + match.getError()));
+		}
+		for (Entry entry : other.entries) {
+			if (!mine.containsKey(entry.getKey()))
+				merged.add(new Entry(entry.getKey(), entry.getCount(), entry.getError() + lowest()));
+		}
+		Collections.sort(merged, TopK.BY_COUNT);
+		int k = Math.max(entries.size(), other.entries.size());
+		return new TopKSnapshot(merged.size() > k ? new ArrayList<Entry>(merged.subList(0, k)) : merged, total + other.total);
+	}
+
+	private long lowest() {
+		return entries.isEmpty() ? 0L : entries.get(entries.size() - 1).getCount();
+	}
+
+	private static Map<String, Entry> byKey(List<Entry> entries) {
+		Map<String, Entry> map = new HashMap<String, Entry>(entries.size() * 2);
+		for (Entry entry : entries) {
+			map.put(entry.getKey(), entry);
+		}
+		return map;
+	}
+
+	/**
+	 * Name a key is reported under: name.key with the key made safe for dotted names.
+	 */
+	static String reportName(String name, String key) {
+		return name + "." + MetricKey.sanitize(key).replace('.', '_');
+	}
+
+	@Override
+	public String toString() {
+		return "total: " + total + ", top: " + toMap();
+	}
+
+	/**
+	 * A key with its estimated count. The true count is between count - error and count.
+	 */
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 4120183209547461139L;
+
+		private final String key;
+		private final long count;
+		private final long error;
+
+		public Entry(String key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return key + ": " + count + " (+-" + error + ")";
+		}
+	}
+}
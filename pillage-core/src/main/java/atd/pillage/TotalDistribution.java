@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A running total of distributions that keeps only count, sum, minimum and maximum. A
+ * StatsCollectorImpl in reset on read mode uses these for getFullSummary() so it doesn't
+ * hold a full copy of every metric.
+ */
+public class TotalDistribution implements Distribution, Serializable {
+
+	private static final long serialVersionUID = -6311316232851254107L;
+
+	public static final TotalDistribution EMPTY = new TotalDistribution(0, 0, 0, 0);
+
+	private final long count;
+	private final long sum;
+	private final long minimum;
+	private final long maximum;
+
+	public TotalDistribution(long count, long sum, long minimum, long maximum) {
+		this.count = count;
+		this.sum = sum;
+		this.minimum = minimum;
+		this.maximum = maximum;
+	}
+
+	/**
+	 * @return a new total including dist
+	 */
+	public TotalDistribution plus(Distribution dist) {
+		if (dist.getCount() == 0)
+			return this;
+		if (count == 0)
+			return new TotalDistribution(dist.getCount(), dist.getSum(), dist.getMinimum(), dist.getMaximum());
+		return new TotalDistribution(count + dist.getCount(), sum + dist.getSum(),
+				Math.min(minimum, dist.getMinimum()), Math.max(maximum, dist.getMaximum()));
+	}
+
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public long getSum() {
+		return sum;
+	}
+
+	@Override
+	public long getMinimum() {
+		return minimum;
+	}
+
+	@Override
+	public long getMaximum() {
+		return maximum;
+	}
+
+	@Override
+	public double getMean() {
+		return count > 0 ? (double) sum / count : 0.0d;
+	}
+
+	/**
+	 * this will return
+	 * count
+	 * sum
+	 * mean
+	 * minimum
+	 * maximum
+	 */
+	@Override
+	public Map<String, Number> toMap() {
+		HashMap<String, Number> map = new HashMap<String, Number>();
+		map.put("count", getCount());
+		map.put("sum", getSum());
+		map.put("mean", getMean());
+		map.put("minimum", getMinimum());
+		map.put("maximum", getMaximum());
+		return map;
+	}
+
+	/**
+	 * Subtracts count and sum. Minimum and maximum are kept from this total.
+	 */
+	@Override
+	public Distribution delta(Distribution dist) throws IllegalArgumentException {
+		return new TotalDistribution(count - dist.getCount(), sum - dist.getSum(), minimum, maximum);
+	}
+
+	@Override
+	public String toString() {
+		return "count: " + count + ", sum: " + sum + ", minimum: " + minimum + ", maximum: " + maximum;
+	}
+}
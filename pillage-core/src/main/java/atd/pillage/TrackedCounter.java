@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Wraps a Counter so the container knows when it changes. The first update after the
+ * counter was last read puts its name on the container's dirty queue; later updates only
+ * read a volatile flag. Every read and update goes to the wrapped counter, so none of
+ * Counter's own state is allocated.
+ */
+class TrackedCounter extends Counter {
+
+	private static final AtomicIntegerFieldUpdater<TrackedCounter> DIRTY = AtomicIntegerFieldUpdater
+			.newUpdater(TrackedCounter.class, "dirty");
+
+	private final Counter counter;
+	private final String name;
+	private final Queue<String> dirtyNames;
+	private volatile int dirty;
+
+	TrackedCounter(Counter counter, String name, Queue<String> dirtyNames) {
+		super(false);
+		this.counter = counter;
+		this.name = name;
+		this.dirtyNames = dirtyNames;
+	}
+
+	private void changed() {
+		if (dirty == 0 && DIRTY.compareAndSet(this, 0, 1))
+			dirtyNames.offer(name);
+	}
+
+	/**
+	 * Clear the flag and read the value. Updates that race with this are counted again on
+	 * the next read.
+	 */
+	long clean() {
+		dirty = 0;
+		return counter.value();
+	}
+
+	@Override
+	public long drain() {
+		dirty = 0;
+		return counter.drain();
+	}
+
+	/**
+	 * @return true if the counter was updated since it was last read
+	 */
+	boolean isDirty() {
+		return dirty != 0;
+	}
+
+	Counter getCounter() {
+		return counter;
+	}
+
+	@Override
+	public long incr() {
+		long value = counter.incr();
+		changed();
+		return value;
+	}
+
+	@Override
+	public long incr(int i) {
+		long value = counter.incr(i);
+		changed();
+		return value;
+	}
+
+	@Override
+	public void add(int i) {
+		counter.add(i);
+		changed();
+	}
+
+	@Override
+	public long value() {
+		return counter.value();
+	}
+
+	@Override
+	public void update(long l) {
+		counter.update(l);
+		changed();
+	}
+
+	@Override
+	public void reset() {
+		counter.reset();
+		changed();
+	}
+
+	@Override
+	public String toString() {
+		return counter.toString();
+	}
+}
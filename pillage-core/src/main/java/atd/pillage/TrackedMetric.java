@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Wraps a Metric so the container knows when it changes. The first data point after the
+ * metric was last read puts its name on the container's dirty queue; later data points
+ * only read a volatile flag.
+ */
+class TrackedMetric implements LongMetric, Releasable {
+
+	private static final AtomicIntegerFieldUpdater<TrackedMetric> DIRTY = AtomicIntegerFieldUpdater
+			.newUpdater(TrackedMetric.class, "dirty");
+
+	private final Metric metric;
+	private final String name;
+	private final Queue<String> dirtyNames;
+	private volatile int dirty;
+
+	TrackedMetric(Metric metric, String name, Queue<String> dirtyNames) {
+		this.metric = metric;
+		this.name = name;
+		this.dirtyNames = dirtyNames;
+	}
+
+	private void changed() {
+		if (dirty == 0 && DIRTY.compareAndSet(this, 0, 1))
+			dirtyNames.offer(name);
+	}
+
+	/**
+	 * Clear the flag and read the distribution. Data points that race with this are read
+	 * again on the next call.
+	 */
+	Distribution clean() {
+		dirty = 0;
+		return metric.getDistribution();
+	}
+
+	/**
+	 * Clear the flag and hand over the wrapped metric to be drained.
+	 */
+	Metric cleanForDrain() {
+		dirty = 0;
+		return metric;
+	}
+
+	/**
+	 * @return true if data was added since the metric was last read
+	 */
+	boolean isDirty() {
+		return dirty != 0;
+	}
+
+	Metric getMetric() {
+		return metric;
+	}
+
+	@Override
+	public void clear() {
+		metric.clear();
+		changed();
+	}
+
+	@Override
+	public long add(int i) {
+		long count = metric.add(i);
+		changed();
+		return count;
+	}
+
+	@Override
+	public long add(long l) {
+		long count = StatUtils.add(metric, l);
+		changed();
+		return count;
+	}
+
+	@Override
+	public long add(Distribution d) {
+		long count = metric.add(d);
+		changed();
+		return count;
+	}
+
+	@Override
+	public Distribution getDistribution() {
+		return metric.getDistribution();
+	}
+
+	@Override
+	public void release() {
+		if (metric instanceof Releasable)
+			((Releasable) metric).release();
+	}
+
+	@Override
+	public String toString() {
+		return metric.toString();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets a reader swap out a buffer that writers record into without the writers ever
+ * blocking, after Gil Tene's WriterReaderPhaser in HdrHistogram.
+ * 
+ * Writers bracket each update with writerCriticalSectionEnter() and
+ * writerCriticalSectionExit(). A reader takes readerLock(), swaps the active buffer for
+ * an empty one and calls flipPhase(), which returns once every writer that could still see
+ * the old buffer has left its critical section. The reader then owns the old buffer.
+ * 
+ * Writers pay one getAndIncrement on entry and one incrementAndGet on exit and never wait.
+ */
+public class WriterReaderPhaser {
+
+	private final AtomicLong startEpoch = new AtomicLong(0);
+	private final AtomicLong evenEndEpoch = new AtomicLong(0);
+	private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+	private final ReentrantLock readerLock = new ReentrantLock();
+
+	/**
+	 * @return a value to pass to writerCriticalSectionExit()
+	 */
+	public long writerCriticalSectionEnter() {
+		return startEpoch.getAndIncrement();
+	}
+
+	public void writerCriticalSectionExit(long criticalValueAtEnter) {
+		if (criticalValueAtEnter < 0)
+			oddEndEpoch.incrementAndGet();
+		else
+			evenEndEpoch.incrementAndGet();
+	}
+
+	/**
+	 * Only one reader flips at a time. Must be held around flipPhase().
+	 */
+	public void readerLock() {
+		readerLock.lock();
+	}
+
+	public void readerUnlock() {
+		readerLock.unlock();
+	}
+
+	/**
+	 * Wait for the writers of the current phase to leave their critical sections and start
+	 * a new phase. Writers that enter after the flip only see what was swapped in before it.
+	 * 
+	 * @param yieldNanos time to sleep between checks, 0 just yields
+	 */
+	public void flipPhase(long yieldNanos) {
+		if (!readerLock.isHeldByCurrentThread())
+			throw new IllegalStateException("flipPhase() called without holding the reader lock");
+
+		boolean nextPhaseIsEven = startEpoch.get() < 0;
+		long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+		if (nextPhaseIsEven)
+			evenEndEpoch.set(initialStartValue);
+		else
+			oddEndEpoch.set(initialStartValue);
+
+		long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+
+		AtomicLong endEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+		while (endEpoch.get() != startValueAtFlip) {
+			if (yieldNanos == 0) {
+				Thread.yield();
+			} else {
+				try {
+					Thread.sleep(yieldNanos / 1000000, (int) (yieldNanos % 1000000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	public void flipPhase() {
+		flipPhase(0);
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static atd.pillage.AsyncStatsReporter.OverflowPolicy.*
+
+class AsyncStatsReporterSpec extends Specification {
+
+    def reporters = []
+
+    def cleanup(){
+        reporters*.shutdown()
+    }
+
+    def async(StatsReporter reporter, int capacity, policy = DROP_OLDEST, long timeoutMillis = 0){
+        def async = new AsyncStatsReporter(reporter, capacity, policy, timeoutMillis, TimeUnit.MILLISECONDS)
+        reporters << async
+        async
+    }
+
+    def summary(){
+        new StatsSummary([a: 1L], [:], [:])
+    }
+
+    def waitFor(Closure condition){
+        long until = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < until)
+            Thread.sleep(5)
+        condition()
+    }
+
+    def histogram(values){
+        def metric = new HistogramMetric()
+        values.each { metric.add(it as int) }
+        metric.getDistribution()
+    }
+
+    def "should merge queued summaries by default"(){
+      given:
+        def gate = new CountDownLatch(1)
+        def seen = Collections.synchronizedList([])
+        def reporter = new AsyncStatsReporter({ s -> gate.await(); seen << s } as StatsReporter, 1)
+        reporters << reporter
+        reporter.report(new StatsSummary([a: 1L], [m: histogram([1])], [:], [g: 1.0d], 0, 10))
+        waitFor { reporter.getQueueDepth() == 0 }
+
+      when:
+        reporter.report(new StatsSummary([a: 2L], [m: histogram([5, 6])], [:], [g: 2.0d], 10, 20))
+        reporter.report(new StatsSummary([a: 3L, b: 1L], [m: histogram([100])], [:], [g: 3.0d], 20, 30))
+        reporter.report(new StatsSummary([a: 4L], [:], [:], [g: 4.0d], 30, 40))
+
+      then:
+        reporter.getQueueDepth() == 1
+        reporter.getCoalesced() == 2
+        reporter.getDropped() == 0
+
+      when:
+        gate.countDown()
+
+      then:
+        waitFor { seen.size() == 2 }
+        seen[1].counters == [a: 9L, b: 1L]
+        seen[1].metrics["m"].count == 3
+        seen[1].metrics["m"].sum == 111
+        seen[1].gauges == [g: 4.0d]
+        seen[1].start == 10
+        seen[1].end == 40
+    }
+
+    def "should merge top keys and count lost distinct counts as dropped"(){
+      given:
+        def gate = new CountDownLatch(1)
+        def seen = Collections.synchronizedList([])
+        def reporter = new AsyncStatsReporter({ s -> gate.await(); seen << s } as StatsReporter, 1)
+        reporters << reporter
+        def top = { key, count -> [t: new TopKSnapshot([new TopKSnapshot.Entry(key, count, 0)], count)] }
+        reporter.report(summary())
+        waitFor { reporter.getQueueDepth() == 0 }
+
+      when:
+        reporter.report(new StatsSummary([:], [:], [:], [:], [:], [d: 10L], top("x", 3), 0, 10))
+        reporter.report(new StatsSummary([:], [:], [:], [:], [:], [d: 20L], top("x", 4), 10, 20))
+        gate.countDown()
+
+      then:
+        waitFor { seen.size() == 2 }
+        seen[1].topKs["t"].toMap() == [x: 7L]
+        seen[1].distincts == [d: 20L]
+        reporter.getCoalesced() == 1
+        reporter.getDropped() == 1
+    }
+
+    def "should drop the oldest summaries without blocking"(){
+      given:
+        def gate = new CountDownLatch(1)
+        def seen = Collections.synchronizedList([])
+        def reporter = async({ s -> gate.await(); seen << s } as StatsReporter, 2)
+        def summaries = (1..5).collect { summary() }
+        reporter.report(summaries[0])
+        waitFor { reporter.getQueueDepth() == 0 }
+
+      when:
+        summaries[1..4].each { reporter.report(it) }
+
+      then:
+        reporter.getQueueDepth() == 2
+        reporter.getDropped() == 2
+
+      when:
+        gate.countDown()
+
+      then:
+        waitFor { seen.size() == 3 }
+        seen == [summaries[0], summaries[3], summaries[4]]
+        reporter.getReported() == 3
+    }
+
+    def "should drop the newest summaries when asked"(){
+      given:
+        def gate = new CountDownLatch(1)
+        def seen = Collections.synchronizedList([])
+        def reporter = async({ s -> gate.await(); seen << s } as StatsReporter, 1, DROP_NEWEST)
+        def summaries = (1..4).collect { summary() }
+        reporter.report(summaries[0])
+        waitFor { reporter.getQueueDepth() == 0 }
+
+      when:
+        summaries[1..3].each { reporter.report(it) }
+        gate.countDown()
+
+      then:
+        waitFor { seen.size() == 2 }
+        seen == [summaries[0], summaries[1]]
+        reporter.getDropped() == 2
+    }
+
+    def "should move past a hung report"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def calls = new java.util.concurrent.atomic.AtomicInteger()
+        def hung = { s ->
+            if (calls.getAndIncrement() == 0) {
+                while (true) {
+                    try { Thread.sleep(100000) } catch (InterruptedException e) { }
+                }
+            }
+        } as StatsReporter
+        def reporter = async(hung, 4, DROP_OLDEST, 100)
+        reporter.recordStats(container, "reporter")
+
+      when:
+        3.times { reporter.report(summary()) }
+
+      then:
+        waitFor { reporter.getReported() == 2 }
+        reporter.getTimeouts() == 1
+        container.counters()["reporter.timeouts"] == 1L
+        container.gauges()["reporter.queue.depth"] == 0.0d
+        waitFor { container.getMetric("reporter.report.millis").getDistribution().getCount() == 3 }
+    }
+
+    def "should stop starting threads while abandoned reports are stuck"(){
+      given:
+        def calls = new java.util.concurrent.atomic.AtomicInteger()
+        def hung = { s ->
+            calls.incrementAndGet()
+            while (true) {
+                try { Thread.sleep(100000) } catch (InterruptedException e) { }
+            }
+        } as StatsReporter
+        def reporter = new AsyncStatsReporter(hung, 4, DROP_OLDEST, 30, TimeUnit.MILLISECONDS, 2)
+        reporters << reporter
+
+      when:
+        6.times {
+            reporter.report(summary())
+            Thread.sleep(50)
+        }
+
+      then:
+        waitFor { reporter.getTimeouts() + reporter.getDropped() == 6 }
+        calls.get() == 2
+        reporter.getTimeouts() == 2
+        reporter.getDropped() == 4
+    }
+
+    def "should need room for at least one abandoned thread"(){
+      when:
+        new AsyncStatsReporter({ s -> } as StatsReporter, 4, DROP_OLDEST, 30, TimeUnit.MILLISECONDS, 0)
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should count reports that throw"(){
+      given:
+        def reporter = async({ s -> throw new RuntimeException("boom") } as StatsReporter, 4)
+
+      when:
+        reporter.report(summary())
+
+      then:
+        waitFor { reporter.getErrors() == 1 }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class BufferedRecorderSpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+
+    def "recorded data should stay in the buffer until a flush"(){
+      given:
+        def recorder = container.newRecorder(100)
+        def requests = recorder.counter("requests")
+        def latency = recorder.metric("latency")
+
+      when:
+        recorder.incr(requests)
+        recorder.add(latency, 10)
+
+      then:
+        container.getCounter("requests").value() == 0
+        container.getMetric("latency").getDistribution().count == 0
+
+      when:
+        recorder.flush()
+
+      then:
+        container.getCounter("requests").value() == 1
+        container.getMetric("latency").getDistribution().count == 1
+    }
+
+    def "a full buffer should flush itself"(){
+      given:
+        def recorder = container.newRecorder(4)
+        def latency = recorder.metric("latency")
+
+      when:
+        4.times { recorder.add(latency, it) }
+
+      then:
+        container.getMetric("latency").getDistribution().count == 4
+    }
+
+    def "registering a name twice should return the same slot"(){
+      given:
+        def recorder = container.newRecorder(10)
+
+      expect:
+        recorder.counter("a") == recorder.counter("a")
+        recorder.metric("b") == recorder.metric("b")
+    }
+
+    def "collect should see data buffered by other threads"(){
+      given:
+        def recorder = container.newRecorder(1000)
+        def requests = recorder.counter("requests")
+        def latency = recorder.metric("latency")
+        def collector = new StatsCollectorImpl(container)
+        def threads = (1..4).collect {
+            Thread.start {
+                50.times {
+                    recorder.incr(requests)
+                    recorder.add(latency, 25)
+                }
+            }
+        }
+        threads*.join()
+
+      when:
+        def summary = collector.collect()
+
+      then:
+        summary.getCounters()["requests"] == 200
+        summary.getMetrics()["latency"].count == 200
+    }
+
+    def "unregistered slots should be refused"(){
+      given:
+        def recorder = container.newRecorder(10)
+        recorder.metric("latency")
+
+      when:
+        recorder.add(1, 10)
+
+      then:
+        thrown(IllegalArgumentException)
+
+      when:
+        recorder.incr(0)
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "a failed flush should not jam the buffer"(){
+      given:
+        def recorder = new BufferedRecorder(container, new LogLinearMetricFactory(2), 8)
+        container.addRecorder(recorder)
+        recorder.add(recorder.metric("latency"), 5)
+
+      when:
+        container.flush()
+
+      then:
+        thrown(RuntimeException)
+
+      when:
+        recorder.close()
+        container.flush()
+
+      then:
+        notThrown(RuntimeException)
+    }
+
+    def "a closed recorder should no longer be flushed by the container"(){
+      given:
+        def recorder = container.newRecorder(10)
+        def requests = recorder.counter("requests")
+        recorder.incr(requests)
+
+      when:
+        recorder.close()
+        recorder.incr(requests)
+        container.flush()
+
+      then:
+        container.getCounter("requests").value() == 1
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class CardinalityLimitSpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+
+    def "should send new names over the limit to the overflow name"(){
+      given:
+        container.setCardinalityLimit("user.", 2)
+
+      when:
+        (1..5).each { container.incr("user." + it) }
+        (1..5).each { container.add("user." + it + ".latency", 10) }
+        container.incr("other")
+
+      then:
+        container.counters() == ["user.1": 1L, "user.2": 1L, "user.overflow": 3L, "other": 1L]
+        container.metrics().keySet() == ["user.1.latency", "user.2.latency", "user.overflow"] as Set
+        container.getOverflowName("user.") == "user.overflow"
+    }
+
+    def "should make room when names are removed"(){
+      given:
+        container.setCardinalityLimit("user", 1)
+        container.incr("user.1")
+
+      when:
+        container.incr("user.2")
+
+      then:
+        container.counters().keySet() == ["user.1", "user.overflow"] as Set
+
+      when:
+        container.removeCounter("user.1")
+        container.incr("user.2")
+
+      then:
+        container.counters() == ["user.2": 1L, "user.overflow": 1L]
+    }
+
+    def "should only match whole name segments"(){
+      given:
+        container.setCardinalityLimit("user", 1)
+
+      when:
+        container.incr("user.1")
+        container.incr("user.2")
+        container.incr("username")
+        container.incr("users.1")
+
+      then:
+        container.counters() == ["user.1": 1L, "user.overflow": 1L, "username": 1L, "users.1": 1L]
+    }
+
+    def "should count names that exist when the limit is set"(){
+      given:
+        container.incr("user.1")
+        container.incr("user.2")
+
+      when:
+        container.setCardinalityLimit("user.", 2)
+        container.incr("user.3")
+
+      then:
+        container.counters().keySet() == ["user.1", "user.2", "user.overflow"] as Set
+    }
+
+    def "should evict names idle for the configured number of collections"(){
+      given:
+        def collector = new StatsCollectorImpl(container)
+        collector.setEvictAfterIdle(2)
+        container.incr("busy")
+        container.incr("quiet")
+        container.add("quiet.latency", 5)
+
+      when:
+        collector.collect()
+        container.incr("busy")
+        collector.collect()
+
+      then:
+        container.counters().keySet() == ["busy", "quiet"] as Set
+
+      when:
+        container.incr("busy")
+        def deltas = collector.collect()
+
+      then:
+        container.counters().keySet() == ["busy"] as Set
+        container.metrics().isEmpty()
+        deltas.counters == ["busy": 1L]
+    }
+
+    def "should keep a name updated after the collection found it idle"(){
+      given:
+        def racing = new StatsContainerImpl(new HistogramMetricFactory()) {
+            boolean write
+            Map<String, Long> counters() {
+                def counters = super.counters()
+                if (write) incr("quiet")
+                counters
+            }
+            Map<String, Distribution> metrics() {
+                def metrics = super.metrics()
+                if (write) add("quiet.latency", 7)
+                metrics
+            }
+        }
+        def collector = new StatsCollectorImpl(racing)
+        collector.setEvictAfterIdle(1)
+        racing.incr("quiet")
+        racing.add("quiet.latency", 5)
+        collector.collect()
+
+      when:
+        racing.write = true
+        collector.collect()
+        racing.write = false
+        def deltas = collector.collect()
+
+      then:
+        deltas.counters == ["quiet": 1L]
+        deltas.metrics["quiet.latency"].count == 1
+        deltas.metrics["quiet.latency"].sum == 7
+    }
+
+    def "should start an evicted name over from zero"(){
+      given:
+        def collector = new StatsCollectorImpl(container)
+        collector.setEvictAfterIdle(1)
+        container.incr("quiet", 5)
+        collector.collect()
+        collector.collect()
+
+      when:
+        container.incr("quiet", 2)
+
+      then:
+        collector.collect().counters == ["quiet": 2L]
+    }
+
+    def "should forget names the container dropped"(){
+      given:
+        def collector = new StatsCollectorImpl(container)
+        container.incr("a", 5)
+        collector.collect()
+
+      when:
+        container.clearAll()
+        container.incr("a", 2)
+
+      then:
+        collector.collect().counters == ["a": 2L]
+    }
+}
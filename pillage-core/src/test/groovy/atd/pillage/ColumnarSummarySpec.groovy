@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+import static atd.pillage.StatsCollectorImpl.UnchangedPolicy.*
+
+class ColumnarSummarySpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+    def collector = new StatsCollectorImpl(container)
+
+    def "should share the name index while the names don't change"(){
+      given:
+        container.incr("a")
+        container.incr("b", 2)
+
+      when:
+        def first = container.counters()
+        container.incr("a")
+        def second = container.counters()
+        container.incr("c")
+        def third = container.counters()
+
+      then:
+        first instanceof LongColumn
+        first.getIndex().is(second.getIndex())
+        !third.getIndex().is(second.getIndex())
+        second == [a: 2L, b: 2L]
+        third == [a: 2L, b: 2L, c: 1L]
+    }
+
+    def "should read like a map"(){
+      given:
+        def column = new LongColumn(new NameIndex(["a", "b"] as String[]), [3L, 4L] as long[])
+
+      expect:
+        column.get("b") == 4L
+        column.get("z") == null
+        column.containsKey("a")
+        column.size() == 2
+        column == [a: 3L, b: 4L]
+        column.withoutZeros().is(column)
+        new LongColumn(new NameIndex(["a", "b"] as String[]), [0L, 4L] as long[]).withoutZeros() == [b: 4L]
+    }
+
+    def "should work out deltas as names come and go"(){
+      given:
+        container.incr("a", 5)
+        container.incr("b", 1)
+        collector.collect()
+
+      when:
+        container.incr("a", 2)
+        def same = collector.collect().getCounters()
+        container.incr("c", 4)
+        container.incr("b", 3)
+        def added = collector.collect().getCounters()
+        container.removeCounter("a")
+        container.incr("b")
+        def removed = collector.collect().getCounters()
+
+      then:
+        same == [a: 2L, b: 0L]
+        added == [a: 0L, b: 3L, c: 4L]
+        removed == [b: 1L, c: 0L]
+    }
+
+    def "should leave out unchanged counters when asked"(){
+      given:
+        collector.setUnchangedPolicy(OMIT)
+        container.incr("a")
+        container.incr("b")
+        collector.collect()
+
+      when:
+        container.incr("b", 2)
+
+      then:
+        collector.collect().getCounters() == [b: 2L]
+    }
+
+    def "should carry the last collection over to the map paths"(){
+      given:
+        container.incr("a", 5)
+        collector.collect()
+
+      when:
+        container.enableDirtyTracking()
+        container.incr("a", 2)
+
+      then:
+        collector.collect().getCounters() == [a: 2L]
+    }
+
+    def "should visit counters and gauges as primitives"(){
+      given:
+        container.incr("a", 3)
+        container.registerGauge("g", { 2.5d } as Gauge)
+        container.set("l", "v")
+        def counters = [:]
+        def gauges = [:]
+        def labels = [:]
+        def visitor = [
+            counter: { String name, long value -> counters[name] = value },
+            gauge: { String name, double value -> gauges[name] = value },
+            label: { String name, String value -> labels[name] = value },
+            metric: { String name, Distribution d -> },
+            meter: { String name, MeterSnapshot s -> },
+            distinct: { String name, long estimate -> },
+            topK: { String name, TopKSnapshot s -> }
+        ] as StatsVisitor
+
+      when:
+        container.getSummary().accept(visitor)
+
+      then:
+        counters == [a: 3L]
+        gauges == [g: 2.5d]
+        labels == [l: "v"]
+    }
+}
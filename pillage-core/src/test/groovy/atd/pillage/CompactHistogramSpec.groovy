@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class CompactHistogramSpec extends Specification {
+
+    def "should start sparse and empty"(){
+      given:
+        def hist = new CompactHistogram()
+
+      expect:
+        hist.sparse
+        hist.bucketsUsed() == 0
+        hist.getPercentile(0.5d) == 0
+        hist.maximum == 0
+    }
+
+    def "should match a Histogram"(){
+      given:
+        def compact = new CompactHistogram()
+        def dense = new Histogram()
+
+      when:
+        [1, 5, 5, 17, 300, 300, 300, 4000, 5000000000L].each {
+            compact.add(it)
+            dense.add(it)
+        }
+
+      then:
+        compact.sparse
+        compact.bucketsUsed() == 6
+        compact.toHistogram() == dense
+        [0.0d, 0.25d, 0.5d, 0.9d, 0.99d, 1.0d].every { compact.getPercentile(it) == dense.getPercentile(it) }
+        compact.minimum == dense.minimum
+        compact.maximum == dense.maximum
+    }
+
+    def "should promote to dense once it uses more than promoteAt buckets"(){
+      given:
+        def hist = new CompactHistogram(4)
+        def dense = new Histogram()
+
+      when:
+        [1, 2, 3, 4].each { hist.add(it); dense.add(it) }
+
+      then:
+        hist.sparse
+
+      when:
+        hist.add(5)
+        dense.add(5)
+
+      then:
+        !hist.sparse
+        hist.toHistogram() == dense
+    }
+
+    def "should merge and subtract in either form"(){
+      given:
+        def a = new CompactHistogram(sparseLimit)
+        def b = new CompactHistogram(sparseLimit)
+        def da = new Histogram()
+        def db = new Histogram()
+        (1..20).each { a.add(it * 7); da.add(it * 7) }
+        (1..20).each { b.add(it * 11); db.add(it * 11) }
+
+      when:
+        def merged = a.clone()
+        merged.merge(b)
+        def denseMerged = da.clone()
+        denseMerged.merge(db)
+
+      then:
+        merged.toHistogram() == denseMerged
+        merged.minus(b) == a
+        merged.minus(b).toHistogram() == da
+
+      where:
+        sparseLimit << [0, 8, CompactHistogram.DEFAULT_PROMOTE_AT]
+    }
+
+    def "should drop buckets that cancel out when subtracting"(){
+      given:
+        def a = new CompactHistogram()
+        a.add(10)
+        def b = a.clone()
+        a.add(1000)
+
+      when:
+        def delta = a.minus(b)
+
+      then:
+        delta.sparse
+        delta.bucketsUsed() == 1
+        delta.count == 1
+    }
+
+    def "should be equal regardless of form"(){
+      given:
+        def sparse = new CompactHistogram()
+        def dense = new CompactHistogram(0)
+
+      when:
+        [3, 30, 300].each { sparse.add(it); dense.add(it) }
+
+      then:
+        !dense.sparse
+        sparse == dense
+        sparse.hashCode() == dense.hashCode()
+    }
+
+    def "should accept both compact and histogram distributions"(){
+      given:
+        def metric = new CompactHistogramMetricFactory().newMetric()
+        def heap = new HistogramMetric()
+        heap.add(10)
+        def other = new CompactHistogramMetric()
+        other.add(20)
+
+      when:
+        metric.add(heap.getDistribution())
+        metric.add(other.getDistribution())
+
+      then:
+        metric.getDistribution().count == 2
+        metric.getDistribution().toMap().keySet() == heap.getDistribution().toMap().keySet()
+    }
+}
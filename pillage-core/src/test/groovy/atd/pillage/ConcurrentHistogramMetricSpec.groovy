@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class ConcurrentHistogramMetricSpec extends Specification {
+
+    def "should produce the same distribution as a HistogramMetric"(){
+      given:
+        def concurrent = new ConcurrentHistogramMetric(4)
+        def locked = new HistogramMetric()
+
+      when:
+        (0..1000).each { n ->
+            concurrent.add(n)
+            locked.add(n)
+        }
+
+      then:
+        concurrent.getDistribution() == locked.getDistribution()
+    }
+
+    def "should not lose data points across threads"(){
+      given:
+        def metric = new ConcurrentHistogramMetric()
+        def threads = (1..8).collect { t ->
+            Thread.start { 5000.times { metric.add(t * 10) } }
+        }
+
+      when:
+        threads*.join()
+        def dist = metric.getDistribution()
+
+      then:
+        dist.count == 40000
+        dist.sum == (1..8).sum { it * 10 * 5000 }
+    }
+
+    def "should merge a distribution and clear"(){
+      given:
+        def metric = new ConcurrentHistogramMetric(2)
+        def other = new Histogram()
+        other.add(5)
+        other.add(500)
+
+      when:
+        metric.add(other.getDistribution())
+      then:
+        metric.getDistribution().count == 2
+        metric.getDistribution().sum == 505
+
+      when:
+        metric.clear()
+      then:
+        metric.getDistribution().count == 0
+    }
+
+    def "should ignore negative data points"(){
+      given:
+        def metric = new ConcurrentHistogramMetric(2)
+      when:
+        metric.add(-1)
+      then:
+        metric.getDistribution().count == 0
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class DDSketchSpec extends Specification {
+
+    def "should stay within the relative accuracy from microseconds to minutes"(){
+      given:
+        def sketch = new DDSketch()
+        def random = new Random(7)
+        def values = (1..10000).collect { (long) Math.exp(Math.log(1000) + random.nextDouble() * Math.log(60000000)) }
+        values.each { sketch.add(it) }
+        values.sort()
+
+      expect:
+        [0.0d, 0.25d, 0.5d, 0.9d, 0.99d, 0.999d, 1.0d].every { q ->
+            def exact = values[(int) Math.floor(q * (values.size() - 1))]
+            Math.abs(sketch.getQuantile(q) - exact) <= exact * 0.01d + 1
+        }
+        sketch.count == 10000
+        sketch.minimum == values.first()
+        sketch.maximum == values.last()
+    }
+
+    def "should merge and subtract exactly"(){
+      given:
+        def a = new DDSketch()
+        def b = new DDSketch()
+        (1..500).each { a.add(it * 3L) }
+        (1..500).each { b.add(it * 1000000L) }
+        def all = new DDSketch()
+        (1..500).each { all.add(it * 3L); all.add(it * 1000000L) }
+
+      when:
+        def merged = a.clone()
+        merged.merge(b)
+
+      then:
+        merged == all
+        merged.minus(b) == a
+    }
+
+    def "should bound memory by folding the lowest bins"(){
+      given:
+        def sketch = new DDSketch(0.01d, 64)
+
+      when:
+        for (long n = 1; n < 1000000000L; n *= 3) { sketch.add(n) }
+
+      then:
+        sketch.size() == 64
+        Math.abs(sketch.getQuantile(1.0d) - 387420489L) <= 387420489L * 0.01d
+    }
+
+    def "should count zeros and ignore negatives"(){
+      given:
+        def sketch = new DDSketch()
+
+      when:
+        sketch.add(0)
+        sketch.add(-5)
+        sketch.add(100)
+
+      then:
+        sketch.count == 2
+        sketch.getQuantile(0.0d) == 0
+        sketch.minimum == 0
+    }
+
+    def "should not combine sketches with different accuracy"(){
+      when:
+        new DDSketch(0.01d, 2048).merge(new DDSketch(0.02d, 2048))
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should plug into the collector through delta"(){
+      given:
+        def container = new StatsContainerImpl(new DDSketchMetricFactory())
+        def collector = new StatsCollectorImpl(container)
+        container.add("latency", 1000L)
+        collector.collect()
+
+      when:
+        container.add("latency", 5000000L)
+        def dist = collector.collect().metrics["latency"]
+
+      then:
+        dist.count == 1
+        Math.abs(dist.toMap().p50 - 5000000L) <= 50000L
+    }
+}
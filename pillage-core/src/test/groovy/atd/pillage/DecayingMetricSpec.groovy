@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class DecayingMetricSpec extends Specification {
+
+    def now = 0L
+
+    def newMetric(int size = DecayingMetric.DEFAULT_SIZE){
+        new DecayingMetric(size, DecayingMetric.DEFAULT_ALPHA) {
+            protected long currentTimeMillis() { now }
+        }
+    }
+
+    def "should keep at most size samples but count everything"(){
+      given:
+        def metric = newMetric(100)
+
+      when:
+        (1..1000).each { metric.add(it) }
+        def dist = metric.getDistribution()
+
+      then:
+        dist.values.length == 100
+        dist.count == 1000
+        dist.sum == 500500
+    }
+
+    def "should follow recent values"(){
+      given:
+        def metric = newMetric()
+
+      when:
+        5000.times { metric.add(1000) }
+        now = 10 * 60 * 1000
+        500.times { metric.add(10) }
+        def dist = metric.getDistribution()
+
+      then:
+        dist.getPercentile(0.5d) == 10
+        dist.getPercentile(0.99d) == 10
+        dist.count == 5500
+    }
+
+    def "should keep working across a rescale"(){
+      given:
+        def metric = newMetric()
+
+      when:
+        100.times { metric.add(1000) }
+        now = 2 * 60 * 60 * 1000
+        100.times { metric.add(50) }
+
+      then:
+        metric.getDistribution().getPercentile(0.5d) == 50
+    }
+
+    def "should return the same keys as a HistogramDistribution"(){
+      given:
+        def metric = newMetric()
+        def heap = new HistogramMetric()
+
+      when:
+        (1..100).each {
+            metric.add(it)
+            heap.add(it)
+        }
+
+      then:
+        metric.getDistribution().toMap().keySet() == heap.getDistribution().toMap().keySet()
+    }
+
+    def "should subtract only count and sum"(){
+      given:
+        def metric = newMetric()
+        (1..10).each { metric.add(it) }
+        def first = metric.getDistribution()
+        (1..5).each { metric.add(100) }
+
+      when:
+        def delta = metric.getDistribution().delta(first)
+
+      then:
+        delta.count == 5
+        delta.sum == 500
+        delta.values == metric.getDistribution().values
+    }
+
+    def "should not subtract other distributions"(){
+      when:
+        newMetric().getDistribution().delta(new HistogramMetric().getDistribution())
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should be clean after clear"(){
+      given:
+        def metric = newMetric()
+        (1..10).each { metric.add(it) }
+
+      when:
+        metric.clear()
+
+      then:
+        metric.getDistribution().count == 0
+        metric.getDistribution().values.length == 0
+        metric.getDistribution().toMap().p50 == null
+    }
+}
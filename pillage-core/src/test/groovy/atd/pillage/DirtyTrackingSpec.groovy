@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+import static atd.pillage.StatsCollectorImpl.UnchangedPolicy.*
+
+class DirtyTrackingSpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+    def collector = new StatsCollectorImpl(container)
+
+    def setup(){
+        container.enableDirtyTracking()
+    }
+
+    def "should only hand over what changed"(){
+      given:
+        container.incr("a")
+        container.incr("b")
+        container.add("x", 5)
+        container.dirtyCounters()
+        container.dirtyMetrics()
+
+      when:
+        container.incr("b", 2)
+        container.add("y", 3)
+
+      then:
+        container.dirtyCounters() == [b: 3L]
+        container.dirtyMetrics().keySet() == ["y"] as Set
+        container.dirtyCounters().isEmpty()
+    }
+
+    def "should not hand over anything without tracking"(){
+      given:
+        def plain = new StatsContainerImpl(new HistogramMetricFactory())
+
+      expect:
+        plain.dirtyCounters() == null
+        plain.dirtyMetrics() == null
+    }
+
+    def "should report zero deltas for quiet names by default"(){
+      given:
+        container.incr("a")
+        container.incr("b")
+        container.add("x", 5)
+        container.add("y", 5)
+        collector.collect()
+
+      when:
+        container.incr("a", 4)
+        container.add("x", 7)
+        def summary = collector.collect()
+
+      then:
+        summary.counters == [a: 4L, b: 0L]
+        summary.metrics["x"].count == 1
+        summary.metrics["x"].sum == 7
+        summary.metrics["y"].count == 0
+    }
+
+    def "should leave quiet names out with OMIT"(){
+      given:
+        collector.setUnchangedPolicy(OMIT)
+        container.incr("a")
+        container.incr("b")
+        container.add("x", 5)
+        container.add("y", 5)
+        collector.collect()
+
+      when:
+        container.incr("a")
+        container.add("x", 7)
+        def summary = collector.collect()
+
+      then:
+        summary.counters == [a: 1L]
+        summary.metrics.keySet() == ["x"] as Set
+        collector.collect().counters.isEmpty()
+    }
+
+    def "should leave quiet names out with OMIT without tracking too"(){
+      given:
+        def plain = new StatsContainerImpl(new HistogramMetricFactory())
+        def plainCollector = new StatsCollectorImpl(plain)
+        plainCollector.setUnchangedPolicy(OMIT)
+        plain.incr("a")
+        plain.incr("b")
+        plain.add("x", 1)
+        plainCollector.collect()
+
+      when:
+        plain.incr("a")
+        def summary = plainCollector.collect()
+
+      then:
+        summary.counters == [a: 1L]
+        summary.metrics.isEmpty()
+    }
+
+    def "should read time based metrics on every collection"(){
+      given:
+        def windowed = new StatsContainerImpl(new SlidingWindowMetricFactory(200, 2))
+        windowed.enableDirtyTracking()
+        def windowedCollector = new StatsCollectorImpl(windowed)
+        windowedCollector.setUnchangedPolicy(policy)
+        windowed.add("w", 5)
+
+      when:
+        def first = windowedCollector.collect()
+        def second = windowedCollector.collect()
+        Thread.sleep(300)
+        def third = windowedCollector.collect()
+
+      then:
+        first.metrics["w"].count == 1
+        second.metrics["w"].count == 1
+        third.metrics["w"]?.count == expired
+
+      where:
+        policy | expired
+        ZERO   | 0
+        OMIT   | null
+    }
+
+    def "should track stats created before tracking and through handles"(){
+      given:
+        def plain = new StatsContainerImpl(new HistogramMetricFactory())
+        def handle = plain.counterHandle("early")
+        def plainCollector = new StatsCollectorImpl(plain)
+        plainCollector.collect()
+
+      when:
+        plain.enableDirtyTracking()
+        handle.incr()
+        def first = plainCollector.collect()
+        handle.incr()
+        def second = plainCollector.collect()
+
+      then:
+        first.counters == [early: 1L]
+        second.counters == [early: 1L]
+    }
+
+    def "should start over when a name is removed"(){
+      given:
+        container.incr("a", 5)
+        collector.collect()
+
+      when:
+        container.removeCounter("a")
+        def removed = collector.collect()
+        container.incr("a")
+        def again = collector.collect()
+
+      then:
+        removed.counters.isEmpty()
+        again.counters == [a: 1L]
+    }
+
+    def "should evict idle names"(){
+      given:
+        collector.setEvictAfterIdle(2)
+        container.incr("a")
+        container.incr("b")
+        collector.collect()
+
+      when:
+        container.incr("a")
+        collector.collect()
+        container.incr("a")
+        collector.collect()
+
+      then:
+        container.counters().keySet() == ["a"] as Set
+    }
+}
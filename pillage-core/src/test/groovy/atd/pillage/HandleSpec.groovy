@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class HandleSpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+
+    def "a counter handle should share the named counter"(){
+      given:
+        def handle = container.counterHandle("requests.total")
+
+      when:
+        handle.incr()
+        handle.incr(4)
+        container.incr("requests.total")
+
+      then:
+        handle.value() == 6
+        container.counters()["requests.total"] == 6
+        handle.getCounter().is(container.getCounter("requests.total"))
+    }
+
+    def "a metric handle should share the named metric"(){
+      given:
+        def handle = container.metricHandle("latency")
+
+      when:
+        handle.add(10)
+        handle.add(20L)
+        container.add("latency", 30)
+
+      then:
+        container.metrics()["latency"].count == 3
+        handle.getDistribution().sum == 60
+    }
+
+    def "handles should resolve again after clearAll"(){
+      given:
+        def counter = container.counterHandle("requests.total")
+        def metric = container.metricHandle("latency")
+        counter.incr()
+        metric.add(10)
+
+      when:
+        container.clearAll()
+        counter.incr()
+        metric.add(10)
+
+      then:
+        container.counters()["requests.total"] == 1
+        container.metrics()["latency"].count == 1
+    }
+}
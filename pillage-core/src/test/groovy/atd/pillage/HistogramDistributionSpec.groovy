@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+class HistogramDistributionSpec extends Specification {
+
+    def "should match getPercentile from one pass"(){
+      given:
+        def random = new Random(7)
+        def hist = new Histogram()
+        5000.times { hist.add((long) Math.abs(random.nextGaussian() * 10000)) }
+        double[] percentiles = [0.9d, 0.0d, 0.5d, 0.999d, 0.25d, 1.0d] as double[]
+
+      when:
+        def values = hist.getPercentiles(percentiles)
+
+      then:
+        values as List == percentiles.collect { hist.getPercentile(it) }
+    }
+
+    def "should give the same stats as the histogram"(){
+      given:
+        def hist = new Histogram()
+        (1..1000).each { hist.add(it) }
+
+      when:
+        def dist = hist.getDistribution()
+        def map = dist.toMap()
+
+      then:
+        dist.getMinimum() == hist.getMinimum()
+        dist.getMaximum() == hist.getMaximum()
+        map.p50 == hist.getPercentile(0.5d)
+        map.p9999 == hist.getPercentile(0.9999d)
+        dist.quantiles(0.5d, 0.99d) as List == [hist.getPercentile(0.5d), hist.getPercentile(0.99d)].collect { it as double }
+        dist.quantiles(0.33d) as List == [hist.getPercentile(0.33d) as double]
+    }
+
+    def "should handle empty and infinite histograms"(){
+      given:
+        def empty = new Histogram()
+        def infinite = new Histogram()
+        infinite.add(Long.MAX_VALUE)
+
+      expect:
+        empty.getDistribution().quantiles(0.0d, 0.5d) as List == [0.0d, 0.0d]
+        !empty.getDistribution().toMap().containsKey("p50")
+        infinite.getDistribution().getMinimum() == Integer.MAX_VALUE
+        infinite.getDistribution().getMaximum() == Integer.MAX_VALUE
+        infinite.getPercentiles(0.5d, 1.5d) as List == [Integer.MAX_VALUE, Integer.MAX_VALUE]
+    }
+
+    def "should build toMap once"(){
+      given:
+        def hist = new Histogram()
+        hist.add(10)
+        def dist = hist.getDistribution()
+
+      when:
+        def map = dist.toMap()
+        map.put("count", 5)
+
+      then:
+        thrown(UnsupportedOperationException)
+        dist.toMap().is(map)
+        map.count == 1
+    }
+}
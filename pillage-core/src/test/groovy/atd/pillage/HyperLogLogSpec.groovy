@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+class HyperLogLogSpec extends Specification {
+
+    def "should count small sets exactly"(){
+      given:
+        def hll = new HyperLogLog()
+
+      when:
+        (1..100).each { hll.add(it as long); hll.add(it as long) }
+
+      then:
+        hll.estimate() == 100
+    }
+
+    def "should estimate large sets within a few percent"(){
+      given:
+        def hll = new HyperLogLog()
+
+      when:
+        for (long i = 0; i < 200000; i++) hll.add(i)
+
+      then:
+        Math.abs(hll.estimate() - 200000) < 200000 * 0.03
+    }
+
+    def "should count strings"(){
+      given:
+        def hll = new HyperLogLog()
+
+      when:
+        (1..1000).each { hll.add("user-" + it) }
+        hll.add("user-1")
+
+      then:
+        Math.abs(hll.estimate() - 1000) < 30
+    }
+
+    def "should merge overlapping sets"(){
+      given:
+        def a = new HyperLogLog()
+        def b = new HyperLogLog()
+        for (long i = 0; i < 20000; i++) a.add(i)
+        for (long i = 10000; i < 30000; i++) b.add(i)
+
+      when:
+        a.merge(b)
+
+      then:
+        Math.abs(a.estimate() - 30000) < 30000 * 0.03
+    }
+
+    def "should refuse to merge a different precision"(){
+      when:
+        new HyperLogLog(12).merge(new HyperLogLog(14))
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should reset on get"(){
+      given:
+        def hll = new HyperLogLog()
+        (1..50).each { hll.add(it as long) }
+
+      when:
+        def copy = hll.get(true)
+
+      then:
+        copy.estimate() == 50
+        hll.estimate() == 0
+    }
+
+    def "should report distinct values per interval"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def collector = new StatsCollectorImpl(container)
+
+      when:
+        (1..10).each { container.addDistinct("users", it as long) }
+        def first = collector.collect()
+        (5..7).each { container.addDistinct("users", it as long) }
+        def second = collector.collect()
+
+      then:
+        first.distincts["users"] == 10
+        second.distincts["users"] == 3
+    }
+
+    def "should merge estimators from other hosts into the container"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def remote = new HyperLogLog()
+        (1..20).each { remote.add(it as long) }
+
+      when:
+        (11..30).each { container.addDistinct("users", it as long) }
+        container.addDistinct("users", remote)
+
+      then:
+        container.distincts()["users"] == 30
+        container.getSummary().distincts["users"] == 30
+    }
+}
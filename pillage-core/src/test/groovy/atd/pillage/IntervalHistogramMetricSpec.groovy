@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+import spock.lang.*
+
+class IntervalHistogramMetricSpec extends Specification {
+
+    def metric = new IntervalHistogramMetric()
+
+    def "should hand over each interval once"(){
+      when:
+        metric.add(5)
+        metric.add(10L)
+        def first = metric.getIntervalDistribution()
+        metric.add(20)
+        def second = metric.getIntervalDistribution()
+        def third = metric.getIntervalDistribution()
+
+      then:
+        first.count == 2
+        first.sum == 15
+        second.count == 1
+        second.sum == 20
+        third.count == 0
+    }
+
+    def "should show the interval so far without resetting"(){
+      when:
+        metric.add(5)
+        metric.add(5)
+
+      then:
+        metric.distribution.count == 2
+        metric.distribution.count == 2
+        metric.getIntervalDistribution().count == 2
+        metric.distribution.count == 0
+    }
+
+    def "should match HistogramMetric percentiles"(){
+      given:
+        def histogram = new HistogramMetric()
+
+      when:
+        (1..1000).each { metric.add(it); histogram.add(it) }
+        def interval = metric.getIntervalDistribution()
+
+      then:
+        interval.toMap() == histogram.distribution.toMap()
+    }
+
+    def "should not lose data points recorded during a swap"(){
+      given:
+        def running = new AtomicBoolean(true)
+        def written = new AtomicLong()
+        def writers = (1..4).collect {
+          Thread.start {
+            long n = 0
+            while (running.get()) { metric.add(3); n++ }
+            written.addAndGet(n)
+          }
+        }
+
+      when:
+        long seen = 0
+        200.times { seen += metric.getIntervalDistribution().count }
+        running.set(false)
+        writers*.join()
+        seen += metric.getIntervalDistribution().count
+
+      then:
+        seen == written.get()
+    }
+
+    def "should refuse other distributions"(){
+      when:
+        metric.add(new LogLinearMetric(3).distribution)
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should report intervals without keeping the last distribution"(){
+      given:
+        def container = new StatsContainerImpl(new IntervalHistogramMetricFactory())
+        def collector = new StatsCollectorImpl(container)
+
+      when:
+        container.add("latency", 5)
+        container.add("latency", 10)
+        def first = collector.collect()
+        container.add("latency", 5)
+        def second = collector.collect()
+
+      then:
+        first.metrics["latency"].count == 2
+        second.metrics["latency"].count == 1
+        second.metrics["latency"].sum == 5
+    }
+}
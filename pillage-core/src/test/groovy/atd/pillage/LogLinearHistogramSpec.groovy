@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+/**
+ * LogLinearHistogramSpec
+ */
+public class LogLinearHistogramSpec extends Specification {
+    def hist1 = new LogLinearHistogram(2)
+    def hist2 = new LogLinearHistogram(2)
+
+    def "small values get a bucket each"(){
+      expect:
+        (0..255).every { hist1.bucketIndex(it) == it }
+    }
+
+    def "every value lands in a bucket that contains it"(){
+      expect:
+        [256L, 1000L, 123456789L, 1L << 40, Long.MAX_VALUE].every { v ->
+            def i = hist1.bucketIndex(v)
+            hist1.lowestEquivalentValue(i) <= v && v <= hist1.highestEquivalentValue(i)
+        }
+    }
+
+    def "buckets stay within the significant digits"(){
+      expect:
+        [1000L, 999999L, 123456789L, 1L << 50].every { v ->
+            def i = hist1.bucketIndex(v)
+            (hist1.highestEquivalentValue(i) - hist1.lowestEquivalentValue(i)) / v < 0.01
+        }
+    }
+
+    def "track nanosecond timings past the int range"(){
+      when:
+        hist1.add(5000000000L)
+      then:
+        hist1.count == 1
+        hist1.sum == 5000000000L
+        Math.abs(hist1.getPercentile(0.5) - 5000000000L) < 50000000L
+    }
+
+    def "find percentiles"(){
+      when:
+        (1..1000).each { hist1.add(it * 1000L) }
+      then:
+        Math.abs(hist1.getPercentile(0.5) - 500000) < 5000
+        Math.abs(hist1.getPercentile(0.99) - 990000) < 9900
+        hist1.getPercentile(0.0) == hist1.getMinimum()
+    }
+
+    def "handle an empty histogram"(){
+      expect:
+        hist1.getPercentile(0.5) == 0
+        hist1.getMinimum() == 0
+        hist1.getMaximum() == 0
+    }
+
+    def "values past the highest trackable value go to the last bucket"(){
+      given:
+        def small = new LogLinearHistogram(1000000L, 2)
+      when:
+        small.add(Long.MAX_VALUE)
+      then:
+        small.bucketIndex(Long.MAX_VALUE) == small.size() - 1
+        small.count == 1
+    }
+
+    def "merge and minus are inverses"(){
+      when:
+        hist1.add(10)
+        hist1.add(100000)
+        hist2.add(7)
+        def merged = hist1.clone()
+        merged.merge(hist2)
+      then:
+        merged.count == 3
+        merged.minus(hist2) == hist1
+    }
+
+    def "incompatible histograms cannot be combined"(){
+      when:
+        hist1.merge(new LogLinearHistogram(3))
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "distribution deltas work through a metric"(){
+      given:
+        def metric = new LogLinearMetricFactory().newMetric()
+        metric.add(100L)
+        def first = metric.getDistribution()
+        metric.add(5000000000L)
+      when:
+        def delta = metric.getDistribution().delta(first)
+      then:
+        delta.count == 1
+        delta.sum == 5000000000L
+        delta.toMap().keySet().containsAll(["count", "sum", "minimum", "maximum", "mean", "p50", "p99", "p9999"])
+    }
+
+    def "metrics that only take ints get long values clamped"(){
+      given:
+        def seen = []
+        def intOnly = [clear: {}, add: { Object v -> seen << v; 1L }, getDistribution: { TotalDistribution.EMPTY }] as Metric
+        def container = new StatsContainerImpl({ -> intOnly } as MetricFactory)
+      when:
+        container.add("x", 5000000000L)
+        container.add("x", -5000000000L)
+        container.add("x", 7L)
+      then:
+        seen == [Integer.MAX_VALUE, Integer.MIN_VALUE, 7]
+    }
+}
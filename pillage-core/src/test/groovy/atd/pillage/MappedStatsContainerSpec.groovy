@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class MappedStatsContainerSpec extends Specification {
+
+    def file = File.createTempFile("pillage", ".stats")
+
+    def cleanup(){
+        file.delete()
+    }
+
+    def "should publish counters and histograms for a reader"(){
+      given:
+        def container = new MappedStatsContainer(file, 16, new HistogramMetricFactory())
+        def heap = new HistogramMetric()
+
+      when:
+        container.incr("requests", 5)
+        [3, 17, 250, 4000].each { n ->
+            container.add("latency", n)
+            heap.add(n)
+        }
+        container.flush()
+        def summary = new MappedStatsReader(file).read()
+
+      then:
+        summary.counters == ["requests": 5L]
+        summary.metrics["latency"] == heap.getDistribution()
+        summary.start == container.start
+    }
+
+    def "should see later publishes through the same reader"(){
+      given:
+        def container = new MappedStatsContainer(file, 16, new HistogramMetricFactory())
+        def reader = new MappedStatsReader(file)
+
+      when:
+        container.incr("requests")
+        container.publish()
+        def first = reader.read()
+        container.incr("requests", 2)
+        container.publish()
+        def second = reader.read()
+
+      then:
+        first.counters["requests"] == 1
+        second.counters["requests"] == 3
+    }
+
+    def "should count names that don't fit and zero names that are cleared"(){
+      given:
+        def container = new MappedStatsContainer(file, 2, new HistogramMetricFactory())
+        def reader = new MappedStatsReader(file)
+
+      when:
+        container.incr("a")
+        container.incr("b")
+        container.publish()
+        container.incr("c")
+        container.publish()
+
+      then:
+        reader.dropped == 1
+        reader.read().counters == ["a": 1L, "b": 1L]
+
+      when:
+        container.clearAll()
+        container.publish()
+
+      then:
+        reader.read().counters == ["a": 0L, "b": 0L]
+    }
+
+    def "should never hand a reader a torn record while publishing"(){
+      given:
+        def container = new MappedStatsContainer(file, 16, new HistogramMetricFactory())
+        def reader = new MappedStatsReader(file)
+        def stop = false
+        def writer = Thread.start {
+            int i = 0
+            while (!stop) {
+                container.incr("requests")
+                container.add("latency", i++ % 5000)
+                container.publish()
+            }
+        }
+
+      when:
+        def torn = 0
+        def last = 0L
+        def end = System.currentTimeMillis() + 500
+        while (System.currentTimeMillis() < end) {
+            def summary = reader.read()
+            def requests = summary.counters["requests"]
+            if (requests != null) {
+                if (requests < last)
+                    torn++
+                last = requests
+            }
+            def latency = summary.metrics["latency"]
+            if (latency != null && latency.histogram.get(false).sum() != latency.count)
+                torn++
+        }
+        stop = true
+        writer.join()
+
+      then:
+        torn == 0
+        last > 0
+    }
+
+    def "should reject files that aren't stats files"(){
+      when:
+        file.text = "not a stats file, just some text that is long enough to hold a header .........."
+        new MappedStatsReader(file)
+
+      then:
+        thrown(IOException)
+    }
+}
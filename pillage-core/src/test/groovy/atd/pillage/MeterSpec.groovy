@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class MeterSpec extends Specification {
+
+    static final long SECOND = 1000000000L
+
+    def meter = new ManualClockMeter()
+
+    def "should start at zero"(){
+      expect:
+        meter.count == 0
+        meter.meanRate == 0.0d
+        meter.oneMinuteRate == 0.0d
+    }
+
+    def "should seed the averages with the first tick"(){
+      when:
+        meter.mark(60)
+        meter.now = 5 * SECOND + 1
+
+      then:
+        meter.count == 60
+        meter.oneMinuteRate == 12.0d
+        meter.fiveMinuteRate == 12.0d
+        meter.fifteenMinuteRate == 12.0d
+        Math.abs(meter.meanRate - 12.0d) < 0.001d
+    }
+
+    def "should decay while idle"(){
+      given:
+        meter.mark(60)
+        meter.now = 5 * SECOND + 1
+        meter.oneMinuteRate
+
+      when:
+        meter.now += 60 * SECOND
+
+      then:
+        Math.abs(meter.oneMinuteRate - 12 * Math.exp(-1)) < 0.0001d
+        meter.fiveMinuteRate > meter.oneMinuteRate
+        meter.fifteenMinuteRate > meter.fiveMinuteRate
+    }
+
+    def "should export meters through the summary"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+
+      when:
+        container.mark("requests")
+        container.mark("requests", 2)
+        def snapshot = container.getSummary().meters["requests"]
+
+      then:
+        snapshot.count == 3
+        snapshot.toMap().keySet() == ["count", "mean_rate", "m1_rate", "m5_rate", "m15_rate"] as Set
+        new StatsCollectorImpl(container).collect().meters["requests"].count == 3
+    }
+}
+
+class ManualClockMeter extends Meter {
+    long now
+
+    protected long nanoTime() { now }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class MetricKeySpec extends Specification {
+
+    def "should render a canonical name with sorted tags"(){
+      when:
+        def key = MetricKey.of("api.latency", "status", "200", "method", "GET")
+
+      then:
+        key.name == "api.latency{method=GET,status=200}"
+        key.metricName == "api.latency"
+        key.tags == ["method": "GET", "status": "200"]
+        key == MetricKey.of("api.latency", ["method": "GET", "status": "200"])
+    }
+
+    def "should replace characters that would break the canonical name"(){
+      expect:
+        MetricKey.of("m", "path", "/a b", "q", "x=1,y={}").name == "m{path=/a_b,q=x_1_y___}"
+    }
+
+    def "should reject duplicate tags and odd tag arrays"(){
+      when:
+        MetricKey.of("m", "a", "1", "a", "2")
+
+      then:
+        thrown(IllegalArgumentException)
+
+      when:
+        MetricKey.of("m", "a")
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should hand back the same key for the same values"(){
+      given:
+        def template = new MetricTemplate("api.latency", "method", "status")
+
+      when:
+        def first = template.key("GET", "200")
+        def second = template.key("GET", "200")
+        def other = template.key("POST", "200")
+
+      then:
+        first.is(second)
+        !first.is(other)
+        first == MetricKey.of("api.latency", "method", "GET", "status", "200")
+        template.size() == 2
+    }
+
+    def "should stop interning past the key limit"(){
+      given:
+        def template = new MetricTemplate("api.latency", 2, "method", "status")
+        def get = template.key("GET", "200")
+        template.key("POST", "200")
+
+      when:
+        def first = template.key("PUT", "500")
+        def second = template.key("PUT", "500")
+
+      then:
+        template.size() == 2
+        first == second
+        !first.is(second)
+        first == MetricKey.of("api.latency", "method", "PUT", "status", "500")
+        template.key("GET", "200").is(get)
+    }
+
+    def "should intern a combination once when threads race for it"(){
+      given:
+        def template = new MetricTemplate("api.latency", 1, "method", "status")
+        def pool = java.util.concurrent.Executors.newFixedThreadPool(8)
+
+      when:
+        def keys = (1..64).collect { pool.submit({ template.key("GET", "200") } as java.util.concurrent.Callable) }*.get()
+        pool.shutdown()
+
+      then:
+        template.size() == 1
+        keys.every { it.is(keys[0]) }
+        template.key("GET", "200").is(keys[0])
+    }
+
+    def "should require one value per tag name"(){
+      given:
+        def template = new MetricTemplate("api.latency", "method", "status")
+
+      when:
+        template.key("GET")
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should flatten canonical names for reporters"(){
+      expect:
+        MetricKey.flatten(name) == flat
+
+      where:
+        name                                 | flat
+        "api.latency"                        | "api.latency"
+        "api.latency{method=GET,status=200}" | "api.latency.method.GET.status.200"
+        "m{a=1}"                             | "m.a.1"
+    }
+
+    def "should record tagged stats under the canonical name"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def template = new MetricTemplate("requests", "status")
+
+      when:
+        container.incr(template.key("200"))
+        container.incr(template.key("200"), 2)
+        container.add(MetricKey.of("latency", "status", "500"), 12)
+
+      then:
+        container.counters() == ["requests{status=200}": 3L]
+        container.metrics()["latency{status=500}"].toMap().count == 1
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *  not use this file except in compliance with the License. You may obtain
+ *  a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package atd.pillage;
+
+import spock.lang.*
+
+class NanoTimerSpec extends Specification {
+
+  def container = new StatsContainerImpl(new HistogramMetricFactory())
+
+  def "A nano timer should not record when not running"(){
+      given:
+        def timer = new NanoTimer(container, "test timer")
+
+      when:
+        timer.stop("i will be dropped")
+
+      then:
+        !timer.isRunning()
+        container.metrics()["test_timer-i_will_be_dropped.micros"].count == 0
+  }
+
+  def "A nano timer should record microseconds for a milestone"(){
+      given:
+        def timer = new NanoTimer(container, "test timer")
+
+      when:
+        timer.start()
+        def elapsed = timer.stop("i will not be dropped")
+
+      then:
+        elapsed >= 0
+        !timer.isRunning()
+        container.metrics()["test_timer-i_will_not_be_dropped.micros"].count == 1
+  }
+
+  def "A nano timer should record under its own name on stop"(){
+      given:
+        def timer = new NanoTimer(container, "test timer")
+
+      when:
+        3.times {
+          timer.start()
+          timer.stop()
+        }
+
+      then:
+        container.metrics()["test_timer.micros"].count == 3
+  }
+
+  def "A nano timer should bound its milestones"(){
+      given:
+        def timer = new NanoTimer(container, "bounded", 2)
+        def m = timer.milestone("step")
+
+      when:
+        timer.start()
+        3.times { timer.lap(m) }
+
+      then:
+        timer.isRunning()
+        timer.getMilestoneCount() == 2
+        timer.getDroppedMilestones() == 1
+        container.metrics()["bounded-step.micros"].count == 3
+
+      when:
+        timer.start()
+
+      then:
+        timer.getMilestoneCount() == 0
+        timer.getDroppedMilestones() == 0
+  }
+
+  def "A nano timer should record microseconds that fit a Histogram"(){
+      given:
+        def timer = new NanoTimer(container, "slow")
+
+      when:
+        timer.start()
+        Thread.sleep(5)
+        def elapsed = timer.stop()
+        def dist = container.metrics()["slow.micros"]
+
+      then:
+        dist.count == 1
+        dist.sum == elapsed.intdiv(1000)
+        dist.quantiles(0.5d)[0] < Integer.MAX_VALUE
+  }
+
+  def "A nano timer should only create its own metric when stopped"(){
+      given:
+        def timer = new NanoTimer(container, "milestones only")
+
+      when:
+        timer.start()
+        timer.lap("step")
+
+      then:
+        container.metrics().keySet() == ["milestones_only-step.micros"] as Set
+  }
+
+  def "A container should hand out one nano timer per thread and name"(){
+      given:
+        def mine = container.getNanoTimer("request")
+        def theirs = null
+        Thread.start { theirs = container.getNanoTimer("request") }.join()
+
+      expect:
+        mine.is(container.getNanoTimer("request"))
+        !mine.is(theirs)
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class OffHeapHistogramMetricSpec extends Specification {
+
+    def factory = new OffHeapHistogramMetricFactory(4)
+
+    def "should produce the same distribution as a HistogramMetric"(){
+      given:
+        def offHeap = factory.newMetric()
+        def heap = new HistogramMetric()
+
+      when:
+        (0..1000).each { n ->
+            offHeap.add(n)
+            heap.add(n)
+        }
+        offHeap.add(5000000000L)
+        heap.add(5000000000L)
+
+      then:
+        offHeap.getDistribution() == heap.getDistribution()
+    }
+
+    def "should grow the slab a chunk at a time and reuse released slots"(){
+      when:
+        def metrics = (1..5).collect { factory.newMetric() }
+      then:
+        factory.slotsInUse() == 5
+        factory.capacityBytes() == 2 * 4 * OffHeapHistogramMetric.SLOT_BYTES
+
+      when:
+        metrics[0].add(10)
+        metrics[0].release()
+        def reused = factory.newMetric()
+      then:
+        factory.slotsInUse() == 5
+        reused.getDistribution().count == 0
+        metrics[0].add(10) == 0
+    }
+
+    def "a container should release off heap metrics it drops"(){
+      given:
+        def container = new StatsContainerImpl(factory)
+        container.add("a", 1)
+        container.add("b", 2)
+
+      when:
+        container.clearAll()
+
+      then:
+        factory.slotsInUse() == 0
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+import java.util.concurrent.Executors
+
+class ParallelCollectionSpec extends Specification {
+
+    def executor = Executors.newFixedThreadPool(3)
+
+    def cleanup(){
+        executor.shutdown()
+    }
+
+    def "should read the same metrics in parallel"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        (1..1000).each { container.add("m" + (it % 97), it) }
+
+      expect:
+        container.metrics(executor, 4) == container.metrics()
+    }
+
+    def "should collect the same deltas in parallel"(){
+      given:
+        def parallel = new StatsContainerImpl(new ConcurrentHistogramMetricFactory())
+        def sequential = new StatsContainerImpl(new ConcurrentHistogramMetricFactory())
+        def parallelCollector = new StatsCollectorImpl(parallel)
+        def sequentialCollector = new StatsCollectorImpl(sequential)
+        parallelCollector.setCollectionExecutor(executor, 4)
+        def record = { int round ->
+            (1..500).each {
+                if (it % (round + 2) != 0) {
+                    parallel.add("m" + it, it * round)
+                    sequential.add("m" + it, it * round)
+                }
+            }
+        }
+
+      when:
+        def rounds = (1..3).collect { round ->
+            record(round)
+            [parallelCollector.collect().getMetrics(), sequentialCollector.collect().getMetrics()]
+        }
+
+      then:
+        rounds.every { it[0].collectEntries { k, v -> [k, v.toMap()] } == it[1].collectEntries { k, v -> [k, v.toMap()] } }
+        rounds[1][0]["m4"].getCount() == 0
+        rounds[1][0]["m3"].getCount() == 1
+    }
+
+    def "should need at least one partition"(){
+      when:
+        new StatsCollectorImpl(new StatsContainerImpl(new HistogramMetricFactory())).setCollectionExecutor(executor, 0)
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+}
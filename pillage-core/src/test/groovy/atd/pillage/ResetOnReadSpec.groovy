@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+import static atd.pillage.StatsCollectorImpl.UnchangedPolicy.*
+
+class ResetOnReadSpec extends Specification {
+
+    def container = new StatsContainerImpl(new HistogramMetricFactory())
+    def collector = new StatsCollectorImpl(container)
+
+    def "should drain counters and metrics"(){
+      given:
+        collector.setResetOnRead(true)
+
+      when:
+        container.incr("a", 3)
+        container.add("x", 30)
+        container.add("x", 40)
+        def summary = collector.collect()
+
+      then:
+        summary.counters == [a: 3L]
+        summary.metrics["x"].count == 2
+        summary.metrics["x"].sum == 70
+        container.counters() == [a: 0L]
+        container.metrics()["x"].count == 0
+    }
+
+    def "should pick up where the delta collection left off"(){
+      given:
+        container.incr("a", 5)
+        container.add("x", 10)
+        collector.collect()
+
+      when:
+        container.incr("a", 2)
+        container.add("x", 20)
+        collector.setResetOnRead(true)
+        def first = collector.collect()
+        def second = collector.collect()
+
+      then:
+        first.counters == [a: 2L]
+        first.metrics["x"].count == 1
+        first.metrics["x"].sum == 20
+        second.counters == [a: 0L]
+        second.metrics["x"].count == 0
+    }
+
+    def "should keep running totals for the full summary"(){
+      given:
+        collector.setResetOnRead(true)
+
+      when:
+        container.incr("a", 2)
+        container.add("x", 20)
+        collector.collect()
+        container.incr("a", 3)
+        container.add("x", 30)
+        collector.collect()
+        def full = collector.fullSummary
+
+      then:
+        full.counters == [a: 5L]
+        full.metrics["x"] instanceof TotalDistribution
+        full.metrics["x"].count == 2
+        full.metrics["x"].sum == 50
+    }
+
+    def "should go back to deltas when turned off"(){
+      given:
+        collector.setResetOnRead(true)
+        container.incr("a", 2)
+        collector.collect()
+
+      when:
+        collector.setResetOnRead(false)
+        container.incr("a", 4)
+        def first = collector.collect()
+        def second = collector.collect()
+
+      then:
+        first.counters == [a: 4L]
+        second.counters == [a: 0L]
+    }
+
+    def "should not lose increments racing with a drain"(){
+      given:
+        def striped = new StatsContainerImpl(new ConcurrentHistogramMetricFactory(), new StripedCounterFactory())
+        def stripedCollector = new StatsCollectorImpl(striped)
+        stripedCollector.setResetOnRead(true)
+        def threads = (1..4).collect { Thread.start { 10000.times { striped.incr("n"); striped.add("latency", 7) } } }
+
+      when:
+        long counted = 0
+        long recorded = 0
+        while (threads.any { it.alive }) {
+          def summary = stripedCollector.collect()
+          counted += summary.counters["n"] ?: 0
+          recorded += summary.metrics["latency"]?.count ?: 0
+        }
+        def last = stripedCollector.collect()
+        counted += last.counters["n"]
+        recorded += last.metrics["latency"].count
+
+      then:
+        counted == 40000
+        recorded == 40000
+        stripedCollector.fullSummary.counters["n"] == 40000
+    }
+
+    def "should only drain what changed with dirty tracking and OMIT"(){
+      given:
+        container.enableDirtyTracking()
+        collector.setResetOnRead(true)
+        collector.setUnchangedPolicy(OMIT)
+        container.incr("a")
+        container.incr("b")
+        container.add("x", 5)
+        collector.collect()
+
+      when:
+        container.incr("b")
+        def summary = collector.collect()
+
+      then:
+        summary.counters == [b: 1L]
+        summary.metrics.isEmpty()
+        collector.fullSummary.counters == [a: 1L, b: 2L]
+    }
+
+    def "should drain each metric type"(){
+      expect:
+        metric.add(5)
+        metric.drain().count == 1
+        metric.distribution.count == 0
+
+      where:
+        metric << [new HistogramMetric(), new ConcurrentHistogramMetric(), new LogLinearMetric(2),
+                   new CompactHistogramMetric(), new DDSketchMetric()]
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+class RoutingMetricFactorySpec extends Specification {
+
+    def factory = new RoutingMetricFactory(new HistogramMetricFactory())
+    def container = new StatsContainerImpl(factory)
+
+    def setup(){
+        factory.route("api.*.latency", BucketLayout.exponential(100, 1.2d, 60), 0.5d, 0.99d, 0.9999d)
+        factory.route("queue.depth", BucketLayout.linear(10, 100), 0.5d, 0.9d)
+        factory.route("batch.**", new LogLinearMetricFactory(2))
+    }
+
+    def "should route names by pattern"(){
+      expect:
+        container.getMetric("api.v1.latency") instanceof BucketHistogramMetric
+        container.getMetric("api.v2.latency{method=GET}") instanceof BucketHistogramMetric
+        container.getMetric("api.v1.x.latency") instanceof HistogramMetric
+        container.getMetric("batch.a.b") instanceof LogLinearMetric
+        container.getMetric("other") instanceof HistogramMetric
+    }
+
+    def "should report the quantiles of the route"(){
+      given:
+        (1..999).each { container.add("queue.depth", it) }
+
+      when:
+        def map = container.getMetric("queue.depth").getDistribution().toMap()
+
+      then:
+        map.keySet() == ["count", "sum", "minimum", "maximum", "mean", "p50", "p90"] as Set
+        Math.abs(map.p50 - 500) <= 10
+        Math.abs(map.p90 - 900) <= 10
+    }
+
+    def "should give the same stats as Histogram with the default layout"(){
+      given:
+        def random = new Random(3)
+        def hist = new Histogram()
+        def metric = new BucketHistogramMetric(BucketLayout.DEFAULT)
+        5000.times {
+            long value = Math.abs(random.nextGaussian() * 50000) as long
+            hist.add(value)
+            metric.add(value)
+        }
+
+      when:
+        def bucketed = metric.getDistribution().toMap()
+        def expected = hist.getDistribution().toMap()
+
+      then:
+        bucketed.findAll { it.key != "mean" } == expected.findAll { it.key != "mean" }.collectEntries { k, v -> [k, v as long] }
+    }
+
+    def "should take deltas and flushes through the container"(){
+      given:
+        def collector = new StatsCollectorImpl(container)
+        def recorder = container.newRecorder(64)
+        int slot = recorder.metric("queue.depth")
+        container.add("queue.depth", 5)
+        collector.collect()
+
+      when:
+        container.add("queue.depth", 7)
+        recorder.add(slot, 3)
+        container.flush()
+
+      then:
+        collector.collect().getMetrics()["queue.depth"].getCount() == 2
+    }
+
+    def "should count every data point over the stripes a route asks for"(){
+      given:
+        factory.route("rpc.*", BucketLayout.linear(10, 20), 8, 0.5d)
+        def metric = container.getMetric("rpc.get")
+
+      when:
+        def threads = (1..4).collect { Thread.start { 10000.times { metric.add(it % 200) } } }
+        threads*.join()
+        def dist = metric.getDistribution()
+
+      then:
+        dist.count == 40000
+        dist.sum == 4 * (0..<10000).sum { it % 200 }
+        dist.toMap().keySet().contains("p50")
+    }
+
+    def "should not mix layouts"(){
+      when:
+        new BucketHistogramMetric(BucketLayout.linear(5, 3)).add(new BucketHistogramMetric(BucketLayout.DEFAULT).getDistribution())
+
+      then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "should name quantiles"(){
+      expect:
+        BucketDistribution.quantileName(quantile) == name
+
+      where:
+        quantile | name
+        0.5d     | "p50"
+        0.99d    | "p99"
+        0.9999d  | "p9999"
+        0.05d    | "p5"
+        1.0d     | "p100"
+    }
+}
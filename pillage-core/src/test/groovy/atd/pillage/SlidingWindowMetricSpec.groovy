@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class SlidingWindowMetricSpec extends Specification {
+
+    def now = 0L
+
+    def metric = new SlidingWindowMetric(10000, 10) {
+        protected long currentTimeMillis() { now }
+    }
+
+    def "should cover the data points inside the window"(){
+      given:
+        def heap = new HistogramMetric()
+
+      when:
+        (0..9).each { second ->
+            now = second * 1000
+            metric.add(second * 10)
+            heap.add(second * 10)
+        }
+
+      then:
+        metric.getDistribution().histogram == heap.getDistribution().histogram
+    }
+
+    def "should drop slices that slid out of the window"(){
+      when:
+        now = 0
+        metric.add(1000)
+        now = 5000
+        metric.add(10)
+
+      then:
+        metric.getDistribution().count == 2
+
+      when:
+        now = 10500
+
+      then:
+        metric.getDistribution().count == 1
+        metric.getDistribution().maximum < 1000
+
+      when:
+        now = 20000
+
+      then:
+        metric.getDistribution().count == 0
+    }
+
+    def "should reuse a slice when the window comes around"(){
+      when:
+        now = 1000
+        3.times { metric.add(5) }
+        now = 11000
+        metric.add(7)
+
+      then:
+        metric.getDistribution().count == 1
+    }
+
+    def "should not subtract an earlier window"(){
+      given:
+        metric.add(5)
+        def first = metric.getDistribution()
+        metric.add(6)
+
+      when:
+        def delta = metric.getDistribution().delta(first)
+
+      then:
+        delta.count == 2
+    }
+
+    def "should be clean after clear"(){
+      given:
+        metric.add(5)
+
+      when:
+        metric.clear()
+
+      then:
+        metric.getDistribution().count == 0
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage
+
+import spock.lang.*
+
+class StripedCounterSpec extends Specification {
+
+   def "A striped counter should increment"() {
+
+       def counter = new StripedCounter(4)
+
+       expect :
+        counter.value() == 0
+        counter.incr() == 1
+        counter.incr(5) == 6
+        counter.value() == 6
+   }
+
+   def "A striped counter should update and reset"() {
+       given:
+        def counter = new StripedCounter(4)
+        counter.add(10)
+
+       when:
+        counter.update(42)
+       then:
+        counter.value() == 42
+
+       when:
+        counter.reset()
+       then:
+        counter.value() == 0
+   }
+
+   def "A striped counter should not lose increments across threads"() {
+       given:
+        def counter = new StripedCounter()
+        def threads = (1..8).collect {
+            Thread.start { 10000.times { counter.add(1) } }
+        }
+
+       when:
+        threads*.join()
+
+       then:
+        counter.value() == 80000
+   }
+
+   def "A container should use the counter factory it was given"() {
+       given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory(), new StripedCounterFactory())
+
+       when:
+        container.incr("requests.total")
+        container.incr("requests.total", 4)
+
+       then:
+        container.getCounter("requests.total") instanceof StripedCounter
+        container.counters()["requests.total"] == 5
+   }
+
+   def "A collector should report striped counter deltas"() {
+       given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory(), new StripedCounterFactory(4))
+        def collector = new StatsCollectorImpl(container)
+        container.incr("requests.total", 3)
+        collector.collect()
+
+       when:
+        def threads = (1..4).collect {
+            Thread.start { 1000.times { container.getCounter("requests.total").add(1) } }
+        }
+        threads*.join()
+        def first = collector.collect()
+        container.incr("requests.total", 2)
+        def second = collector.collect()
+
+       then:
+        first.counters["requests.total"] == 4000
+        second.counters["requests.total"] == 2
+        container.counters()["requests.total"] == 4005
+   }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage
+
+import spock.lang.*
+
+class TopKSpec extends Specification {
+
+    def "should count exactly while under capacity"(){
+      given:
+        def topK = new TopK(3)
+
+      when:
+        topK.add("a", 5)
+        topK.add("b", 2)
+        topK.add("c")
+        topK.add("d", 7)
+        def snapshot = topK.get(false)
+
+      then:
+        snapshot.toMap().keySet() as List == ["d", "a", "b"]
+        snapshot.toMap() == [d: 7L, a: 5L, b: 2L]
+        snapshot.total == 15
+        snapshot.entries.every { it.error == 0 }
+    }
+
+    def "should find the heavy hitters in a long tail"(){
+      given:
+        def topK = new TopK(3, 16, 1)
+        def random = new Random(7)
+
+      when:
+        5000.times {
+          topK.add("hot-" + (it % 3))
+          topK.add("tail-" + random.nextInt(100000))
+        }
+        def snapshot = topK.get(false)
+
+      then:
+        snapshot.toMap().keySet() == ["hot-0", "hot-1", "hot-2"] as Set
+        snapshot.entries.every { def truth = ["hot-0": 1667, "hot-1": 1667, "hot-2": 1666][it.key]; it.count - it.error <= truth && it.count >= truth }
+    }
+
+    def "should add up keys across stripes"(){
+      given:
+        def topK = new TopK(2, 8, 4)
+        def threads = (1..4).collect { Thread.start { 1000.times { topK.add("a"); topK.add("b", 2) } } }
+
+      when:
+        threads*.join()
+
+      then:
+        topK.get(false).toMap() == [b: 8000L, a: 4000L]
+    }
+
+    def "should report top keys per interval"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def collector = new StatsCollectorImpl(container)
+
+      when:
+        container.addTopK("endpoints", "/users", 3)
+        container.addTopK("endpoints", "/orders")
+        def first = collector.collect()
+        container.addTopK("endpoints", "/orders")
+        def second = collector.collect()
+
+      then:
+        first.topKs["endpoints"].toMap() == ["/users": 3L, "/orders": 1L]
+        second.topKs["endpoints"].toMap() == ["/orders": 1L]
+    }
+
+    def "should keep a registered top-k"(){
+      given:
+        def container = new StatsContainerImpl(new HistogramMetricFactory())
+        def topK = new TopK(50)
+
+      when:
+        container.registerTopK("tenants", topK)
+        container.registerTopK("tenants", new TopK(2))
+
+      then:
+        container.getTopK("tenants").is(topK)
+    }
+
+    def "should combine the top keys of two intervals"(){
+      given:
+        def first = new TopKSnapshot([new TopKSnapshot.Entry("a", 5, 0), new TopKSnapshot.Entry("b", 2, 0)], 7)
+        def second = new TopKSnapshot([new TopKSnapshot.Entry("c", 4, 0), new TopKSnapshot.Entry("a", 3, 1)], 8)
+
+      when:
+        def merged = first.plus(second)
+
+      then:
+        merged.toMap() == ["a": 8L, "c": 4L]
+        merged.entries*.error == [1L, 2L]
+        merged.total == 15
+    }
+
+    def "should make keys safe to report"(){
+      expect:
+        TopKSnapshot.reportName("endpoints", "/api/v1.2 users") == "endpoints./api/v1_2_users"
+    }
+}
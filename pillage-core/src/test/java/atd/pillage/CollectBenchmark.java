@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atd.pillage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures StatsCollectorImpl.collect() latency as the number of metrics goes from 1,000 to
+ * 100,000, collecting on one thread and in parallel with 2 up to the number of cores. Every
+ * metric gets a data point between collections. Metrics are ConcurrentHistogramMetrics pinned
+ * to a single stripe so the heap needed does not grow with the core count, collect() reads
+ * every stripe so the stripe count only scales its cost. This is not run as part of the
+ * tests, run it by hand:
+ * 
+ * <pre>
+ * java -cp build/classes/main:build/classes/test atd.pillage.CollectBenchmark [collections per run]
+ * </pre>
+ */
+public class CollectBenchmark {
+
+	private static final int[] METRICS = { 1000, 10000, 100000 };
+
+	private static final int STRIPES = 1;
+
+	/**
+	 * Rough heap per metric: one stripe of about 1.4KB of cells plus the HistogramDistribution
+	 * the collector keeps for the last interval.
+	 */
+	private static final long BYTES_PER_METRIC = 3 * 1024L;
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("cores: " + cores);
+		System.out.println("heap: about " + (METRICS[METRICS.length - 1] * BYTES_PER_METRIC >> 20)
+				+ "MB needed, " + (Runtime.getRuntime().maxMemory() >> 20) + "MB max");
+		StringBuilder header = new StringBuilder("metrics\tsequential ms");
+		for (int threads = 2; threads <= cores; threads *= 2) {
+			header.append("\t").append(threads).append(" threads ms");
+		}
+		System.out.println(header);
+		// warm up both paths before measuring
+		run(10000, 0, rounds);
+		run(10000, Math.max(2, cores), rounds);
+		for (int metrics : METRICS) {
+			StringBuilder line = new StringBuilder().append(metrics);
+			line.append("\t").append(format(run(metrics, 0, rounds)));
+			for (int threads = 2; threads <= cores; threads *= 2) {
+				line.append("\t").append(format(run(metrics, threads, rounds)));
+			}
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * @return mean collect() time in milliseconds, collecting on threads threads or on the
+	 *         calling thread for 0
+	 */
+	static double run(int metrics, int threads, int rounds) {
+		StatsContainerImpl container = new StatsContainerImpl(new ConcurrentHistogramMetricFactory(STRIPES));
+		StatsCollectorImpl collector = new StatsCollectorImpl(container);
+		ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads - 1) : null;
+		try {
+			if (executor != null)
+				collector.setCollectionExecutor(executor, threads);
+			String[] names = new String[metrics];
+			for (int i = 0; i < metrics; i++) {
+				names[i] = "metric." + i;
+				container.add(names[i], i);
+			}
+			collector.collect();
+
+			long total = 0L;
+			for (int round = 0; round < rounds; round++) {
+				for (int i = 0; i < metrics; i++) {
+					container.add(names[i], i + round);
+				}
+				long begin = System.nanoTime();
+				collector.collect();
+				total += System.nanoTime() - begin;
+			}
+			return total / 1e6d / rounds;
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+		}
+	}
+
+	private static String format(double millis) {
+		return String.valueOf(Math.round(millis * 10) / 10.0d);
+	}
+}
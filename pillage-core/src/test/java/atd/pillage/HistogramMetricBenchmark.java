@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package atd.pillage;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures add() throughput of a single shared metric as the number of writer threads goes
+ * from 1 to 64. This is not run as part of the tests, run it by hand:
+ * 
+ * <pre>
+ * java -cp build/classes/main:build/classes/test atd.pillage.HistogramMetricBenchmark [millis per run]
+ * </pre>
+ */
+public class HistogramMetricBenchmark {
+
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	public static void main(String[] args) throws Exception {
+		long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000L;
+
+		System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+		System.out.println("threads\tHistogramMetric ops/s\tConcurrentHistogramMetric ops/s");
+		// warm up both paths before measuring
+		run(new HistogramMetric(), 4, millis / 2);
+		run(new ConcurrentHistogramMetric(), 4, millis / 2);
+		for (int threads : THREADS) {
+			double locked = run(new HistogramMetric(), threads, millis);
+			double striped = run(new ConcurrentHistogramMetric(), threads, millis);
+			System.out.println(threads + "\t" + Math.round(locked) + "\t" + Math.round(striped));
+		}
+	}
+
+	static double run(final Metric metric, int threads, long millis) throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final int seed = t + 1;
+			new Thread(new Runnable() {
+				public void run() {
+					int value = seed;
+					long n = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (running.get()) {
+						// cheap xorshift so threads hit a spread of buckets
+						value ^= value << 13;
+						value ^= value >>> 17;
+						value ^= value << 5;
+						metric.add(value & 0xFFFFF);
+						n++;
+					}
+					ops.addAndGet(n);
+					done.countDown();
+				}
+			}).start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		running.set(false);
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		return ops.get() * 1e9d / elapsed;
+	}
+}